@@ -0,0 +1,296 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.hp.autonomy.frontend.reports.powerpoint.dto.DategraphData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ListData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.MapData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ReportData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.SunburstData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.TableData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.TopicMapData;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+
+/**
+ * Asynchronous wrapper around a {@link PowerPointService}, which renders presentations on an executor instead of
+ *   blocking the calling thread; e.g. so a non-blocking web tier doesn't have to wait on image downloads.
+ *
+ * Cancelling a returned future with {@code cancel(true)} interrupts the rendering thread; the renderer and the
+ *   provided image sources check for interruption and stop early. Cancelling a dependent stage (e.g. the result of
+ *   {@code thenApply}) doesn't cancel the render, so cancel the future returned by this class.
+ *
+ * <pre>
+ *     final AsyncPowerPointService async = new AsyncPowerPointService(new PowerPointServiceImpl(), executor);
+ *     async.list(listData, "5 results", "relevance").thenAccept(pptx -&gt; ...);
+ * </pre>
+ */
+public class AsyncPowerPointService {
+
+    /** The default executor, shared between all instances which don't provide their own. */
+    private static volatile Executor defaultExecutor;
+
+    /** The service which does the actual rendering. */
+    private final PowerPointService service;
+
+    /** The executor to render on. */
+    private final Executor executor;
+
+    /**
+     * Creates an asynchronous service which renders on the given executor.
+     * @param service the service which does the actual rendering.
+     * @param executor the executor to render on; rendering may block on image sources, so it should allow blocking.
+     */
+    public AsyncPowerPointService(final PowerPointService service, final Executor executor) {
+        this.service = service;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates an asynchronous service which renders on the {@link #defaultExecutor() default executor}.
+     * @param service the service which does the actual rendering.
+     */
+    public AsyncPowerPointService(final PowerPointService service) {
+        this(service, defaultExecutor());
+    }
+
+    /**
+     * Get the default executor, which runs each render on its own virtual thread if the JDK supports them (Java 21+),
+     *   or otherwise on a shared pool of daemon threads which grows as needed.
+     * @return the default executor.
+     */
+    public static Executor defaultExecutor() {
+        Executor executor = defaultExecutor;
+
+        if (executor == null) {
+            synchronized(AsyncPowerPointService.class) {
+                executor = defaultExecutor;
+
+                if (executor == null) {
+                    defaultExecutor = executor = createDefaultExecutor();
+                }
+            }
+        }
+
+        return executor;
+    }
+
+    /**
+     * Creates a virtual thread executor if available, or falls back to a cached thread pool.
+     * @return the new executor.
+     */
+    private static Executor createDefaultExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException e) {
+            final AtomicInteger threadCount = new AtomicInteger();
+
+            final ThreadFactory threadFactory = runnable -> {
+                final Thread thread = new Thread(runnable, "powerpoint-render-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+    }
+
+    /**
+     * Asynchronously validates the template.
+     * @return a future which completes when the template has been validated,
+     *   or completes exceptionally with a TemplateLoadException if the template is invalid.
+     * @see PowerPointService#validateTemplate()
+     */
+    public CompletableFuture<Void> validateTemplate() {
+        return submit(() -> {
+            service.validateTemplate();
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronously renders a topic map as a PowerPoint presentation.
+     * @param topicmap the data representing the topic map paths.
+     * @return a future for the new presentation.
+     * @see PowerPointService#topicmap(TopicMapData)
+     */
+    public CompletableFuture<XMLSlideShow> topicmap(final TopicMapData topicmap) {
+        return submit(() -> service.topicmap(topicmap));
+    }
+
+    /**
+     * Asynchronously renders a sunburst as a PowerPoint presentation.
+     * @param sunburst the data representing the sunburst.
+     * @return a future for the new presentation.
+     * @see PowerPointService#sunburst(SunburstData)
+     */
+    public CompletableFuture<XMLSlideShow> sunburst(final SunburstData sunburst) {
+        return submit(() -> service.sunburst(sunburst));
+    }
+
+    /**
+     * Asynchronously renders a table as a PowerPoint presentation.
+     * @param tableData the data representing the table.
+     * @param title optional title to display.
+     * @return a future for the new presentation.
+     * @see PowerPointService#table(TableData, String)
+     */
+    public CompletableFuture<XMLSlideShow> table(final TableData tableData, final String title) {
+        return submit(() -> service.table(tableData, title));
+    }
+
+    /**
+     * Asynchronously renders a map as a PowerPoint presentation.
+     * @param map the data representing the map and markers.
+     * @param title optional title to display.
+     * @return a future for the new presentation.
+     * @see PowerPointService#map(MapData, String)
+     */
+    public CompletableFuture<XMLSlideShow> map(final MapData map, final String title) {
+        return submit(() -> service.map(map, title));
+    }
+
+    /**
+     * Asynchronously renders a document list as a PowerPoint presentation.
+     * @param documentList the data representing the document list.
+     * @param results optional string describing the results.
+     * @param sortBy optional string describing the sort order.
+     * @return a future for the new presentation.
+     * @see PowerPointService#list(ListData, String, String)
+     */
+    public CompletableFuture<XMLSlideShow> list(final ListData documentList, final String results, final String sortBy) {
+        return submit(() -> service.list(documentList, results, sortBy));
+    }
+
+    /**
+     * Asynchronously renders a document list read from an iterator as a PowerPoint presentation. The iterator is read
+     *   on the executor's thread, as the slides are laid out.
+     * @param format the list's formatting; its documents are ignored.
+     * @param docs the documents, which are read once, in order.
+     * @param results optional string describing the results.
+     * @param sortBy optional string describing the sort order.
+     * @return a future for the new presentation.
+     * @see PowerPointService#list(ListData, Iterator, String, String)
+     */
+    public CompletableFuture<XMLSlideShow> list(final ListData format, final Iterator<ListData.Document> docs, final String results, final String sortBy) {
+        return submit(() -> service.list(format, docs, results, sortBy));
+    }
+
+    /**
+     * Asynchronously renders a date graph as a PowerPoint presentation.
+     * @param data the data representing the date graph.
+     * @return a future for the new presentation.
+     * @see PowerPointService#graph(DategraphData)
+     */
+    public CompletableFuture<XMLSlideShow> graph(final DategraphData data) {
+        return submit(() -> service.graph(data));
+    }
+
+    /**
+     * Asynchronously renders a composite report as a PowerPoint presentation.
+     * @param report the data representing the report.
+     * @param slidePerVisualizer if true, each visualizer will be drawn on its own slide.
+     * @return a future for the new presentation.
+     * @see PowerPointService#report(ReportData, boolean)
+     */
+    public CompletableFuture<XMLSlideShow> report(final ReportData report, final boolean slidePerVisualizer) {
+        return submit(() -> service.report(report, slidePerVisualizer));
+    }
+
+    /**
+     * Submits a render to the executor.
+     * @param render the render to run.
+     * @param <T> the result type.
+     * @return a future for the result, which interrupts the render when cancelled.
+     */
+    private <T> CompletableFuture<T> submit(final Render<T> render) {
+        final RenderTask<T> task = new RenderTask<>(render);
+
+        try {
+            executor.execute(task);
+        }
+        catch(RejectedExecutionException e) {
+            task.completeExceptionally(e);
+        }
+
+        return task;
+    }
+
+    /**
+     * A render which may throw checked exceptions.
+     * @param <T> the result type.
+     */
+    @FunctionalInterface
+    private interface Render<T> {
+        T render() throws Exception;
+    }
+
+    /**
+     * A future which runs a render, and interrupts the rendering thread if it's cancelled while running.
+     * @param <T> the result type.
+     */
+    private static class RenderTask<T> extends CompletableFuture<T> implements Runnable {
+        private final Render<T> render;
+
+        /** Guards {@link #runner}, so we never interrupt a thread after it's finished with this task. */
+        private final Object lock = new Object();
+
+        /** The thread running the render, or null if it's not running. */
+        private Thread runner;
+
+        private RenderTask(final Render<T> render) {
+            this.render = render;
+        }
+
+        @Override
+        public void run() {
+            synchronized(lock) {
+                if (isDone()) {
+                    // cancelled before it started
+                    return;
+                }
+
+                runner = Thread.currentThread();
+            }
+
+            try {
+                complete(render.render());
+            }
+            catch(Throwable e) {
+                completeExceptionally(e);
+            }
+            finally {
+                synchronized(lock) {
+                    runner = null;
+                    // don't leak our interrupt to the next task on a pooled thread
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+            if (cancelled && mayInterruptIfRunning) {
+                synchronized(lock) {
+                    if (runner != null) {
+                        runner.interrupt();
+                    }
+                }
+            }
+
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.Arrays;
+
+/**
+ * Internal implementation class which decodes base64 directly from part of a CharSequence into a right-sized array,
+ *   without copying the encoded text first; since data URIs for map images can be several megabytes.
+ *
+ * Decoding is as lenient as commons-codec's Base64.decodeBase64, so it gives identical results: both the standard and
+ *   URL-safe alphabets are accepted, any other characters (like whitespace) are skipped, decoding stops at the first
+ *   padding character, and a trailing partial byte is discarded.
+ */
+final class Base64Decoder {
+
+    private static final char PAD = '=';
+
+    /** Six-bit value of each base64 character, or -1 for characters to skip. */
+    private static final byte[] DECODE_TABLE = createDecodeTable();
+
+    private Base64Decoder() {}
+
+    private static byte[] createDecodeTable() {
+        final byte[] table = new byte[128];
+        Arrays.fill(table, (byte) -1);
+
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+        for(int ii = 0; ii < alphabet.length(); ++ii) {
+            table[alphabet.charAt(ii)] = (byte) ii;
+        }
+
+        table['+'] = table['-'] = 62;
+        table['/'] = table['_'] = 63;
+
+        return table;
+    }
+
+    /**
+     * Decodes base64 text.
+     * @param text the text containing the base64 data.
+     * @param start the index of the start of the base64 data; it continues to the end of the text.
+     * @return the decoded data.
+     */
+    static byte[] decode(final CharSequence text, final int start) {
+        // First pass: find the end of the data and count the base64 characters, so we can allocate the exact size.
+        int end = start, count = 0;
+
+        for(final int length = text.length(); end < length; ++end) {
+            final char c = text.charAt(end);
+
+            if (c == PAD) {
+                break;
+            }
+
+            if (c < DECODE_TABLE.length && DECODE_TABLE[c] >= 0) {
+                ++count;
+            }
+        }
+
+        // Each 4 characters is 3 bytes; 2 or 3 leftover characters are 1 or 2 more bytes, and 1 leftover is discarded.
+        final int remainder = count % 4;
+        final byte[] output = new byte[count / 4 * 3 + (remainder > 1 ? remainder - 1 : 0)];
+
+        // Second pass: decode.
+        int bits = 0, modulus = 0, pos = 0;
+
+        for(int ii = start; ii < end; ++ii) {
+            final char c = text.charAt(ii);
+
+            if (c < DECODE_TABLE.length && DECODE_TABLE[c] >= 0) {
+                bits = (bits << 6) | DECODE_TABLE[c];
+
+                if (++modulus == 4) {
+                    output[pos++] = (byte) (bits >> 16);
+                    output[pos++] = (byte) (bits >> 8);
+                    output[pos++] = (byte) bits;
+                    bits = modulus = 0;
+                }
+            }
+        }
+
+        if (modulus == 2) {
+            output[pos] = (byte) (bits >> 4);
+        }
+        else if (modulus == 3) {
+            output[pos++] = (byte) (bits >> 10);
+            output[pos] = (byte) (bits >> 2);
+        }
+
+        return output;
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import lombok.Data;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * An ImageSource decorator which caches the image data from another ImageSource in memory, so repeated images (e.g.
+ *   the same thumbnails or map image in every request) aren't decoded or downloaded again.
+ *
+ * Images are kept in a least-recently-used cache capped by the total size of the image data, and optionally expire a
+ *   fixed time after they were fetched. Long image identifiers like data URIs are keyed by their SHA-256 hash, so the
+ *   cache doesn't have to keep a copy of the identifier as well as the image. Failures aren't cached.
+ *
+ * Images requested for a known display size are fetched from the underlying image source with that size, and cached
+ *   separately for each size; so this can be stacked on top of a NormalizingImageSource, to cache the shrunk images.
+ *
+ * The cached image data is shared between renders, so it shouldn't be modified.
+ *
+ * <pre>
+ *     final ImageSource imageSource = new CachingImageSource(new WebAndDataUriImageSource(), 64 * 1024 * 1024);
+ * </pre>
+ */
+public class CachingImageSource implements ImageSource {
+
+    /** Identifiers longer than this are keyed by their hash instead. */
+    private static final int MAX_RAW_KEY_LENGTH = 64;
+
+    /** Approximate memory overhead of each cache entry, beyond the image data and key. */
+    private static final long ENTRY_OVERHEAD = 128;
+
+    /** The image source to cache. */
+    private final ImageSource delegate;
+
+    /** Maximum total size of the cached image data, in bytes. */
+    private final long maxBytes;
+
+    /** How long images are cached for, in nanoseconds; or zero if they don't expire. */
+    private final long ttlNanos;
+
+    /** Source of the current time, in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Cached images by key, in least-recently-used order. Guarded by itself. */
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Estimated size of all the entries in the cache. Guarded by {@link #cache}. */
+    private long cachedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache whose images don't expire.
+     * @param delegate the image source to cache.
+     * @param maxBytes the maximum total size of the cached images, in bytes.
+     */
+    public CachingImageSource(final ImageSource delegate, final long maxBytes) {
+        this(delegate, maxBytes, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a cache whose images expire a fixed time after they're fetched.
+     * @param delegate the image source to cache.
+     * @param maxBytes the maximum total size of the cached images, in bytes.
+     * @param ttl how long to cache each image for, or zero if they shouldn't expire.
+     * @param unit the unit of the ttl.
+     */
+    public CachingImageSource(final ImageSource delegate, final long maxBytes, final long ttl, final TimeUnit unit) {
+        this(delegate, maxBytes, unit.toNanos(ttl), System::nanoTime);
+    }
+
+    CachingImageSource(final ImageSource delegate, final long maxBytes, final long ttlNanos, final LongSupplier clock) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("The cache size should be positive");
+        }
+
+        if (ttlNanos < 0) {
+            throw new IllegalArgumentException("The time-to-live should not be negative");
+        }
+
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached image data if available, otherwise fetches it from the underlying image source and caches it.
+     * @param imageId the image identifier.
+     * @return image data corresponding to the image.
+     * @throws IllegalArgumentException if we can't fetch the image.
+     */
+    @Override
+    public ImageData getImageData(final String imageId) throws IllegalArgumentException {
+        return getImageData(toKey(imageId), () -> delegate.getImageData(imageId));
+    }
+
+    /**
+     * Returns the cached image data for the display size if available, otherwise fetches it from the underlying image
+     *   source for the display size and caches it.
+     * @param imageId the image identifier.
+     * @param width the width the image will be displayed at, in points.
+     * @param height the height the image will be displayed at, in points.
+     * @return image data corresponding to the image.
+     * @throws IllegalArgumentException if we can't fetch the image.
+     */
+    @Override
+    public ImageData getImageData(final String imageId, final double width, final double height) throws IllegalArgumentException {
+        return getImageData(toKey(imageId, width, height), () -> delegate.getImageData(imageId, width, height));
+    }
+
+    /**
+     * Returns the cached image data if available, otherwise fetches it and caches it.
+     * @param key the cache key.
+     * @param fetch fetches the image from the underlying image source.
+     * @return image data corresponding to the image.
+     * @throws IllegalArgumentException if we can't fetch the image.
+     */
+    private ImageData getImageData(final String key, final Supplier<ImageData> fetch) throws IllegalArgumentException {
+        synchronized(cache) {
+            final Entry entry = cache.get(key);
+
+            if (entry != null) {
+                if (!isExpired(entry)) {
+                    hits.incrementAndGet();
+                    return entry.imageData;
+                }
+
+                remove(key);
+            }
+        }
+
+        misses.incrementAndGet();
+
+        // Fetch outside the lock, so a slow download doesn't block other renders.
+        final ImageData imageData = fetch.get();
+        cache(key, imageData);
+
+        return imageData;
+    }
+
+    /**
+     * Returns the cached images, fetching the rest from the underlying image source as a single batch.
+     * @param imageIds the image identifiers.
+     * @return image data by image identifier; images which can't be fetched are left out.
+     */
+    @Override
+    public Map<String, ImageData> getImageData(final Collection<String> imageIds) {
+        final Map<String, ImageData> images = new HashMap<>();
+        final Set<String> missing = getCached(imageIds, CachingImageSource::toKey, images);
+
+        if (!missing.isEmpty()) {
+            cacheAll(delegate.getImageData(missing), CachingImageSource::toKey, images);
+        }
+
+        return images;
+    }
+
+    /**
+     * Returns the cached images for the display size, fetching the rest from the underlying image source for the
+     *   display size as a single batch.
+     * @param imageIds the image identifiers.
+     * @param width the width the images will be displayed at, in points.
+     * @param height the height the images will be displayed at, in points.
+     * @return image data by image identifier; images which can't be fetched are left out.
+     */
+    @Override
+    public Map<String, ImageData> getImageData(final Collection<String> imageIds, final double width, final double height) {
+        final Function<String, String> toKey = imageId -> toKey(imageId, width, height);
+        final Map<String, ImageData> images = new HashMap<>();
+        final Set<String> missing = getCached(imageIds, toKey, images);
+
+        if (!missing.isEmpty()) {
+            cacheAll(delegate.getImageData(missing, width, height), toKey, images);
+        }
+
+        return images;
+    }
+
+    /**
+     * Returns the cached images, asynchronously fetching the rest from the underlying image source as a single batch.
+     * @param imageIds the image identifiers.
+     * @param executor an executor the underlying image source may use to fetch the images.
+     * @return a future of the image data by image identifier; images which can't be fetched are left out.
+     */
+    @Override
+    public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final Executor executor) {
+        final Map<String, ImageData> images = new HashMap<>();
+        final Set<String> missing = getCached(imageIds, CachingImageSource::toKey, images);
+
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(images);
+        }
+
+        return ImageBatches.thenApply(delegate.getImageDataAsync(missing, executor), fetched -> {
+            cacheAll(fetched, CachingImageSource::toKey, images);
+            return images;
+        });
+    }
+
+    /**
+     * Returns the cached images for the display size, asynchronously fetching the rest from the underlying image source
+     *   for the display size as a single batch.
+     * @param imageIds the image identifiers.
+     * @param width the width the images will be displayed at, in points.
+     * @param height the height the images will be displayed at, in points.
+     * @param executor an executor the underlying image source may use to fetch the images.
+     * @return a future of the image data by image identifier; images which can't be fetched are left out.
+     */
+    @Override
+    public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final double width, final double height, final Executor executor) {
+        final Function<String, String> toKey = imageId -> toKey(imageId, width, height);
+        final Map<String, ImageData> images = new HashMap<>();
+        final Set<String> missing = getCached(imageIds, toKey, images);
+
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(images);
+        }
+
+        return ImageBatches.thenApply(delegate.getImageDataAsync(missing, width, height, executor), fetched -> {
+            cacheAll(fetched, toKey, images);
+            return images;
+        });
+    }
+
+    /**
+     * Removes all images from the cache.
+     */
+    public void clear() {
+        synchronized(cache) {
+            cache.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /**
+     * Get a snapshot of the cache statistics.
+     * @return the cache statistics.
+     */
+    public Statistics getStatistics() {
+        synchronized(cache) {
+            return new Statistics(hits.get(), misses.get(), evictions.get(), cache.size(), cachedBytes);
+        }
+    }
+
+    /**
+     * Converts an image identifier to a cache key, hashing long identifiers like data URIs.
+     * Hashed keys are longer than any unhashed key, so they can't collide.
+     * @param imageId the image identifier.
+     * @return the cache key.
+     */
+    static String toKey(final String imageId) {
+        return imageId.length() <= MAX_RAW_KEY_LENGTH ? imageId : "sha256:" + DigestUtils.sha256Hex(imageId);
+    }
+
+    /**
+     * Converts an image identifier and display size to a cache key.
+     * The identifier is always hashed, so these keys are longer than any unhashed key, and have a different prefix to
+     *   the keys of hashed identifiers; so they can't collide with the keys of images without a display size.
+     * @param imageId the image identifier.
+     * @param width the width the image will be displayed at, in points.
+     * @param height the height the image will be displayed at, in points.
+     * @return the cache key.
+     */
+    static String toKey(final String imageId, final double width, final double height) {
+        return "sized:" + width + "x" + height + ":" + DigestUtils.sha256Hex(imageId);
+    }
+
+    /**
+     * Adds the cached images to a map, counting hits and misses.
+     * @param imageIds the image identifiers.
+     * @param toKey converts an image identifier to its cache key.
+     * @param images the map to add the cached images to.
+     * @return the distinct identifiers of the images which aren't cached.
+     */
+    private Set<String> getCached(final Collection<String> imageIds, final Function<String, String> toKey, final Map<String, ImageData> images) {
+        final Set<String> missing = new LinkedHashSet<>();
+
+        synchronized(cache) {
+            for(final String imageId : imageIds) {
+                if (images.containsKey(imageId) || missing.contains(imageId)) {
+                    continue;
+                }
+
+                final String key = toKey.apply(imageId);
+                final Entry entry = cache.get(key);
+
+                if (entry != null && !isExpired(entry)) {
+                    hits.incrementAndGet();
+                    images.put(imageId, entry.imageData);
+                }
+                else {
+                    if (entry != null) {
+                        remove(key);
+                    }
+
+                    misses.incrementAndGet();
+                    missing.add(imageId);
+                }
+            }
+        }
+
+        return missing;
+    }
+
+    private void cacheAll(final Map<String, ImageData> fetched, final Function<String, String> toKey, final Map<String, ImageData> images) {
+        for(final Map.Entry<String, ImageData> entry : fetched.entrySet()) {
+            cache(toKey.apply(entry.getKey()), entry.getValue());
+            images.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void cache(final String key, final ImageData imageData) {
+        final long size = imageData.getData().length + 2L * key.length() + ENTRY_OVERHEAD;
+
+        if (size <= maxBytes) {
+            put(key, new Entry(imageData, size, ttlNanos == 0 ? 0 : clock.getAsLong() + ttlNanos));
+        }
+    }
+
+    private boolean isExpired(final Entry entry) {
+        return entry.expiresAt != 0 && clock.getAsLong() - entry.expiresAt >= 0;
+    }
+
+    private void put(final String key, final Entry entry) {
+        synchronized(cache) {
+            final Entry old = cache.put(key, entry);
+
+            if (old != null) {
+                cachedBytes -= old.size;
+            }
+
+            cachedBytes += entry.size;
+
+            // Evict the least-recently-used images until we're within the size limit.
+            final Iterator<Entry> iterator = cache.values().iterator();
+
+            while(cachedBytes > maxBytes) {
+                cachedBytes -= iterator.next().size;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(final String key) {
+        synchronized(cache) {
+            final Entry old = cache.remove(key);
+
+            if (old != null) {
+                cachedBytes -= old.size;
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the image cache statistics.
+     */
+    @Data
+    public static class Statistics {
+        /** Number of times an image was found in the cache. */
+        private final long hitCount;
+
+        /** Number of times an image had to be fetched since it wasn't in the cache, or had expired. */
+        private final long missCount;
+
+        /** Number of images evicted from the cache to keep it within its size limit. */
+        private final long evictionCount;
+
+        /** Number of images currently in the cache. */
+        private final int size;
+
+        /** Estimated size of the images currently in the cache, in bytes. */
+        private final long estimatedBytes;
+
+        /**
+         * Get the fraction of requests which were found in the cache.
+         * @return the hit rate, from 0 to 1; or 0 if there haven't been any requests.
+         */
+        public double getHitRate() {
+            final long requests = hitCount + missCount;
+            return requests == 0 ? 0 : (double) hitCount / requests;
+        }
+    }
+
+    /**
+     * A cached image, with its estimated size and expiry time.
+     */
+    private static class Entry {
+        private final ImageData imageData;
+        private final long size;
+
+        /** When the image expires, compared to the clock; or zero if it doesn't expire. */
+        private final long expiresAt;
+
+        private Entry(final ImageData imageData, final long size, final long expiresAt) {
+            this.imageData = imageData;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import lombok.Data;
+
+/**
+ * An ImageSource decorator which protects both rendering and upstream image hosts from repeated or failing fetches,
+ *   typically wrapping a {@link WebAndDataUriImageSource}:
+ * <ul>
+ *     <li>concurrent requests for the same image are coalesced into a single fetch, whose result they all share;</li>
+ *     <li>failed images are remembered, and fail immediately until a backoff period has passed, which doubles each
+ *          time the image fails again;</li>
+ *     <li>if a host's images keep failing, a circuit breaker fails all its images immediately for a while, then lets
+ *          a single trial request through to see if the host has recovered.</li>
+ * </ul>
+ *
+ * Successful images aren't kept once they've been fetched, so wrap this in a {@link CachingImageSource} to cache them.
+ * Fetches which fail because the thread was interrupted, e.g. by a cancelled render, don't count as failures.
+ *
+ * <pre>
+ *     final ImageSource imageSource = new CachingImageSource(new CoalescingImageSource(new WebAndDataUriImageSource()), 64 * 1024 * 1024);
+ * </pre>
+ */
+public class CoalescingImageSource implements ImageSource {
+
+    private static final long DEFAULT_FAILURE_BACKOFF_SECONDS = 30;
+    private static final long DEFAULT_MAX_FAILURE_BACKOFF_SECONDS = 600;
+    private static final int DEFAULT_HOST_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_HOST_OPEN_SECONDS = 30;
+
+    /** When there are more failed images than this, expired failures are removed. */
+    private static final int MAX_FAILURES = 10000;
+
+    /** When there are more hosts than this, circuit breakers which aren't open or in use are removed. */
+    private static final int MAX_HOSTS = 10000;
+
+    /** The image source to protect. */
+    private final ImageSource delegate;
+
+    /** How long to fail an image immediately after its first failure, in nanoseconds. */
+    private final long failureBackoffNanos;
+
+    /** The maximum time to fail an image immediately after repeated failures, in nanoseconds. */
+    private final long maxFailureBackoffNanos;
+
+    /** How many consecutive failures from a host open its circuit breaker. */
+    private final int hostFailureThreshold;
+
+    /** How long a host's circuit breaker stays open before allowing a trial request, in nanoseconds. */
+    private final long hostOpenNanos;
+
+    /** Source of the current time, in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Fetches in progress, by image key. */
+    private final ConcurrentMap<String, CompletableFuture<ImageData>> inFlight = new ConcurrentHashMap<>();
+
+    /** Recently failed images, by image key. */
+    private final ConcurrentMap<String, Failure> failures = new ConcurrentHashMap<>();
+
+    /** Circuit breakers, by host; only kept while they're in use or their host is failing. */
+    private final ConcurrentMap<String, CircuitBreaker> hosts = new ConcurrentHashMap<>();
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong recentFailureRejections = new AtomicLong();
+    private final AtomicLong circuitRejections = new AtomicLong();
+
+    /**
+     * Creates an image source with the default settings: failed images are retried after 30 seconds, doubling up to
+     *   10 minutes; and a host's circuit breaker opens for 30 seconds after 5 consecutive failures.
+     * @param delegate the image source to protect.
+     */
+    public CoalescingImageSource(final ImageSource delegate) {
+        this(delegate,
+                DEFAULT_FAILURE_BACKOFF_SECONDS, DEFAULT_MAX_FAILURE_BACKOFF_SECONDS,
+                DEFAULT_HOST_FAILURE_THRESHOLD, DEFAULT_HOST_OPEN_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates an image source with custom settings.
+     * @param delegate the image source to protect.
+     * @param failureBackoff how long to fail an image immediately after its first failure.
+     * @param maxFailureBackoff the maximum time to fail an image immediately after repeated failures.
+     * @param hostFailureThreshold how many consecutive failures from a host open its circuit breaker.
+     * @param hostOpenDuration how long a host's circuit breaker stays open before allowing a trial request.
+     * @param unit the unit of the durations.
+     */
+    public CoalescingImageSource(final ImageSource delegate, final long failureBackoff, final long maxFailureBackoff, final int hostFailureThreshold, final long hostOpenDuration, final TimeUnit unit) {
+        this(delegate, unit.toNanos(failureBackoff), unit.toNanos(maxFailureBackoff), hostFailureThreshold, unit.toNanos(hostOpenDuration), System::nanoTime);
+    }
+
+    CoalescingImageSource(final ImageSource delegate, final long failureBackoffNanos, final long maxFailureBackoffNanos, final int hostFailureThreshold, final long hostOpenNanos, final LongSupplier clock) {
+        if (failureBackoffNanos < 0 || maxFailureBackoffNanos < failureBackoffNanos || hostFailureThreshold < 1 || hostOpenNanos < 0) {
+            throw new IllegalArgumentException("Invalid backoff or circuit breaker settings");
+        }
+
+        this.delegate = delegate;
+        this.failureBackoffNanos = failureBackoffNanos;
+        this.maxFailureBackoffNanos = maxFailureBackoffNanos;
+        this.hostFailureThreshold = hostFailureThreshold;
+        this.hostOpenNanos = hostOpenNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Fetches an image from the underlying image source, sharing the result with any concurrent requests for the
+     *   same image; unless it or its host have recently failed.
+     * @param imageId the image identifier.
+     * @return image data corresponding to the image.
+     * @throws IllegalArgumentException if we can't fetch the image, or it or its host have recently failed.
+     */
+    @Override
+    public ImageData getImageData(final String imageId) throws IllegalArgumentException {
+        final String key = CachingImageSource.toKey(imageId);
+
+        while(true) {
+            final CompletableFuture<ImageData> fetch = new CompletableFuture<>();
+            final CompletableFuture<ImageData> existing = inFlight.putIfAbsent(key, fetch);
+
+            if (existing == null) {
+                try {
+                    final ImageData imageData = fetch(key, imageId);
+                    fetch.complete(imageData);
+                    return imageData;
+                }
+                catch(RuntimeException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        // let any waiting requests try again themselves, rather than sharing our interruption
+                        fetch.cancel(false);
+                    }
+                    else {
+                        fetch.completeExceptionally(e);
+                    }
+
+                    throw e;
+                }
+                finally {
+                    inFlight.remove(key, fetch);
+                }
+            }
+
+            coalesced.incrementAndGet();
+
+            try {
+                return existing.get();
+            }
+            catch(CancellationException e) {
+                // the fetch we were waiting for was interrupted, so try again
+            }
+            catch(ExecutionException e) {
+                throw e.getCause() instanceof IllegalArgumentException
+                        ? (IllegalArgumentException) e.getCause()
+                        : new IllegalArgumentException("Selected image cannot be fetched: " + imageId, e.getCause());
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException("Interrupted while waiting for image: " + imageId, e);
+            }
+        }
+    }
+
+    /**
+     * Get a snapshot of the statistics.
+     * @return the statistics.
+     */
+    public Statistics getStatistics() {
+        int openCircuits = 0;
+        final long now = clock.getAsLong();
+
+        for(final CircuitBreaker breaker : hosts.values()) {
+            if (breaker.isOpen(now)) {
+                ++openCircuits;
+            }
+        }
+
+        return new Statistics(fetches.get(), coalesced.get(), recentFailureRejections.get(), circuitRejections.get(), failures.size(), openCircuits);
+    }
+
+    /**
+     * Fetches an image from the underlying image source, checking and updating the failure backoff and circuit breaker.
+     * @param key the image key.
+     * @param imageId the image identifier.
+     * @return the image data.
+     */
+    private ImageData fetch(final String key, final String imageId) {
+        final long now = clock.getAsLong();
+        final Failure failure = failures.get(key);
+
+        if (failure != null && now - failure.retryAt < 0) {
+            recentFailureRejections.incrementAndGet();
+            throw new IllegalArgumentException("Selected image recently failed, not retrying yet: " + imageId, failure.error);
+        }
+
+        final String host = getHost(imageId);
+        final CircuitBreaker breaker = host == null ? null : acquireBreaker(host, now);
+
+        try {
+            return fetch(key, imageId, failure, host, breaker, now);
+        }
+        finally {
+            if (breaker != null) {
+                releaseBreaker(host);
+            }
+        }
+    }
+
+    /**
+     * Fetches an image from the underlying image source, checking and updating the host's circuit breaker.
+     * @param key the image key.
+     * @param imageId the image identifier.
+     * @param failure the image's previous failure, or null.
+     * @param host the image's host, or null.
+     * @param breaker the host's circuit breaker, or null.
+     * @param now the current time, compared to the clock.
+     * @return the image data.
+     */
+    private ImageData fetch(final String key, final String imageId, final Failure failure, final String host, final CircuitBreaker breaker, final long now) {
+        if (breaker != null && !breaker.allowRequest(now)) {
+            circuitRejections.incrementAndGet();
+            throw new IllegalArgumentException("Image host " + host + " keeps failing, not fetching: " + imageId);
+        }
+
+        fetches.incrementAndGet();
+
+        try {
+            final ImageData imageData = delegate.getImageData(imageId);
+
+            if (breaker != null) {
+                breaker.onSuccess();
+            }
+
+            failures.remove(key);
+            return imageData;
+        }
+        catch(RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                if (breaker != null) {
+                    breaker.onAbandoned();
+                }
+            }
+            else {
+                if (breaker != null) {
+                    breaker.onFailure(clock.getAsLong());
+                }
+
+                addFailure(key, failure, e);
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Gets a host's circuit breaker, creating it if necessary, and counts the current request as one of its users so
+     *   it isn't removed while in use.
+     * @param host the host.
+     * @param now the current time, compared to the clock.
+     * @return the circuit breaker.
+     */
+    private CircuitBreaker acquireBreaker(final String host, final long now) {
+        if (hosts.size() >= MAX_HOSTS) {
+            // if the hosts are all failing, it's better to forget some than to use unbounded memory
+            for(final String existing : hosts.keySet()) {
+                hosts.computeIfPresent(existing, (key, entry) -> entry.users == 0 && !entry.isOpen(now) ? null : entry);
+            }
+        }
+
+        // Users are only counted inside compute calls, which ConcurrentHashMap runs atomically for each host.
+        return hosts.compute(host, (key, existing) -> {
+            final CircuitBreaker entry = existing == null ? new CircuitBreaker() : existing;
+            ++entry.users;
+            return entry;
+        });
+    }
+
+    /**
+     * Stops counting the current request as one of a host's circuit breaker's users; and removes the circuit breaker
+     *   if it has no other users and the host is healthy, since a new one would be in the same state.
+     * @param host the host.
+     */
+    private void releaseBreaker(final String host) {
+        hosts.computeIfPresent(host, (key, entry) -> --entry.users == 0 && entry.isHealthy() ? null : entry);
+    }
+
+    /**
+     * The number of hosts whose circuit breakers are currently being tracked.
+     * @return the number of hosts with fetches in progress or recent failures.
+     */
+    int getTrackedHostCount() {
+        return hosts.size();
+    }
+
+    /**
+     * Remembers a failed image, doubling its backoff if it has failed before.
+     * @param key the image key.
+     * @param previous the previous failure, or null.
+     * @param error the error.
+     */
+    private void addFailure(final String key, final Failure previous, final RuntimeException error) {
+        final long backoff = previous == null ? failureBackoffNanos : Math.min(maxFailureBackoffNanos, 2 * previous.backoff);
+        final long now = clock.getAsLong();
+
+        if (failures.size() >= MAX_FAILURES) {
+            final Iterator<Failure> iterator = failures.values().iterator();
+
+            while(iterator.hasNext()) {
+                if (now - iterator.next().retryAt >= 0) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        // if the failures are all recent, it's better to forget some than to use unbounded memory
+        if (failures.size() < MAX_FAILURES) {
+            failures.put(key, new Failure(error, backoff, now + backoff));
+        }
+    }
+
+    /**
+     * Utility function to get the host of a web image, for the circuit breaker.
+     * @param imageId the image identifier.
+     * @return the host, or null if the image isn't a valid http: or https: URL.
+     */
+    private static String getHost(final String imageId) {
+        if (imageId.startsWith("https:") || imageId.startsWith("http:")) {
+            try {
+                return URI.create(imageId).getHost();
+            }
+            catch(IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Snapshot of the statistics.
+     */
+    @Data
+    public static class Statistics {
+        /** Number of fetches from the underlying image source. */
+        private final long fetchCount;
+
+        /** Number of requests which shared the result of another request's fetch. */
+        private final long coalescedCount;
+
+        /** Number of requests which failed immediately since the image failed recently. */
+        private final long recentFailureRejectionCount;
+
+        /** Number of requests which failed immediately since their host's circuit breaker was open. */
+        private final long circuitRejectionCount;
+
+        /** Number of images currently remembered as failed. */
+        private final int failedImages;
+
+        /** Number of hosts whose circuit breaker is currently open. */
+        private final int openCircuits;
+    }
+
+    /**
+     * A recently failed image.
+     */
+    private static class Failure {
+        private final RuntimeException error;
+
+        /** How long this failure's backoff is, in nanoseconds. */
+        private final long backoff;
+
+        /** When the image can be retried, compared to the clock. */
+        private final long retryAt;
+
+        private Failure(final RuntimeException error, final long backoff, final long retryAt) {
+            this.error = error;
+            this.backoff = backoff;
+            this.retryAt = retryAt;
+        }
+    }
+
+    /**
+     * Per-host circuit breaker: closed while the host is healthy, open after too many consecutive failures, and
+     *   half-open after the open period, when it lets a single trial request through.
+     */
+    private class CircuitBreaker {
+        /** Only read or written inside {@link ConcurrentMap#compute} calls for the host. */
+        private int users;
+
+        private int consecutiveFailures;
+
+        /** When the breaker closes again, compared to the clock; only meaningful once the threshold is reached. */
+        private long openUntil;
+
+        /** Whether a trial request is in progress. */
+        private boolean trialInProgress;
+
+        private synchronized boolean isOpen(final long now) {
+            return consecutiveFailures >= hostFailureThreshold && now - openUntil < 0;
+        }
+
+        private synchronized boolean isHealthy() {
+            return consecutiveFailures == 0 && !trialInProgress;
+        }
+
+        private synchronized boolean allowRequest(final long now) {
+            if (consecutiveFailures < hostFailureThreshold) {
+                return true;
+            }
+
+            if (now - openUntil < 0 || trialInProgress) {
+                return false;
+            }
+
+            trialInProgress = true;
+            return true;
+        }
+
+        private synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            trialInProgress = false;
+        }
+
+        private synchronized void onFailure(final long now) {
+            if (++consecutiveFailures >= hostFailureThreshold) {
+                openUntil = now + hostOpenNanos;
+            }
+
+            trialInProgress = false;
+        }
+
+        private synchronized void onAbandoned() {
+            trialInProgress = false;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.Locale;
+import java.util.zip.Deflater;
+import lombok.Data;
+
+/**
+ * Controls how the parts of a presentation are compressed when the service writes it to an output stream.
+ * PowerPoint files are zip files; the slide and chart XML compresses well, but images and embedded workbooks are
+ *   already compressed, so deflating them again mostly wastes CPU.
+ * This only applies to presentations written by {@link PowerPointService#write} or the methods which render straight
+ *   to an output stream; {@link org.apache.poi.xslf.usermodel.XMLSlideShow#write} always uses the default compression.
+ */
+@Data
+public class CompressionPolicy {
+
+    /** File extensions of parts which are already compressed. */
+    private static final String[] COMPRESSED_EXTENSIONS = { ".jpeg", ".jpg", ".png", ".gif", ".xlsx" };
+
+    /** Same as the POI defaults, which deflate every part at the default compression level. */
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(Deflater.DEFAULT_COMPRESSION, false);
+
+    /** Fastest compression which still shrinks the XML parts; already-compressed parts are stored as-is. */
+    public static final CompressionPolicy FAST = new CompressionPolicy(Deflater.BEST_SPEED, true);
+
+    /**
+     * The deflate compression level for XML and any other compressible parts, from {@link Deflater#NO_COMPRESSION}
+     *   to {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    private final int level;
+
+    /** Whether to store already-compressed parts, e.g. JPEG/PNG/GIF images and embedded workbooks, without deflating them. */
+    private final boolean storeCompressedParts;
+
+    public CompressionPolicy(final int level, final boolean storeCompressedParts) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+
+        this.level = level;
+        this.storeCompressedParts = storeCompressedParts;
+    }
+
+    /**
+     * Whether a zip entry should be stored without compression.
+     * @param entryName the name of the zip entry.
+     * @return true if it should be stored as-is.
+     */
+    boolean isStored(final String entryName) {
+        if (storeCompressedParts) {
+            final String name = entryName.toLowerCase(Locale.US);
+
+            for(final String extension : COMPRESSED_EXTENSIONS) {
+                if (name.endsWith(extension)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
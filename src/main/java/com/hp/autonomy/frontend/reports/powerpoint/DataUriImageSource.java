@@ -4,7 +4,9 @@
  */
 package com.hp.autonomy.frontend.reports.powerpoint;
 
-import org.apache.commons.codec.binary.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import org.apache.poi.sl.usermodel.PictureData;
 
 /**
@@ -15,6 +17,15 @@ public class DataUriImageSource implements ImageSource {
 
     private static final String DATA_PREFIX = "data:";
 
+    /** Picture types by lower-case content type. */
+    private static final Map<String, PictureData.PictureType> PICTURE_TYPES = new HashMap<>();
+
+    static {
+        for(final PictureData.PictureType pictureType : PictureData.PictureType.values()) {
+            PICTURE_TYPES.putIfAbsent(pictureType.contentType.toLowerCase(Locale.US), pictureType);
+        }
+    }
+
     /**
      * Accepts base64-encoded image data and converts them to image data.
      * @param imageId the image identifier.
@@ -24,25 +35,42 @@ public class DataUriImageSource implements ImageSource {
     @Override
     public ImageData getImageData(final String imageId) throws IllegalArgumentException {
         // assume it's base64 data
-        final String contentType, data;
+        final String contentType;
+        final int dataStart;
 
         if(imageId.startsWith(DATA_PREFIX)) {
             // e.g. 'data:image/png;base64,iVBOR....'
-            contentType = imageId.substring(DATA_PREFIX.length(), imageId.indexOf(';'));
-            data = imageId.substring(imageId.indexOf(","));
+            final int semicolon = imageId.indexOf(';');
+            dataStart = imageId.indexOf(',') + 1;
+
+            if (semicolon < 0 || dataStart == 0) {
+                throw new IllegalArgumentException("Unable to parse data URI: " + imageId);
+            }
+
+            contentType = imageId.substring(DATA_PREFIX.length(), semicolon);
         }
         else {
             // assume it's the data part of the base64-encoded JPEG, since Find sends list thumbnails this way
             contentType = "image/jpeg";
-            data = imageId;
+            dataStart = 0;
         }
 
-        for(final PictureData.PictureType pictureType : PictureData.PictureType.values()) {
-            if(pictureType.contentType.equalsIgnoreCase(contentType)) {
-                return new ImageData(pictureType, Base64.decodeBase64(data));
-            }
+        final PictureData.PictureType pictureType = getPictureType(contentType);
+
+        if (pictureType == null) {
+            throw new IllegalArgumentException("Unable to parse data URI: " + imageId);
         }
 
-        throw new IllegalArgumentException("Unable to parse data URI: " + imageId);
+        // decode in place, rather than copying a potentially multi-megabyte string first
+        return new ImageData(pictureType, Base64Decoder.decode(imageId, dataStart));
+    }
+
+    /**
+     * Utility function to find the picture type for a content type.
+     * @param contentType the content type, in any case; may be null.
+     * @return the picture type, or null if the content type isn't a supported picture type.
+     */
+    static PictureData.PictureType getPictureType(final String contentType) {
+        return contentType == null ? null : PICTURE_TYPES.get(contentType.toLowerCase(Locale.US));
     }
 }
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Data;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An ImageSource decorator which caches image data from another ImageSource on local disk, as a second tier behind a
+ *   {@link CachingImageSource}; so a long tail of images can be reused for hours without keeping them all in memory.
+ *
+ * Each image is stored in its own file, named by the SHA-256 hash of the image identifier, containing the picture type
+ *   and image data. The cache is capped by the total size of the files, evicting the least-recently-used files first;
+ *   and survives restarts, since the cache directory is scanned on startup using the files' modification times as the
+ *   last-used times. Files are written to a temporary file first and then renamed, so a crash never leaves a partial
+ *   file behind.
+ *
+ * Disk errors are logged and treated as cache misses, so a full or broken disk only makes rendering slower.
+ * If the thread is interrupted while reading a cached image, e.g. by a cancelled render, the image isn't fetched; and if
+ *   it's interrupted while writing one, the image just isn't cached. Either way the cache file is kept.
+ *
+ * <pre>
+ *     final ImageSource imageSource = new CachingImageSource(
+ *         new DiskCachingImageSource(new WebAndDataUriImageSource(), Paths.get("/var/cache/pptx-images"), 1024L * 1024 * 1024),
+ *         64 * 1024 * 1024);
+ * </pre>
+ */
+public class DiskCachingImageSource implements ImageSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskCachingImageSource.class);
+
+    /** Identifies our cache files, and their format version. */
+    private static final int MAGIC = 0x50504901;
+
+    private static final String SUFFIX = ".img";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** The image source to cache. */
+    private final ImageSource delegate;
+
+    /** The cache directory. */
+    private final Path directory;
+
+    /** Maximum total size of the cache files, in bytes. */
+    private final long maxBytes;
+
+    /** Sizes of the cache files by key, in least-recently-used order. Guarded by itself. */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of the cache files. Guarded by {@link #index}. */
+    private long cachedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a disk cache, loading any images already cached in the directory.
+     * @param delegate the image source to cache.
+     * @param directory the cache directory, which is created if it doesn't exist; it shouldn't be used for anything else.
+     * @param maxBytes the maximum total size of the cached images, in bytes.
+     * @throws IOException if the cache directory can't be created or read.
+     */
+    public DiskCachingImageSource(final ImageSource delegate, final Path directory, final long maxBytes) throws IOException {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("The cache size should be positive");
+        }
+
+        this.delegate = delegate;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /**
+     * Returns the cached image data if available, otherwise fetches it from the underlying image source and caches it.
+     * @param imageId the image identifier.
+     * @return image data corresponding to the image.
+     * @throws IllegalArgumentException if we can't fetch the image, or the thread was interrupted while reading it from
+     *   the cache.
+     */
+    @Override
+    public ImageData getImageData(final String imageId) throws IllegalArgumentException {
+        final String key = DigestUtils.sha256Hex(imageId);
+
+        final boolean indexed;
+
+        synchronized(index) {
+            indexed = index.get(key) != null;
+        }
+
+        if (indexed) {
+            final ImageData cached = read(key);
+
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        misses.incrementAndGet();
+
+        final ImageData imageData = delegate.getImageData(imageId);
+        write(key, imageData);
+
+        return imageData;
+    }
+
+    /**
+     * Get a snapshot of the cache statistics.
+     * @return the cache statistics.
+     */
+    public Statistics getStatistics() {
+        synchronized(index) {
+            return new Statistics(hits.get(), misses.get(), evictions.get(), index.size(), cachedBytes);
+        }
+    }
+
+    /**
+     * Scans the cache directory, ordering existing files by their modification time and removing any temporary files.
+     * @throws IOException if the directory can't be read.
+     */
+    private void loadIndex() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        final Map<Path, FileTime> modified = new LinkedHashMap<>();
+
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for(final Path file : stream) {
+                final String name = file.getFileName().toString();
+
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // left behind by a crash
+                    Files.deleteIfExists(file);
+                }
+                else if (name.endsWith(SUFFIX)) {
+                    files.add(file);
+                    modified.put(file, Files.getLastModifiedTime(file));
+                }
+            }
+        }
+
+        files.sort(Comparator.comparing(modified::get));
+
+        synchronized(index) {
+            for(final Path file : files) {
+                final String name = file.getFileName().toString();
+                final long size = Files.size(file);
+                index.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                cachedBytes += size;
+            }
+
+            evict();
+        }
+    }
+
+    /**
+     * Reads a cached image, marking it as recently used.
+     * @param key the image key.
+     * @return the image data, or null if the file is missing or invalid.
+     * @throws IllegalArgumentException if the thread is interrupted.
+     */
+    private ImageData read(final String key) {
+        final Path file = getFile(key);
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // magic (4), type name length (1), type name, then the image data
+            final ByteBuffer header = ByteBuffer.allocate(5);
+            readFully(channel, header);
+
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not an image cache file");
+            }
+
+            final ByteBuffer typeName = ByteBuffer.allocate(header.get(4) & 0xFF);
+            readFully(channel, typeName);
+            final PictureData.PictureType type = PictureData.PictureType.valueOf(new String(typeName.array(), StandardCharsets.US_ASCII));
+
+            final long dataLength = channel.size() - channel.position();
+
+            if (dataLength > Integer.MAX_VALUE) {
+                throw new IOException("Image cache file is too large");
+            }
+
+            final byte[] data = new byte[(int) dataLength];
+            readFully(channel, ByteBuffer.wrap(data));
+
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+
+            return new ImageData(type, data);
+        }
+        catch(NoSuchFileException e) {
+            // evicted by another thread
+        }
+        catch(ClosedByInterruptException|InterruptedIOException e) {
+            // the file is fine, so keep it; and don't fetch the image either, since we've been cancelled
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("Interrupted while reading image cache file " + file, e);
+        }
+        catch(IOException|IllegalArgumentException e) {
+            LOGGER.warn("Removing invalid image cache file " + file, e);
+            delete(key);
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes an image to the cache, evicting the least-recently-used images if the cache is too large.
+     * @param key the image key.
+     * @param imageData the image data.
+     */
+    private void write(final String key, final ImageData imageData) {
+        final byte[] typeName = imageData.getType().name().getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer header = ByteBuffer.allocate(5 + typeName.length);
+        header.putInt(MAGIC).put((byte) typeName.length).put(typeName).flip();
+
+        final long size = header.remaining() + (long) imageData.getData().length;
+
+        if (size > maxBytes) {
+            return;
+        }
+
+        Path temp = null;
+
+        try {
+            temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final ByteBuffer[] buffers = { header, ByteBuffer.wrap(imageData.getData()) };
+
+                while(buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+
+            Files.move(temp, getFile(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+
+            synchronized(index) {
+                final Long old = index.put(key, size);
+
+                if (old != null) {
+                    cachedBytes -= old;
+                }
+
+                cachedBytes += size;
+                evict();
+            }
+        }
+        catch(ClosedByInterruptException|InterruptedIOException e) {
+            // we've been cancelled, so just don't cache the image
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException e) {
+            LOGGER.warn("Unable to write image cache file for " + key, e);
+        }
+        finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                }
+                catch(IOException e) {
+                    LOGGER.warn("Unable to remove temporary image cache file " + temp, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts the least-recently-used images until the cache is within its size limit. Must hold the index lock.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+
+        while(cachedBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            cachedBytes -= eldest.getValue();
+            evictions.incrementAndGet();
+            deleteFile(eldest.getKey());
+        }
+    }
+
+    private void delete(final String key) {
+        synchronized(index) {
+            final Long old = index.remove(key);
+
+            if (old != null) {
+                cachedBytes -= old;
+            }
+
+            deleteFile(key);
+        }
+    }
+
+    private void deleteFile(final String key) {
+        try {
+            Files.deleteIfExists(getFile(key));
+        }
+        catch(IOException e) {
+            LOGGER.warn("Unable to remove image cache file for " + key, e);
+        }
+    }
+
+    private Path getFile(final String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Image cache file is truncated");
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the disk cache statistics.
+     */
+    @Data
+    public static class Statistics {
+        /** Number of times an image was found on disk. */
+        private final long hitCount;
+
+        /** Number of times an image had to be fetched since it wasn't on disk. */
+        private final long missCount;
+
+        /** Number of images evicted from the disk to keep it within its size limit. */
+        private final long evictionCount;
+
+        /** Number of images currently on disk. */
+        private final int size;
+
+        /** Total size of the images currently on disk, in bytes. */
+        private final long cachedBytes;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A TemplateSource backed by a template file on disk, which is reloaded in the background whenever the file changes;
+ *   so you can replace a template without restarting the service.
+ *
+ * Each change is parsed and validated on a background thread, and only replaces the current template if it's valid;
+ *   an invalid template is logged and ignored, so a bad template never replaces a good one. Rendering never waits on
+ *   a reload, and presentations which are already being generated keep using the template they started with.
+ *
+ * Since some platforms only poll for file changes, you can also call {@link #reload()} to reload the file immediately.
+ * Call {@link #close()} to stop watching the file.
+ */
+public class FileTemplateSource implements TemplateSource, ParsedTemplateSource, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileTemplateSource.class);
+
+    /** How long to wait for the file to stop changing before reloading it, since a copy may trigger multiple events. */
+    private static final long SETTLE_MILLIS = 250;
+
+    /** The template file to watch. */
+    private final Path file;
+
+    /** The file watcher for the directory containing the template file. */
+    private final WatchService watchService;
+
+    /** The most recent valid template. */
+    private final AtomicReference<Version> current = new AtomicReference<>();
+
+    /**
+     * Loads a template file and starts watching it for changes.
+     * @param file the template file.
+     * @throws TemplateLoadException if the initial template is invalid.
+     * @throws IOException if the template file can't be watched.
+     */
+    public FileTemplateSource(final Path file) throws TemplateLoadException, IOException {
+        this.file = file.toAbsolutePath();
+
+        current.set(load(0));
+
+        watchService = this.file.getFileSystem().newWatchService();
+
+        try {
+            this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch(IOException|RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+
+        final Thread watcher = new Thread(this::watch, "template-watcher-" + this.file.getFileName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Returns the contents of the current valid template, which may differ from the file on disk if the file has been
+     *   replaced by an invalid template or if the new template hasn't been loaded yet.
+     * @return stream containing the data for the PowerPoint template.
+     */
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(current.get().data);
+    }
+
+    @Override
+    public SlideShowTemplate getTemplate() {
+        return current.get().template;
+    }
+
+    /**
+     * Get the version of the current template, which starts at zero and is incremented each time a new valid
+     *   template is loaded.
+     * @return the template version.
+     */
+    public long getVersion() {
+        return current.get().version;
+    }
+
+    /**
+     * Reloads the template file immediately, replacing the current template if the file contains a valid template.
+     * @throws TemplateLoadException if the file contains an invalid template; the current template is kept.
+     */
+    public synchronized void reload() throws TemplateLoadException {
+        current.set(load(current.get().version + 1));
+    }
+
+    /**
+     * Stops watching the template file; the current template will still be used.
+     * @throws IOException if there's an error closing the file watcher.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Reads and validates the template file.
+     * @param version the version number to assign to the template.
+     * @return the parsed template.
+     * @throws TemplateLoadException if the template is invalid or can't be read.
+     */
+    private Version load(final long version) throws TemplateLoadException {
+        final byte[] data;
+
+        try {
+            data = Files.readAllBytes(file);
+        }
+        catch(IOException e) {
+            throw new TemplateLoadException("Error while reading template file " + file, e);
+        }
+
+        return new Version(version, data, TemplateCache.parse(() -> new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * Background loop which reloads the template file whenever it changes, until the file watcher is closed.
+     */
+    private void watch() {
+        try {
+            while(true) {
+                boolean changed = false;
+
+                // Keep collecting events until the file settles down, so we don't try to parse a partial copy.
+                for (WatchKey key = watchService.take(); key != null; key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    for(final WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+
+                    if (!key.reset()) {
+                        LOGGER.warn("Template directory for {} is no longer accessible, no longer watching for changes", file);
+                        return;
+                    }
+                }
+
+                if (changed) {
+                    try {
+                        reload();
+                        LOGGER.info("Reloaded template {}, now at version {}", file, getVersion());
+                    }
+                    catch(TemplateLoadException|RuntimeException e) {
+                        // POI can fail in unexpected ways on a malformed template, which mustn't stop the watcher
+                        LOGGER.warn("Template " + file + " has changed but is invalid, keeping version " + getVersion(), e);
+                    }
+                }
+            }
+        }
+        catch(ClosedWatchServiceException e) {
+            // the source has been closed
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A valid template and the raw file data it was parsed from.
+     */
+    private static class Version {
+        private final long version;
+        private final byte[] data;
+        private final SlideShowTemplate template;
+
+        private Version(final long version, final byte[] data, final SlideShowTemplate template) {
+            this.version = version;
+            this.data = data;
+            this.template = template;
+        }
+    }
+}
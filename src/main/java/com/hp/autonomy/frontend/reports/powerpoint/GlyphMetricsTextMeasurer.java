@@ -0,0 +1,513 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Data;
+import org.apache.poi.sl.usermodel.Insets2D;
+import org.apache.poi.sl.usermodel.TextParagraph;
+import org.apache.poi.sl.usermodel.TextRun;
+import org.apache.poi.sl.usermodel.TextShape;
+import org.apache.poi.util.JvmBugs;
+import org.apache.poi.util.Units;
+import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
+import org.apache.poi.xslf.usermodel.XSLFTextRun;
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+
+/**
+ * A TextMeasurer which computes the height of text from the advance widths and line metrics of each character in each
+ *   font, breaking lines greedily at the same points as AWT's LineBreakMeasurer; so a paragraph is measured in
+ *   microseconds, without building any TextLayouts. The metrics are read from AWT once per character and font, so
+ *   the measurements match POI's.
+ *
+ * This handles Latin text and common punctuation without kerning, ligatures or bidirectional text, which covers most
+ *   reports; anything else, e.g. other scripts, tabs, subscripts or numbered bullets, is measured by a fallback measurer.
+ *
+ * <pre>
+ *     final TextMeasurer textMeasurer = new GlyphMetricsTextMeasurer(new TextMeasurementCache(10000));
+ * </pre>
+ */
+public class GlyphMetricsTextMeasurer implements TextMeasurer {
+
+    /** End of the Latin characters (ASCII, Latin-1 and Latin Extended-A and B) we have metrics for. */
+    private static final char LATIN_END = '\u0250';
+
+    /** The General Punctuation characters we have metrics for: spaces, dashes, quotes, ellipses etc. */
+    private static final char PUNCTUATION_START = '\u2000', PUNCTUATION_END = '\u2070';
+
+    private static final int GLYPH_TABLE_SIZE = LATIN_END + PUNCTUATION_END - PUNCTUATION_START;
+
+    /** EMUs to indent each level by, if a paragraph doesn't specify its margin or indent. */
+    private static final long DEFAULT_INDENT_EMU = 347663L;
+
+    /** The same graphics context POI measures text with. */
+    static final FontRenderContext FONT_RENDER_CONTEXT;
+
+    static {
+        final Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        FONT_RENDER_CONTEXT = graphics.getFontRenderContext();
+        graphics.dispose();
+    }
+
+    private static final ThreadLocal<BreakIterator> LINE_BREAKS = ThreadLocal.withInitial(BreakIterator::getLineInstance);
+
+    /** The measurer for text we can't handle. */
+    private final TextMeasurer fallback;
+
+    /** Glyph metrics for each font we've seen. */
+    private final ConcurrentMap<FontKey, FontTable> fonts = new ConcurrentHashMap<>();
+
+    private final AtomicLong measured = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * Creates a measurer which measures any text it can't handle with POI.
+     */
+    public GlyphMetricsTextMeasurer() {
+        this(TextMeasurer.POI);
+    }
+
+    /**
+     * Creates a measurer.
+     * @param fallback the measurer for any text we can't handle, e.g. a TextMeasurementCache.
+     */
+    public GlyphMetricsTextMeasurer(final TextMeasurer fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Measures the height of the text in a shape from glyph metrics if possible, otherwise with the fallback measurer.
+     * @param shape the text shape to measure.
+     * @return the height of the text, in points.
+     */
+    @Override
+    public double getTextHeight(final XSLFTextShape shape) {
+        if (shape.getWordWrap() && shape.getTextDirection() == TextShape.TextDirection.HORIZONTAL && !JvmBugs.hasLineBreakMeasurerBug()) {
+            final List<XSLFTextParagraph> paragraphs = shape.getTextParagraphs();
+            final List<ParagraphMeasurement> measurements = new ArrayList<>(paragraphs.size());
+
+            for(final XSLFTextParagraph paragraph : paragraphs) {
+                final ParagraphMeasurement measurement = measure(shape, paragraph);
+
+                if (measurement == null) {
+                    break;
+                }
+
+                measurements.add(measurement);
+            }
+
+            if (measurements.size() == paragraphs.size()) {
+                measured.incrementAndGet();
+                return ParagraphMeasurement.sum(paragraphs, measurements);
+            }
+        }
+
+        fallbacks.incrementAndGet();
+        return fallback.getTextHeight(shape);
+    }
+
+    /**
+     * Get a snapshot of the measurer's statistics.
+     * @return the statistics.
+     */
+    public Statistics getStatistics() {
+        return new Statistics(measured.get(), fallbacks.get(), fonts.size());
+    }
+
+    /**
+     * Measures a paragraph as in POI's DrawTextParagraph.breakText() and draw().
+     * @return the measurement, or null if we can't measure the paragraph.
+     */
+    private ParagraphMeasurement measure(final XSLFTextShape shape, final XSLFTextParagraph paragraph) {
+        final TextParagraph.BulletStyle bulletStyle = paragraph.getBulletStyle();
+
+        if (bulletStyle != null && bulletStyle.getAutoNumberingScheme() != null) {
+            return null;
+        }
+
+        final StringBuilder text = new StringBuilder();
+        final List<FontTable> runFonts = new ArrayList<>();
+        final List<Integer> runEnds = new ArrayList<>();
+
+        for(final XSLFTextRun run : paragraph.getTextRuns()) {
+            final String rawText = run.getRawText();
+
+            if (rawText == null || rawText.isEmpty()) {
+                continue;
+            }
+
+            if (run.isSubscript() || run.isSuperscript()) {
+                return null;
+            }
+
+            String fontFamily = run.getFontFamily();
+
+            if (fontFamily == null) {
+                fontFamily = paragraph.getDefaultFontFamily();
+            }
+
+            if ("Wingdings".equalsIgnoreCase(fontFamily)) {
+                // POI remaps its characters
+                return null;
+            }
+
+            final Double fontSize = run.getFontSize();
+            final TextRun.TextCap cap = run.getTextCap();
+
+            for(int ii = 0; ii < rawText.length(); ++ii) {
+                final char c = rawText.charAt(ii);
+                text.append(cap == TextRun.TextCap.ALL ? Character.toUpperCase(c) : cap == TextRun.TextCap.SMALL ? Character.toLowerCase(c) : c);
+            }
+
+            runFonts.add(getFontTable(new FontKey(fontFamily, (fontSize != null ? fontSize : paragraph.getDefaultFontSize()).floatValue(), run.isBold(), run.isItalic())));
+            runEnds.add(text.length());
+        }
+
+        if (text.length() == 0) {
+            // POI measures empty paragraphs as a space in the default font size
+            text.append(' ');
+            runFonts.add(getFontTable(new FontKey(null, paragraph.getDefaultFontSize().floatValue(), false, false)));
+            runEnds.add(1);
+        }
+
+        final int limit = text.length();
+        final GlyphMetrics[] glyphs = new GlyphMetrics[limit];
+
+        for(int run = 0, ii = 0; run < runFonts.size(); ++run) {
+            for(final int end = runEnds.get(run); ii < end; ++ii) {
+                glyphs[ii] = runFonts.get(run).get(text.charAt(ii));
+
+                if (glyphs[ii] == null) {
+                    return null;
+                }
+            }
+        }
+
+        final String string = text.toString();
+        final BreakIterator breaks = LINE_BREAKS.get();
+        breaks.setText(string);
+
+        final float[] lineHeights = new float[limit];
+        int lineCount = 0;
+        float firstLineHeight = 0;
+
+        // the shape and paragraph properties are slow to look up, so only do it once
+        final float firstLineWidth = (float) getWrappingWidth(shape, paragraph, true);
+        final float lineWidth = (float) getWrappingWidth(shape, paragraph, false);
+
+        for(int pos = 0; ; ) {
+            final float wrappingWidth = lineCount == 0 ? firstLineWidth : lineWidth;
+
+            int nextBreak = string.indexOf('\n', pos + 1);
+
+            if (nextBreak == -1) {
+                nextBreak = limit;
+            }
+
+            int end = nextOffset(string, glyphs, breaks, pos, wrappingWidth, nextBreak, true);
+
+            if (end == pos) {
+                end = nextOffset(string, glyphs, breaks, pos, wrappingWidth, nextBreak, false);
+
+                if (end == pos) {
+                    break;
+                }
+            }
+
+            final float lineHeight = getLineHeight(glyphs, pos, end);
+
+            if (lineCount == 0) {
+                firstLineHeight = lineHeight;
+            }
+
+            lineHeights[lineCount++] = lineHeight;
+
+            // skip over line breaks, which aren't part of the next line
+            pos = end < limit && string.charAt(end) == '\n' ? end + 1 : end;
+
+            if (end == limit) {
+                break;
+            }
+        }
+
+        if (lineCount == 0) {
+            return null;
+        }
+
+        return new ParagraphMeasurement(ParagraphMeasurement.sumLines(paragraph, lineHeights, lineCount), firstLineHeight, lineHeights[lineCount - 1]);
+    }
+
+    /**
+     * The width available to a line of the paragraph, as in POI's DrawTextParagraph.getWrappingWidth() for horizontal
+     *   wrapped text; plus the pixel POI adds for rounding errors.
+     */
+    static double getWrappingWidth(final XSLFTextShape shape, final XSLFTextParagraph paragraph, final boolean firstLine) {
+        final Insets2D insets = shape.getInsets();
+
+        int indentLevel = paragraph.getIndentLevel();
+
+        if (indentLevel == -1) {
+            indentLevel = 0;
+        }
+
+        Double leftMargin = paragraph.getLeftMargin();
+
+        if (leftMargin == null) {
+            leftMargin = Units.toPoints(DEFAULT_INDENT_EMU * (indentLevel + 1));
+        }
+
+        Double indent = paragraph.getIndent();
+
+        if (indent == null) {
+            indent = Units.toPoints(DEFAULT_INDENT_EMU * indentLevel);
+        }
+
+        Double rightMargin = paragraph.getRightMargin();
+
+        if (rightMargin == null) {
+            rightMargin = 0d;
+        }
+
+        final Rectangle2D anchor = shape.getAnchor();
+        double width = anchor.getWidth() - insets.left - insets.right - leftMargin - rightMargin;
+
+        if (firstLine) {
+            if (indent > 0) {
+                width -= indent;
+            }
+            else if (indent < 0) {
+                // hanging indentation: the first line starts at the left margin
+                width += leftMargin;
+            }
+        }
+
+        final double wrappingWidth = width + 1;
+        return wrappingWidth < 0 ? 1 : wrappingWidth;
+    }
+
+    /**
+     * Finds the end of the line starting at a position, as in AWT's LineBreakMeasurer.nextOffset().
+     */
+    private static int nextOffset(final String text, final GlyphMetrics[] glyphs, final BreakIterator breaks, final int pos, final float wrappingWidth, final int offsetLimit, final boolean requireNextWord) {
+        final int limit = text.length();
+        int nextOffset = pos;
+
+        if (pos < limit) {
+            // the first character which doesn't fit
+            final int charAtMaxAdvance = getLineBreakIndex(glyphs, pos, wrappingWidth);
+
+            if (charAtMaxAdvance == limit) {
+                nextOffset = limit;
+            }
+            else if (Character.isWhitespace(text.charAt(charAtMaxAdvance))) {
+                // trailing whitespace is allowed to overflow
+                nextOffset = breaks.following(charAtMaxAdvance);
+            }
+            else {
+                // break is in a word, so back up to the previous break
+                final int testPos = charAtMaxAdvance + 1;
+
+                if (testPos == limit) {
+                    breaks.last();
+                    nextOffset = breaks.previous();
+                }
+                else {
+                    nextOffset = breaks.preceding(testPos);
+                }
+
+                if (nextOffset <= pos) {
+                    // the first word doesn't fit on the line
+                    nextOffset = requireNextWord ? pos : Math.max(pos + 1, charAtMaxAdvance);
+                }
+            }
+        }
+
+        return Math.min(nextOffset, offsetLimit);
+    }
+
+    /**
+     * Finds the first character which doesn't fit in the wrapping width, as in AWT's TextMeasurer.getLineBreakIndex().
+     */
+    private static int getLineBreakIndex(final GlyphMetrics[] glyphs, final int pos, final float wrappingWidth) {
+        float width = wrappingWidth;
+        int index = pos - 1;
+
+        while(width >= 0 && ++index < glyphs.length) {
+            width -= glyphs[index].advance;
+        }
+
+        return index;
+    }
+
+    /**
+     * The height of a line, as in POI's DrawTextFragment.getHeight() of the line's TextLayout; whose ascent and descent
+     *   are the largest of any of its fonts, and whose leading is the most that any font needs below the descent.
+     */
+    private static float getLineHeight(final GlyphMetrics[] glyphs, final int start, final int end) {
+        float ascent = 0, descent = 0, descentAndLeading = 0;
+
+        for(int ii = start; ii < end; ++ii) {
+            final GlyphMetrics glyph = glyphs[ii];
+            ascent = Math.max(ascent, glyph.ascent);
+            descent = Math.max(descent, glyph.descent);
+            descentAndLeading = Math.max(descentAndLeading, glyph.descent + glyph.leading);
+        }
+
+        return (float) (Math.ceil(ascent) + Math.ceil(descent) + (descentAndLeading - descent));
+    }
+
+    /**
+     * The attributes POI lays out a run's text with, apart from those which don't affect its measurements.
+     * @param family the font family, or null for the default.
+     * @param size the font size, in points.
+     * @param bold whether the text is bold.
+     * @param italic whether the text is italic.
+     * @return the text attributes.
+     */
+    static Map<TextAttribute, Object> getFontAttributes(final String family, final float size, final boolean bold, final boolean italic) {
+        final Map<TextAttribute, Object> attributes = new HashMap<>();
+
+        if (family != null) {
+            attributes.put(TextAttribute.FAMILY, family);
+        }
+
+        attributes.put(TextAttribute.SIZE, size);
+
+        if (bold) {
+            attributes.put(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD);
+        }
+
+        if (italic) {
+            attributes.put(TextAttribute.POSTURE, TextAttribute.POSTURE_OBLIQUE);
+        }
+
+        return attributes;
+    }
+
+    private FontTable getFontTable(final FontKey key) {
+        return fonts.computeIfAbsent(key, FontTable::new);
+    }
+
+    /**
+     * Snapshot of the measurer's statistics.
+     */
+    @Data
+    public static class Statistics {
+        /** Number of shapes measured from glyph metrics. */
+        private final long measuredCount;
+
+        /** Number of shapes measured by the fallback measurer. */
+        private final long fallbackCount;
+
+        /** Number of fonts we've read glyph metrics for. */
+        private final int fontCount;
+    }
+
+    /**
+     * A font, as POI describes it to AWT.
+     */
+    private static class FontKey {
+        private final String family;
+        private final float size;
+        private final boolean bold;
+        private final boolean italic;
+
+        private FontKey(final String family, final float size, final boolean bold, final boolean italic) {
+            this.family = family;
+            this.size = size;
+            this.bold = bold;
+            this.italic = italic;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof FontKey)) {
+                return false;
+            }
+
+            final FontKey other = (FontKey) o;
+            return Objects.equals(family, other.family) && size == other.size && bold == other.bold && italic == other.italic;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(family, size, bold, italic);
+        }
+    }
+
+    /**
+     * The metrics of each character in a font, read from AWT on first use.
+     */
+    private static class FontTable {
+        private final Map<TextAttribute, Object> attributes;
+
+        /** Metrics by character index; populated lazily, which is safe since the metrics are immutable. */
+        private final GlyphMetrics[] glyphs = new GlyphMetrics[GLYPH_TABLE_SIZE];
+
+        private FontTable(final FontKey key) {
+            attributes = getFontAttributes(key.family, key.size, key.bold, key.italic);
+        }
+
+        /**
+         * Get the metrics of a character.
+         * @return the metrics, or null if we don't handle the character.
+         */
+        private GlyphMetrics get(final char c) {
+            final int index;
+
+            if (c == '\n' || c >= ' ' && c < '\u007f' || c >= '\u00a0' && c < LATIN_END && c != '\u00ad') {
+                index = c;
+            }
+            else if (c >= PUNCTUATION_START && c <= '\u200a' || c >= '\u2010' && c <= '\u2027' || c >= '\u202f' && c <= '\u205f') {
+                // leaving out zero-width characters, bidirectional formatting and line and paragraph separators
+                index = LATIN_END + c - PUNCTUATION_START;
+            }
+            else {
+                return null;
+            }
+
+            GlyphMetrics glyph = glyphs[index];
+
+            if (glyph == null) {
+                final TextLayout layout = new TextLayout(String.valueOf(c), attributes, FONT_RENDER_CONTEXT);
+                glyph = new GlyphMetrics(layout.getAdvance(), layout.getAscent(), layout.getDescent(), layout.getLeading());
+                glyphs[index] = glyph;
+            }
+
+            return glyph;
+        }
+    }
+
+    /**
+     * The advance width and line metrics of a character.
+     */
+    private static class GlyphMetrics {
+        private final float advance;
+        private final float ascent;
+        private final float descent;
+        private final float leading;
+
+        private GlyphMetrics(final float advance, final float ascent, final float descent, final float leading) {
+            this.advance = advance;
+            this.ascent = ascent;
+            this.descent = descent;
+            this.leading = leading;
+        }
+    }
+}
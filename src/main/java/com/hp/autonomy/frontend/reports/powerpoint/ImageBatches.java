@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Internal implementation class which adapts single-image fetches to the batch methods of {@link ImageSource}.
+ * Images which can't be fetched are left out of the results, rather than failing the whole batch.
+ */
+final class ImageBatches {
+
+    private ImageBatches() {}
+
+    /**
+     * Fetches each image in turn on the calling thread.
+     * @param imageIds the image identifiers.
+     * @param fetcher fetches a single image.
+     * @return image data by image identifier, leaving out images which couldn't be fetched.
+     */
+    static Map<String, ImageData> fetchAll(final Collection<String> imageIds, final Function<String, ImageData> fetcher) {
+        final Map<String, ImageData> images = new HashMap<>();
+
+        for(final String imageId : imageIds) {
+            if (!images.containsKey(imageId)) {
+                try {
+                    images.put(imageId, fetcher.apply(imageId));
+                }
+                catch(CancellationException e) {
+                    throw e;
+                }
+                catch(RuntimeException e) {
+                    // leave the image out
+                }
+            }
+        }
+
+        return images;
+    }
+
+    /**
+     * Fetches each image concurrently on an executor. A single image, or any image the executor rejects, is fetched on
+     *   the calling thread instead. Cancelling the returned future interrupts any fetches still running.
+     * @param imageIds the image identifiers.
+     * @param fetcher fetches a single image.
+     * @param executor the executor to fetch the images on.
+     * @return a future of the image data by image identifier, leaving out images which couldn't be fetched.
+     */
+    static CompletableFuture<Map<String, ImageData>> fetchAllAsync(final Collection<String> imageIds, final Function<String, ImageData> fetcher, final Executor executor) {
+        final Set<String> distinctIds = new LinkedHashSet<>(imageIds);
+        final Map<String, ImageData> images = new ConcurrentHashMap<>();
+        final CompletableFuture<Map<String, ImageData>> result = new CompletableFuture<>();
+
+        if (distinctIds.isEmpty()) {
+            result.complete(images);
+            return result;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(distinctIds.size());
+        final List<FutureTask<Void>> tasks = new ArrayList<>(distinctIds.size());
+
+        for(final String imageId : distinctIds) {
+            tasks.add(new FutureTask<Void>(() -> {
+                try {
+                    images.put(imageId, fetcher.apply(imageId));
+                }
+                catch(RuntimeException e) {
+                    // leave the image out
+                }
+            }, null) {
+                @Override
+                protected void done() {
+                    if (remaining.decrementAndGet() == 0) {
+                        result.complete(images);
+                    }
+                }
+            });
+        }
+
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                for(final FutureTask<Void> task : tasks) {
+                    task.cancel(true);
+                }
+            }
+        });
+
+        for(final FutureTask<Void> task : tasks) {
+            if (tasks.size() == 1) {
+                // no point handing a single image to another thread
+                task.run();
+            }
+            else {
+                try {
+                    executor.execute(task);
+                }
+                catch(RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Applies a function to the result of a future, cancelling the original future if the result is cancelled; which
+     *   {@link CompletableFuture#thenApply} doesn't do on its own.
+     * @param future the original future.
+     * @param function the function to apply to its result.
+     * @param <T> the type of the original result.
+     * @param <R> the type of the new result.
+     * @return the future of the new result.
+     */
+    static <T, R> CompletableFuture<R> thenApply(final CompletableFuture<T> future, final Function<? super T, ? extends R> function) {
+        final CompletableFuture<R> result = future.thenApply(function);
+
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+
+        return result;
+    }
+}
@@ -4,18 +4,45 @@
  */
 package com.hp.autonomy.frontend.reports.powerpoint;
 
+import java.awt.Dimension;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
+import lombok.ToString;
 import org.apache.poi.sl.usermodel.PictureData;
 
 /**
  * Data class to store image type and data.
  */
 @Data
+@ToString(exclude = "pixelSize")
 public class ImageData {
 
+    /** Marker for images whose size couldn't be read from their header. */
+    private static final Dimension UNKNOWN_SIZE = new Dimension();
+
     /** The image type. */
     private final PictureData.PictureType type;
 
     /** The image data. */
     private final byte[] data;
+
+    /** The image size in pixels, read from the image header on first use; so it's cached along with the image. */
+    @Setter(AccessLevel.NONE)
+    private transient volatile Dimension pixelSize;
+
+    /**
+     * Get the image size in pixels, read from the PNG, JPEG or GIF header rather than by decoding the image.
+     * @return the image size in pixels, or null if it couldn't be read from the header.
+     */
+    public Dimension getPixelSize() {
+        Dimension size = pixelSize;
+
+        if (size == null) {
+            size = ImageDimensions.probe(data);
+            pixelSize = size == null ? UNKNOWN_SIZE : size;
+        }
+
+        return size == null || size == UNKNOWN_SIZE ? null : new Dimension(size);
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.awt.Dimension;
+
+/**
+ * Internal implementation class which reads the pixel dimensions of PNG, JPEG and GIF images from their headers,
+ *   so we can lay out an image without decoding all of it.
+ * The format is detected from the data itself rather than the declared content type, and the dimensions match what
+ *   ImageIO would decode: the first frame for GIFs, and ignoring any EXIF orientation for JPEGs.
+ */
+final class ImageDimensions {
+
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    private ImageDimensions() {}
+
+    /**
+     * Reads the dimensions of an image from its header.
+     * @param data the image data.
+     * @return the dimensions in pixels, or null if the image isn't a PNG, JPEG or GIF or its header is invalid.
+     */
+    static Dimension probe(final byte[] data) {
+        try {
+            if (startsWith(data, PNG_SIGNATURE)) {
+                return probePNG(data);
+            }
+
+            if (data.length > 2 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8) {
+                return probeJPEG(data);
+            }
+
+            if (startsWith(data, new byte[]{ 'G', 'I', 'F', '8' })) {
+                return probeGIF(data);
+            }
+        }
+        catch(ArrayIndexOutOfBoundsException e) {
+            // truncated header
+        }
+
+        return null;
+    }
+
+    /**
+     * PNG: the IHDR chunk must come first, with the width and height as the first two big-endian ints.
+     */
+    private static Dimension probePNG(final byte[] data) {
+        if (data[12] != 'I' || data[13] != 'H' || data[14] != 'D' || data[15] != 'R') {
+            return null;
+        }
+
+        return valid(readIntBE(data, 16), readIntBE(data, 20));
+    }
+
+    /**
+     * JPEG: walk the marker segments until the start-of-frame segment, which contains the height and width.
+     */
+    private static Dimension probeJPEG(final byte[] data) {
+        int offset = 2;
+
+        while(true) {
+            if ((data[offset] & 0xFF) != 0xFF) {
+                return null;
+            }
+
+            // markers may be preceded by any number of fill bytes
+            while((data[offset] & 0xFF) == 0xFF) {
+                ++offset;
+            }
+
+            final int marker = data[offset++] & 0xFF;
+
+            if (marker == 0xD8 || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // standalone markers without a length
+                continue;
+            }
+
+            if (marker == 0xD9 || marker == 0xDA) {
+                // end of image, or start of scan without a frame header
+                return null;
+            }
+
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                // start of frame: length (2), precision (1), height (2), width (2)
+                return valid(readShortBE(data, offset + 5), readShortBE(data, offset + 3));
+            }
+
+            offset += readShortBE(data, offset);
+        }
+    }
+
+    /**
+     * GIF: skip the global colour table and any extension blocks to get to the first image descriptor, since that's
+     *   the size ImageIO decodes rather than the logical screen size.
+     */
+    private static Dimension probeGIF(final byte[] data) {
+        // header (6), logical screen width (2), height (2), flags (1), background colour (1), aspect ratio (1)
+        final int flags = data[10] & 0xFF;
+        int offset = 13;
+
+        if ((flags & 0x80) != 0) {
+            offset += 3 << ((flags & 0x07) + 1);
+        }
+
+        while(true) {
+            final int block = data[offset++] & 0xFF;
+
+            if (block == 0x2C) {
+                // image descriptor: left (2), top (2), width (2), height (2)
+                return valid(readShortLE(data, offset + 4), readShortLE(data, offset + 6));
+            }
+
+            if (block != 0x21) {
+                // trailer, or an invalid block
+                return null;
+            }
+
+            // extension: label (1), then data sub-blocks until a zero-length block
+            ++offset;
+
+            for(int length = data[offset++] & 0xFF; length != 0; length = data[offset++] & 0xFF) {
+                offset += length;
+            }
+        }
+    }
+
+    private static Dimension valid(final long width, final long height) {
+        return width > 0 && height > 0 && width <= Integer.MAX_VALUE && height <= Integer.MAX_VALUE
+                ? new Dimension((int) width, (int) height)
+                : null;
+    }
+
+    private static boolean startsWith(final byte[] data, final byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+
+        for(int ii = 0; ii < prefix.length; ++ii) {
+            if (data[ii] != prefix[ii]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long readIntBE(final byte[] data, final int offset) {
+        return ((long) (data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static int readShortBE(final byte[] data, final int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readShortLE(final byte[] data, final int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+}
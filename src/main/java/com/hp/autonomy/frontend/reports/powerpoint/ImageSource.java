@@ -4,6 +4,11 @@
  */
 package com.hp.autonomy.frontend.reports.powerpoint;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 /**
  * An interface to convert image identifiers into actual image data for embedding into PowerPoint.
  *
@@ -15,8 +20,26 @@ package com.hp.autonomy.frontend.reports.powerpoint;
  *   WebAndDataUriImageSource.allowHttpURI which only allows URL paths ending in '.jpeg', '.jpg', '.png' or '.gif'
  *   with your own whitelist.
  *
+ * To avoid decoding or downloading the same images repeatedly, you can wrap any ImageSource in a CachingImageSource;
+ *   with a DiskCachingImageSource underneath to keep a larger set of images on local disk across restarts.
+ * To avoid concurrent downloads of the same image, and repeatedly retrying failing images or hosts, wrap it in a
+ *   CoalescingImageSource.
+ * To shrink images which are much larger than they're displayed, e.g. list thumbnails, wrap it in a
+ *   NormalizingImageSource.
+ * Decorators which are asked for an image with a display size pass the size on to the ImageSource they wrap, so
+ *   they can be stacked in any order: a CachingImageSource under a NormalizingImageSource caches the original
+ *   images, and one over it caches the shrunk images for each display size.
+ *
+ * Renderers gather all the image identifiers in a request up front and fetch them through the batch methods, so an
+ *   implementation backed by a store which supports multi-gets (e.g. one database query for all a list's thumbnails)
+ *   can override them. The default batch methods just fetch each image with the single-image methods.
+ *
  *  @see DataUriImageSource
  *  @see WebAndDataUriImageSource
+ *  @see CachingImageSource
+ *  @see DiskCachingImageSource
+ *  @see CoalescingImageSource
+ *  @see NormalizingImageSource
  */
 public interface ImageSource {
 
@@ -28,6 +51,72 @@ public interface ImageSource {
      */
     ImageData getImageData(final String imageId) throws IllegalArgumentException;
 
+    /**
+     * Converts an image identifier into image data, for an image which will be displayed at a known size; so an
+     *   implementation can return a smaller image if the original has more detail than can be displayed.
+     * The default implementation ignores the size.
+     * @param imageId the image identifier.
+     * @param width the width the image will be displayed at, in points.
+     * @param height the height the image will be displayed at, in points.
+     * @return image data corresponding to the image.
+     * @throws IllegalArgumentException if we can't fetch the image.
+     * @see NormalizingImageSource
+     */
+    default ImageData getImageData(final String imageId, final double width, final double height) throws IllegalArgumentException {
+        return getImageData(imageId);
+    }
+
+    /**
+     * Converts a batch of image identifiers into image data.
+     * The default implementation fetches each image in turn with {@link #getImageData(String)}.
+     * @param imageIds the image identifiers.
+     * @return image data by image identifier; images which can't be fetched are left out.
+     */
+    default Map<String, ImageData> getImageData(final Collection<String> imageIds) {
+        return ImageBatches.fetchAll(imageIds, this::getImageData);
+    }
+
+    /**
+     * Converts a batch of image identifiers into image data, for images which will all be displayed at the same known
+     *   size, e.g. list thumbnails.
+     * The default implementation fetches each image in turn with {@link #getImageData(String, double, double)}.
+     * @param imageIds the image identifiers.
+     * @param width the width the images will be displayed at, in points.
+     * @param height the height the images will be displayed at, in points.
+     * @return image data by image identifier; images which can't be fetched are left out.
+     */
+    default Map<String, ImageData> getImageData(final Collection<String> imageIds, final double width, final double height) {
+        return ImageBatches.fetchAll(imageIds, imageId -> getImageData(imageId, width, height));
+    }
+
+    /**
+     * Asynchronously converts a batch of image identifiers into image data.
+     * The default implementation fetches the images concurrently on the executor with {@link #getImageData(String)}.
+     * Cancelling the returned future should stop any fetches still running.
+     * @param imageIds the image identifiers.
+     * @param executor an executor the implementation may use to fetch the images.
+     * @return a future of the image data by image identifier; images which can't be fetched are left out.
+     */
+    default CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final Executor executor) {
+        return ImageBatches.fetchAllAsync(imageIds, this::getImageData, executor);
+    }
+
+    /**
+     * Asynchronously converts a batch of image identifiers into image data, for images which will all be displayed at
+     *   the same known size.
+     * The default implementation fetches the images concurrently on the executor with
+     *   {@link #getImageData(String, double, double)}.
+     * Cancelling the returned future should stop any fetches still running.
+     * @param imageIds the image identifiers.
+     * @param width the width the images will be displayed at, in points.
+     * @param height the height the images will be displayed at, in points.
+     * @param executor an executor the implementation may use to fetch the images.
+     * @return a future of the image data by image identifier; images which can't be fetched are left out.
+     */
+    default CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final double width, final double height, final Executor executor) {
+        return ImageBatches.fetchAllAsync(imageIds, imageId -> getImageData(imageId, width, height), executor);
+    }
+
     ImageSource DEFAULT = new DataUriImageSource();
 
 }
\ No newline at end of file
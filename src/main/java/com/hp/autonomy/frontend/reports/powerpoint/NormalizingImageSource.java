@@ -0,0 +1,348 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import lombok.Data;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.poi.sl.usermodel.PictureData;
+
+/**
+ * An ImageSource decorator which downscales images which have much more detail than their display size needs, e.g.
+ *   a full-size photo used as a list thumbnail, and re-encodes them; which makes the presentation smaller and quicker
+ *   to write.
+ *
+ * Images are only downscaled when they're requested with a display size (see
+ *   {@link ImageSource#getImageData(String, double, double)}), and never upscaled. Images with transparency are
+ *   re-encoded as PNG and other images as JPEG; the original is kept if re-encoding doesn't make it smaller, or if
+ *   it can't be decoded. Normalized images are cached by the hash of the original image data and their target size.
+ *
+ * To also avoid fetching the original images repeatedly, wrap a {@link CachingImageSource}; wrapping this in a
+ *   CachingImageSource instead caches the shrunk images, separately for each display size.
+ *
+ * <pre>
+ *     final ImageSource imageSource = new NormalizingImageSource(new CachingImageSource(new WebAndDataUriImageSource(), 64 * 1024 * 1024), 150, 1000);
+ * </pre>
+ */
+public class NormalizingImageSource implements ImageSource {
+
+    /** Points per inch. */
+    private static final double POINTS_PER_INCH = 72;
+
+    /** JPEG quality, from 0 to 1. */
+    private static final float JPEG_QUALITY = 0.85f;
+
+    /** Image types we can decode. */
+    private static final Set<PictureData.PictureType> DECODABLE_TYPES = EnumSet.of(
+            PictureData.PictureType.JPEG, PictureData.PictureType.PNG, PictureData.PictureType.GIF, PictureData.PictureType.BMP);
+
+    /** The image source to normalize. */
+    private final ImageSource delegate;
+
+    /** The resolution to downscale images to, in dots per inch of their display size. */
+    private final double dpi;
+
+    /** Normalized images by original image hash and target size, in least-recently-used order. Guarded by itself. */
+    private final Map<String, ImageData> cache;
+
+    private final AtomicLong normalized = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong originalBytes = new AtomicLong();
+    private final AtomicLong normalizedBytes = new AtomicLong();
+
+    /**
+     * Creates an image source which downscales images to a given resolution.
+     * @param delegate the image source to normalize.
+     * @param dpi the resolution to downscale images to, in dots per inch of their display size; e.g. 150.
+     * @param maxCachedImages the maximum number of normalized images to cache.
+     */
+    public NormalizingImageSource(final ImageSource delegate, final double dpi, final int maxCachedImages) {
+        if (!(dpi > 0) || maxCachedImages < 0) {
+            throw new IllegalArgumentException("The resolution should be positive and the cache size shouldn't be negative");
+        }
+
+        this.delegate = delegate;
+        this.dpi = dpi;
+        this.cache = new LinkedHashMap<String, ImageData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, ImageData> eldest) {
+                return size() > maxCachedImages;
+            }
+        };
+    }
+
+    /**
+     * Returns the original image, since we don't know its display size.
+     * @param imageId the image identifier.
+     * @return image data corresponding to the image.
+     * @throws IllegalArgumentException if we can't fetch the image.
+     */
+    @Override
+    public ImageData getImageData(final String imageId) throws IllegalArgumentException {
+        return delegate.getImageData(imageId);
+    }
+
+    /**
+     * Returns the image, downscaled to the configured resolution for its display size if it's larger than that.
+     * @param imageId the image identifier.
+     * @param width the width the image will be displayed at, in points.
+     * @param height the height the image will be displayed at, in points.
+     * @return image data corresponding to the image.
+     * @throws IllegalArgumentException if we can't fetch the image.
+     */
+    @Override
+    public ImageData getImageData(final String imageId, final double width, final double height) throws IllegalArgumentException {
+        return fit(delegate.getImageData(imageId, width, height), width, height);
+    }
+
+    /**
+     * Returns the original images, since we don't know their display size.
+     * @param imageIds the image identifiers.
+     * @return image data by image identifier; images which can't be fetched are left out.
+     */
+    @Override
+    public Map<String, ImageData> getImageData(final Collection<String> imageIds) {
+        return delegate.getImageData(imageIds);
+    }
+
+    /**
+     * Returns the images, downscaled to the configured resolution for their display size if they're larger than that.
+     * @param imageIds the image identifiers.
+     * @param width the width the images will be displayed at, in points.
+     * @param height the height the images will be displayed at, in points.
+     * @return image data by image identifier; images which can't be fetched are left out.
+     */
+    @Override
+    public Map<String, ImageData> getImageData(final Collection<String> imageIds, final double width, final double height) {
+        return fitAll(delegate.getImageData(imageIds, width, height), width, height);
+    }
+
+    /**
+     * Asynchronously returns the original images, since we don't know their display size.
+     * @param imageIds the image identifiers.
+     * @param executor an executor the underlying image source may use to fetch the images.
+     * @return a future of the image data by image identifier; images which can't be fetched are left out.
+     */
+    @Override
+    public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final Executor executor) {
+        return delegate.getImageDataAsync(imageIds, executor);
+    }
+
+    /**
+     * Asynchronously returns the images, downscaled to the configured resolution for their display size if they're
+     *   larger than that.
+     * @param imageIds the image identifiers.
+     * @param width the width the images will be displayed at, in points.
+     * @param height the height the images will be displayed at, in points.
+     * @param executor an executor the underlying image source may use to fetch the images.
+     * @return a future of the image data by image identifier; images which can't be fetched are left out.
+     */
+    @Override
+    public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final double width, final double height, final Executor executor) {
+        return ImageBatches.thenApply(delegate.getImageDataAsync(imageIds, width, height, executor), images -> fitAll(images, width, height));
+    }
+
+    private Map<String, ImageData> fitAll(final Map<String, ImageData> images, final double width, final double height) {
+        final Map<String, ImageData> fitted = new HashMap<>();
+
+        for(final Map.Entry<String, ImageData> entry : images.entrySet()) {
+            fitted.put(entry.getKey(), fit(entry.getValue(), width, height));
+        }
+
+        return fitted;
+    }
+
+    /**
+     * Downscales an image to the configured resolution for its display size, if it's larger than that.
+     * @param original the original image.
+     * @param width the width the image will be displayed at, in points.
+     * @param height the height the image will be displayed at, in points.
+     * @return the downscaled image, or the original image if it's small enough or can't be downscaled.
+     */
+    private ImageData fit(final ImageData original, final double width, final double height) {
+        final int targetW = (int) Math.ceil(width / POINTS_PER_INCH * dpi);
+        final int targetH = (int) Math.ceil(height / POINTS_PER_INCH * dpi);
+
+        if (targetW < 1 || targetH < 1 || !DECODABLE_TYPES.contains(original.getType())) {
+            return original;
+        }
+
+        final String key = DigestUtils.sha256Hex(original.getData()) + ':' + targetW + 'x' + targetH;
+
+        synchronized(cache) {
+            final ImageData cached = cache.get(key);
+
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        final ImageData result = normalize(original, targetW, targetH);
+
+        normalized.incrementAndGet();
+        originalBytes.addAndGet(original.getData().length);
+        normalizedBytes.addAndGet(result.getData().length);
+
+        synchronized(cache) {
+            cache.put(key, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Get a snapshot of the normalization statistics.
+     * @return the normalization statistics.
+     */
+    public Statistics getStatistics() {
+        return new Statistics(normalized.get(), hits.get(), originalBytes.get(), normalizedBytes.get());
+    }
+
+    /**
+     * Downscales and re-encodes an image, if it's larger than the target size.
+     * @param original the original image.
+     * @param targetW the width needed, in pixels.
+     * @param targetH the height needed, in pixels.
+     * @return the normalized image, or the original image if it couldn't be made smaller.
+     */
+    private static ImageData normalize(final ImageData original, final int targetW, final int targetH) {
+        try {
+            final BufferedImage source = ImageIO.read(new ByteArrayInputStream(original.getData()));
+
+            if (source == null) {
+                return original;
+            }
+
+            // Keep the aspect ratio, making sure both dimensions have enough detail.
+            final double scale = Math.max((double) targetW / source.getWidth(), (double) targetH / source.getHeight());
+
+            if (scale >= 1) {
+                return original;
+            }
+
+            final boolean alpha = source.getColorModel().hasAlpha();
+
+            final BufferedImage scaled = downscale(source,
+                    Math.max(1, (int) Math.round(source.getWidth() * scale)),
+                    Math.max(1, (int) Math.round(source.getHeight() * scale)),
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+            final ImageData result = alpha
+                    ? new ImageData(PictureData.PictureType.PNG, encodePNG(scaled))
+                    : new ImageData(PictureData.PictureType.JPEG, encodeJPEG(scaled));
+
+            return result.getData().length < original.getData().length ? result : original;
+        }
+        catch(IOException|RuntimeException e) {
+            // normalization is only an optimization, so just use the original if the image can't be processed
+            return original;
+        }
+    }
+
+    /**
+     * Downscales an image, halving it at most each step since a single bilinear step would skip most of the pixels.
+     * @param source the image to downscale.
+     * @param width the target width.
+     * @param height the target height.
+     * @param type the BufferedImage type to use.
+     * @return the downscaled image.
+     */
+    private static BufferedImage downscale(final BufferedImage source, final int width, final int height, final int type) {
+        BufferedImage image = source;
+
+        do {
+            final int stepW = Math.max(width, image.getWidth() / 2);
+            final int stepH = Math.max(height, image.getHeight() / 2);
+
+            final BufferedImage step = new BufferedImage(stepW, stepH, type);
+            final Graphics2D graphics = step.createGraphics();
+
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(image, 0, 0, stepW, stepH, null);
+            }
+            finally {
+                graphics.dispose();
+            }
+
+            image = step;
+        }
+        while(image.getWidth() > width || image.getHeight() > height);
+
+        return image;
+    }
+
+    private static byte[] encodePNG(final BufferedImage image) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static byte[] encodeJPEG(final BufferedImage image) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try(final ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally {
+            writer.dispose();
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Snapshot of the normalization statistics.
+     */
+    @Data
+    public static class Statistics {
+        /** Number of images which were checked for normalization, whether or not they were made smaller. */
+        private final long normalizedCount;
+
+        /** Number of times a normalized image was found in the cache. */
+        private final long hitCount;
+
+        /** Total size of the original images, in bytes. */
+        private final long originalBytes;
+
+        /** Total size of the normalized images, in bytes. */
+        private final long normalizedBytes;
+
+        /**
+         * Get the number of bytes saved by normalizing images; not counting cache hits.
+         * @return the number of bytes saved.
+         */
+        public long getBytesSaved() {
+            return originalBytes - normalizedBytes;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.List;
+import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
+
+/**
+ * Internal implementation class holding the measured height of a paragraph, and of its first and last lines which
+ *   determine the space before and after it.
+ */
+final class ParagraphMeasurement {
+
+    final double height;
+    final double firstLineHeight;
+    final double lastLineHeight;
+
+    ParagraphMeasurement(final double height, final double firstLineHeight, final double lastLineHeight) {
+        this.height = height;
+        this.firstLineHeight = firstLineHeight;
+        this.lastLineHeight = lastLineHeight;
+    }
+
+    /**
+     * Sums the heights of a shape's paragraphs and the space between them, as in POI's DrawTextShape.drawParagraphs().
+     * @param paragraphs the paragraphs of the shape.
+     * @param measurements the measurement of each paragraph.
+     * @return the height of the shape's text, in points.
+     */
+    static double sum(final List<XSLFTextParagraph> paragraphs, final List<ParagraphMeasurement> measurements) {
+        double y = 0;
+
+        for(int ii = 0; ii < paragraphs.size(); ++ii) {
+            final XSLFTextParagraph paragraph = paragraphs.get(ii);
+            final ParagraphMeasurement measurement = measurements.get(ii);
+
+            if (ii > 0) {
+                final Double spaceBefore = paragraph.getSpaceBefore();
+
+                if (spaceBefore != null && spaceBefore > 0) {
+                    // percentage of the height of the first line
+                    y += spaceBefore * 0.01 * measurement.firstLineHeight;
+                }
+                else if (spaceBefore != null) {
+                    // negative values are absolute spacing in points
+                    y += -spaceBefore;
+                }
+            }
+
+            y += measurement.height;
+
+            if (ii < paragraphs.size() - 1) {
+                final Double spaceAfter = paragraph.getSpaceAfter();
+
+                if (spaceAfter != null && spaceAfter > 0) {
+                    y += spaceAfter * 0.01 * measurement.lastLineHeight;
+                }
+                else if (spaceAfter != null) {
+                    y += -spaceAfter;
+                }
+            }
+        }
+
+        return y;
+    }
+
+    /**
+     * Adds up the heights of a paragraph's lines, as in POI's DrawTextParagraph.draw().
+     * @param paragraph the paragraph.
+     * @param lineHeights the height of each line.
+     * @param lineCount the number of lines.
+     * @return the paragraph's height, in points.
+     */
+    static double sumLines(final XSLFTextParagraph paragraph, final float[] lineHeights, final int lineCount) {
+        final Double lineSpacing = paragraph.getLineSpacing();
+        final double spacing = lineSpacing != null ? lineSpacing : 100;
+        double height = 0;
+
+        for(int ii = 0; ii < lineCount; ++ii) {
+            // positive values are a percentage of the line height, negative values are absolute spacing in points
+            height += spacing > 0 ? spacing * 0.01 * lineHeights[ii] : -spacing;
+        }
+
+        return height;
+    }
+}
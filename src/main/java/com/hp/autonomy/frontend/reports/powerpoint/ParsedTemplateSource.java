@@ -0,0 +1,21 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+/**
+ * Internal interface for anything which can supply an already-parsed and validated template.
+ * If a {@link TemplateSource} also implements this interface, the service will use its parsed template directly instead
+ *   of parsing and caching the template itself.
+ */
+interface ParsedTemplateSource {
+    /**
+     * Get the current parsed template. The returned template must not change once returned, so a presentation which
+     *   is being generated will keep using the same template even if the source is updated in the meantime.
+     * @return the internal parsed template and chart information.
+     * @throws TemplateLoadException if there's no valid template available.
+     */
+    SlideShowTemplate getTemplate() throws TemplateLoadException;
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.awt.Dimension;
+import java.lang.reflect.Field;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.Units;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFPictureData;
+
+/**
+ * Internal implementation class which fills in the checksum and size that POI caches for each picture, using the
+ *   image header, so POI doesn't decode the whole image.
+ * XMLSlideShow.addPicture compares the new picture's checksum with that of every picture already in the presentation,
+ *   and POI only caches a picture's checksum together with its size, which it gets by decoding raster images with
+ *   ImageIO. So without this, adding a thumbnail after a map would decode the map.
+ * POI has no way to set these, so they're set by reflection; if that isn't possible, we leave it to POI.
+ */
+final class PictureProperties {
+
+    private static final Field CHECKSUM = getField("checksum");
+    private static final Field ORIG_SIZE = getField("origSize");
+
+    private PictureProperties() {}
+
+    /**
+     * Adds a picture to a presentation, reusing an existing picture with the same data, and caches its properties.
+     * @param ppt the presentation.
+     * @param image the image data.
+     * @return the picture data.
+     */
+    static XSLFPictureData addPicture(final XMLSlideShow ppt, final ImageData image) {
+        final XSLFPictureData picture = ppt.addPicture(image.getData(), image.getType());
+        cache(picture, image.getData(), image.getPixelSize());
+        return picture;
+    }
+
+    /**
+     * Caches a picture's properties, reading its size from the image header if POI doesn't have them yet.
+     * @param picture the picture data, which must still have its data.
+     */
+    static void cache(final XSLFPictureData picture) {
+        if (!isCached(picture)) {
+            final byte[] data = picture.getData();
+            cache(picture, data, ImageDimensions.probe(data));
+        }
+    }
+
+    /**
+     * Caches a picture's properties, computing them just as POI would but using the pixel size from the image header.
+     * @param picture the picture data.
+     * @param data the picture's data.
+     * @param pixels the image size in pixels, or null if it's unknown.
+     */
+    private static void cache(final XSLFPictureData picture, final byte[] data, final Dimension pixels) {
+        final PictureData.PictureType type = picture.getType();
+
+        // POI reads EMF, WMF and PICT sizes from their headers itself, and we can only read raster image headers
+        if (pixels != null && CHECKSUM != null && ORIG_SIZE != null && type != null
+                && type != PictureData.PictureType.EMF && type != PictureData.PictureType.WMF && type != PictureData.PictureType.PICT) {
+            try {
+                if (CHECKSUM.get(picture) == null) {
+                    CHECKSUM.set(picture, IOUtils.calculateChecksum(data));
+                }
+
+                if (ORIG_SIZE.get(picture) == null) {
+                    ORIG_SIZE.set(picture, new Dimension((int) Units.pixelToPoints(pixels.width), (int) Units.pixelToPoints(pixels.height)));
+                }
+
+                return;
+            }
+            catch(IllegalAccessException e) {
+                // fall back to POI
+            }
+        }
+
+        picture.getChecksum();
+    }
+
+    /**
+     * Checks whether POI has already cached a picture's properties.
+     * @param picture the picture data.
+     * @return true if the properties are cached; false if they aren't, or if we can't tell.
+     */
+    private static boolean isCached(final XSLFPictureData picture) {
+        if (CHECKSUM == null || ORIG_SIZE == null) {
+            return false;
+        }
+
+        try {
+            return CHECKSUM.get(picture) != null && ORIG_SIZE.get(picture) != null;
+        }
+        catch(IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Looks up one of the private fields which XSLFPictureData caches its properties in.
+     * @param name the field name.
+     * @return the field, or null if it's not available in this version of POI.
+     */
+    private static Field getField(final String name) {
+        try {
+            final Field field = XSLFPictureData.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+        catch(NoSuchFieldException|SecurityException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Internal implementation class which applies a {@link CompressionPolicy} to each entry POI writes.
+ * POI writes to any ZipOutputStream it's given, but doesn't know the size and checksum of each entry in advance,
+ *   which a stored entry needs; so we buffer stored entries and only write them once they're complete.
+ * Entries whose content was moved out of the presentation by a {@link SlideSpiller} are copied from the spiller
+ *   instead of from what POI writes.
+ */
+class PolicyZipOutputStream extends ZipOutputStream {
+
+    private final CompressionPolicy policy;
+
+    /** Where to copy spilled entries from, or null if nothing was spilled. */
+    private final SlideSpiller spiller;
+
+    /** The name of the current entry if it was spilled, otherwise null. */
+    private String spilledEntry;
+
+    /** Buffer for the current entry if it's being stored, otherwise null. */
+    private StoredData storedData;
+
+    /** The current entry if it's being stored. */
+    private ZipEntry storedEntry;
+
+    PolicyZipOutputStream(final OutputStream out, final CompressionPolicy policy) {
+        this(out, policy, null);
+    }
+
+    PolicyZipOutputStream(final OutputStream out, final CompressionPolicy policy, final SlideSpiller spiller) {
+        super(out);
+        this.policy = policy;
+        this.spiller = spiller;
+        setLevel(policy.getLevel());
+    }
+
+    @Override
+    public void putNextEntry(final ZipEntry entry) throws IOException {
+        writeSpilledEntry();
+        closeStoredEntry();
+
+        if (spiller != null && spiller.isSpilled(entry.getName())) {
+            spilledEntry = entry.getName();
+        }
+
+        if (policy.isStored(entry.getName())) {
+            storedEntry = entry;
+            storedData = new StoredData();
+        }
+        else {
+            super.putNextEntry(entry);
+        }
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+        // what POI writes for a spilled entry is only a placeholder, e.g. an empty slide
+        if (spilledEntry == null) {
+            if (storedData != null) {
+                storedData.write(b, off, len);
+            }
+            else {
+                super.write(b, off, len);
+            }
+        }
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        writeSpilledEntry();
+
+        if (storedData != null) {
+            closeStoredEntry();
+        }
+        else {
+            super.closeEntry();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writeSpilledEntry();
+        closeStoredEntry();
+        super.finish();
+    }
+
+    /**
+     * Writes the current entry's spilled content, if it was spilled.
+     * @throws IOException if there's an IO error.
+     */
+    private void writeSpilledEntry() throws IOException {
+        if (spilledEntry != null) {
+            final String name = spilledEntry;
+            // once it's no longer the spilled entry, what we write goes into the entry as usual
+            spilledEntry = null;
+            spiller.writeTo(name, this);
+        }
+    }
+
+    /**
+     * Writes the buffered stored entry, if there is one.
+     * @throws IOException if there's an IO error.
+     */
+    private void closeStoredEntry() throws IOException {
+        if (storedData != null) {
+            final StoredData data = storedData;
+            storedData = null;
+
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(data.size());
+            storedEntry.setCompressedSize(data.size());
+            storedEntry.setCrc(data.crc());
+
+            super.putNextEntry(storedEntry);
+            data.writeTo(this);
+            super.closeEntry();
+        }
+    }
+
+    /**
+     * Buffer which can compute its checksum without copying its contents.
+     */
+    private static class StoredData extends ByteArrayOutputStream {
+        private long crc() {
+            final CRC32 crc = new CRC32();
+            crc.update(buf, 0, count);
+            return crc.getValue();
+        }
+    }
+}
@@ -12,10 +12,22 @@ import com.hp.autonomy.frontend.reports.powerpoint.dto.ReportData;
 import com.hp.autonomy.frontend.reports.powerpoint.dto.SunburstData;
 import com.hp.autonomy.frontend.reports.powerpoint.dto.TableData;
 import com.hp.autonomy.frontend.reports.powerpoint.dto.TopicMapData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import org.apache.poi.xslf.usermodel.XMLSlideShow;
 
 /**
  * Primary interface to the PowerPoint API.
+ *
+ * Each visualization can either be returned as a presentation, or written straight to an output stream; the latter
+ *   avoids keeping both the presentation and a serialized copy in memory, and releases the presentation as soon as
+ *   it's written. To write to a {@link java.nio.channels.WritableByteChannel}, wrap it with
+ *   {@link java.nio.channels.Channels#newOutputStream(java.nio.channels.WritableByteChannel)}.
  * @see <a href="https://github.com/hpe-idol/java-powerpoint-report/" target="_blank">README.md</a> for examples and usage instructions.
  */
 public interface PowerPointService {
@@ -45,10 +57,12 @@ public interface PowerPointService {
 
     /**
      * Renders a table as a PowerPoint presentation.
-     * @param tableData the data representing the table.
-     * @param title an optional title.
-     * @return a PowerPoint presentation with a single slide.
+     * @param tableData the data representing the table; its first row is the header.
+     * @param title an optional title, which will be shown on each slide.
+     * @return a PowerPoint presentation with the table's rows paginated over multiple slides, with the header row at
+     *          the top of each slide.
      * @throws TemplateLoadException if the template is invalid.
+     * @throws IllegalArgumentException if the table doesn't have any rows or columns.
      */
     XMLSlideShow table(TableData tableData, String title) throws TemplateLoadException;
 
@@ -73,6 +87,44 @@ public interface PowerPointService {
      */
     XMLSlideShow list(ListData documentList, String results, String sortBy) throws TemplateLoadException;
 
+    /**
+     * Renders a list of documents read from an iterator as a PowerPoint presentation.
+     * PowerPointServiceImpl reads the documents as the slides are laid out; so the documents don't all have to be in
+     *   memory at once, e.g. to export tens of thousands of results. Only a batch of documents and their thumbnails
+     *   are held at a time, rather than the whole list. The default implementation reads all the documents into a
+     *   ListData first, then renders it with {@link #list(ListData, String, String)}.
+     * @param format the list's formatting, i.e. whether to draw icons and its font sizes; its documents are ignored.
+     * @param docs the documents, which are read once, in order.
+     * @param results an optional string which will be shown in the top-left.
+     * @param sortBy an optional string which will be shown in the top-right.
+     * @return a PowerPoint presentation with the list results paginated over multiple slides.
+     * @throws TemplateLoadException if the template is invalid.
+     * @see #list(ListData, String, String)
+     */
+    default XMLSlideShow list(final ListData format, final Iterator<ListData.Document> docs, final String results, final String sortBy) throws TemplateLoadException {
+        final List<ListData.Document> documents = new ArrayList<>();
+        docs.forEachRemaining(documents::add);
+
+        return list(new ListData(documents.toArray(new ListData.Document[documents.size()]), format.isDrawIcons(), format.getTitleFontSize(), format.getDateFontSize(), format.getRefFontSize(), format.getSummaryFontSize()), results, sortBy);
+    }
+
+    /**
+     * Renders a list of documents as a PowerPoint presentation, reading the documents from a spliterator as the slides
+     *   are laid out, e.g. from a {@link java.util.stream.Stream#spliterator() stream} of search results.
+     * This isn't an overload of {@link #list(ListData, Iterator, String, String)}, so a null list of documents isn't
+     *   ambiguous.
+     * @param format the list's formatting, i.e. whether to draw icons and its font sizes; its documents are ignored.
+     * @param docs the documents, which are read once, in order.
+     * @param results an optional string which will be shown in the top-left.
+     * @param sortBy an optional string which will be shown in the top-right.
+     * @return a PowerPoint presentation with the list results paginated over multiple slides.
+     * @throws TemplateLoadException if the template is invalid.
+     * @see #list(ListData, Iterator, String, String)
+     */
+    default XMLSlideShow listSpliterator(final ListData format, final Spliterator<ListData.Document> docs, final String results, final String sortBy) throws TemplateLoadException {
+        return list(format, Spliterators.iterator(docs), results, sortBy);
+    }
+
     /**
      * Renders a date graph as a PowerPoint presentation.
      * This is drawn based on the xy scatterplot chart (which must be contained in the second slide in the template).
@@ -91,4 +143,125 @@ public interface PowerPointService {
      */
     XMLSlideShow report(ReportData report, final boolean slidePerVisualizer) throws TemplateLoadException;
 
+    /**
+     * Writes a presentation to an output stream as a .pptx file, e.g. a presentation returned by this service.
+     * The presentation shouldn't be used afterwards, since its resources are released once it's written.
+     * @param pptx the presentation to write.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws IOException if there's an IO error writing the presentation.
+     */
+    default void write(final XMLSlideShow pptx, final OutputStream outputStream) throws IOException {
+        try {
+            pptx.write(new NonClosingOutputStream(outputStream));
+        }
+        finally {
+            pptx.getPackage().revert();
+        }
+    }
+
+    /**
+     * Renders a topic map as a PowerPoint presentation, and writes it to an output stream.
+     * @param topicmap the data representing the topic map paths.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws TemplateLoadException if the template is invalid.
+     * @throws IOException if there's an IO error writing the presentation.
+     * @see #topicmap(TopicMapData)
+     */
+    default void topicmap(final TopicMapData topicmap, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        write(topicmap(topicmap), outputStream);
+    }
+
+    /**
+     * Renders a sunburst as a PowerPoint presentation, and writes it to an output stream.
+     * @param sunburst the data representing the sunburst.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws TemplateLoadException if the template is invalid.
+     * @throws IOException if there's an IO error writing the presentation.
+     * @see #sunburst(SunburstData)
+     */
+    default void sunburst(final SunburstData sunburst, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        write(sunburst(sunburst), outputStream);
+    }
+
+    /**
+     * Renders a table as a PowerPoint presentation, and writes it to an output stream.
+     * @param tableData the data representing the table.
+     * @param title an optional title.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws TemplateLoadException if the template is invalid.
+     * @throws IOException if there's an IO error writing the presentation.
+     * @see #table(TableData, String)
+     */
+    default void table(final TableData tableData, final String title, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        write(table(tableData, title), outputStream);
+    }
+
+    /**
+     * Renders a map as a PowerPoint presentation, and writes it to an output stream.
+     * @param map the data representing the map.
+     * @param title an optional title.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws TemplateLoadException if the template is invalid.
+     * @throws IOException if there's an IO error writing the presentation.
+     * @see #map(MapData, String)
+     */
+    default void map(final MapData map, final String title, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        write(map(map, title), outputStream);
+    }
+
+    /**
+     * Renders a list of documents as a PowerPoint presentation, and writes it to an output stream.
+     * @param documentList the data containing all the documents
+     * @param results an optional string which will be shown in the top-left.
+     * @param sortBy an optional string which will be shown in the top-right.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws TemplateLoadException if the template is invalid.
+     * @throws IOException if there's an IO error writing the presentation.
+     * @see #list(ListData, String, String)
+     */
+    default void list(final ListData documentList, final String results, final String sortBy, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        write(list(documentList, results, sortBy), outputStream);
+    }
+
+    /**
+     * Renders a list of documents read from an iterator as a PowerPoint presentation, and writes it to an output stream.
+     * @param format the list's formatting, i.e. whether to draw icons and its font sizes; its documents are ignored.
+     * @param docs the documents, which are read once, in order.
+     * @param results an optional string which will be shown in the top-left.
+     * @param sortBy an optional string which will be shown in the top-right.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws TemplateLoadException if the template is invalid.
+     * @throws IOException if there's an IO error writing the presentation.
+     * @see #list(ListData, Iterator, String, String)
+     */
+    default void list(final ListData format, final Iterator<ListData.Document> docs, final String results, final String sortBy, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        write(list(format, docs, results, sortBy), outputStream);
+    }
+
+    /**
+     * Renders a date graph as a PowerPoint presentation, and writes it to an output stream.
+     * @param data the data representing the graph series to plot.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws TemplateLoadException if the template is invalid.
+     * @throws IOException if there's an IO error writing the presentation.
+     * @see #graph(DategraphData)
+     */
+    default void graph(final DategraphData data, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        write(graph(data), outputStream);
+    }
+
+    /**
+     * Render a composite report consisting of multiple visualizations as a PowerPoint presentation, and writes it to
+     *   an output stream.
+     * @param report the data containing a list of visualizations to render.
+     * @param slidePerVisualizer if true, we'll put each visualization on a separate slide.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @throws TemplateLoadException if the template is invalid.
+     * @throws IOException if there's an IO error writing the presentation.
+     * @see #report(ReportData, boolean)
+     */
+    default void report(final ReportData report, final boolean slidePerVisualizer, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        write(report(report, slidePerVisualizer), outputStream);
+    }
+
 }
@@ -21,22 +21,34 @@ import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URI;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.namespace.QName;
+import lombok.Data;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.poi.POIXMLDocumentPart;
-import org.apache.poi.POIXMLException;
 import org.apache.poi.hssf.util.CellReference;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.openxml4j.exceptions.NotOfficeXmlFileException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.openxml4j.opc.PackagePartName;
@@ -44,14 +56,12 @@ import org.apache.poi.openxml4j.opc.PackageRelationship;
 import org.apache.poi.openxml4j.opc.PackagingURIHelper;
 import org.apache.poi.openxml4j.opc.TargetMode;
 import org.apache.poi.sl.usermodel.ShapeType;
-import org.apache.poi.sl.usermodel.TableCell;
 import org.apache.poi.sl.usermodel.TextParagraph;
 import org.apache.poi.sl.usermodel.TextShape;
 import org.apache.poi.sl.usermodel.VerticalAlignment;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.util.AreaReference;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.util.IOUtils;
 import org.apache.poi.xslf.usermodel.XMLSlideShow;
 import org.apache.poi.xslf.usermodel.XSLFAutoShape;
 import org.apache.poi.xslf.usermodel.XSLFChart;
@@ -64,6 +74,7 @@ import org.apache.poi.xslf.usermodel.XSLFShape;
 import org.apache.poi.xslf.usermodel.XSLFSlide;
 import org.apache.poi.xslf.usermodel.XSLFTable;
 import org.apache.poi.xslf.usermodel.XSLFTableCell;
+import org.apache.poi.xslf.usermodel.XSLFTableStyles;
 import org.apache.poi.xslf.usermodel.XSLFTextBox;
 import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
 import org.apache.poi.xslf.usermodel.XSLFTextRun;
@@ -94,11 +105,23 @@ import org.openxmlformats.schemas.drawingml.x2006.main.CTGradientFillProperties;
 import org.openxmlformats.schemas.drawingml.x2006.main.CTGradientStop;
 import org.openxmlformats.schemas.drawingml.x2006.main.CTGradientStopList;
 import org.openxmlformats.schemas.drawingml.x2006.main.CTHyperlink;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTLineEndProperties;
 import org.openxmlformats.schemas.drawingml.x2006.main.CTLineProperties;
 import org.openxmlformats.schemas.drawingml.x2006.main.CTSRgbColor;
 import org.openxmlformats.schemas.drawingml.x2006.main.CTShapeProperties;
 import org.openxmlformats.schemas.drawingml.x2006.main.CTSolidColorFillProperties;
-import org.openxmlformats.schemas.drawingml.x2006.main.CTTextNormalAutofit;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTTableCell;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTTableCellBorderStyle;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTTableStyle;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTTableStyleList;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTThemeableLineStyle;
+import org.openxmlformats.schemas.drawingml.x2006.main.STCompoundLine;
+import org.openxmlformats.schemas.drawingml.x2006.main.STLineCap;
+import org.openxmlformats.schemas.drawingml.x2006.main.STLineEndLength;
+import org.openxmlformats.schemas.drawingml.x2006.main.STLineEndType;
+import org.openxmlformats.schemas.drawingml.x2006.main.STLineEndWidth;
+import org.openxmlformats.schemas.drawingml.x2006.main.STPenAlignment;
+import org.openxmlformats.schemas.drawingml.x2006.main.STPresetLineDashVal;
 import org.openxmlformats.schemas.presentationml.x2006.main.CTBuildList;
 import org.openxmlformats.schemas.presentationml.x2006.main.CTShape;
 import org.openxmlformats.schemas.presentationml.x2006.main.CTSlide;
@@ -128,12 +151,46 @@ import static org.apache.poi.POIXMLTypeLoader.DEFAULT_XML_OPTIONS;
 
 /**
  * Default implementation of PowerPointService.
+ * The methods which write lists and reports to an output stream move each slide to a temp file as soon as it's
+ *   finished, rather than keeping every slide in memory until the presentation is written; so their heap usage doesn't
+ *   grow with the number of slides. Reports are only spilled if they have a slide per visualizer, and their charts are
+ *   kept in memory.
  * @see <a href="https://github.com/hpe-idol/java-powerpoint-report/" target="_blank">README.md</a> for examples and usage instructions.
  */
 public class PowerPointServiceImpl implements PowerPointService {
 
-    /** The source for the template file. */
-    private final TemplateSource pptxTemplate;
+    /** Find's thumbnail is 97px by 55px, hardcoded in the CSS in .document-thumbnail; we draw it at 80% of that. */
+    private static final double THUMBNAIL_WIDTH = 97 * 0.8, THUMBNAIL_HEIGHT = 55 * 0.8;
+
+    /** How much space to leave at the left and right edge of a list, and at the top of each of its slides. */
+    private static final double LIST_X_MARGIN = 20, LIST_Y_MARGIN = 5;
+
+    /** Size of the icon drawn beside each document in a list. */
+    private static final double LIST_ICON_WIDTH = 20, LIST_ICON_HEIGHT = 24;
+
+    /** Space between a list item's heading and its thumbnail, and between list items. */
+    private static final double LIST_THUMBNAIL_MARGIN = 4., LIST_ITEM_MARGIN = 5.;
+
+    /** Matches the query text highlighted in document summaries. */
+    private static final Pattern HIGHLIGHT_PATTERN = Pattern.compile("<HavenSearch-QueryText-Placeholder>(.*?)</HavenSearch-QueryText-Placeholder>");
+
+    /** Number of documents read from a streamed list at a time, fetching their thumbnails as a batch. */
+    private static final int LIST_BATCH_SIZE = 32;
+
+    /** Number of threads in the default image executor, i.e. how many images are fetched at once. */
+    private static final int DEFAULT_IMAGE_THREADS = 8;
+
+    /** Number of paragraph measurements kept in the default text measurement cache. */
+    static final int DEFAULT_TEXT_MEASUREMENTS = 10000;
+
+    /** Number of topic map label font scales kept in the label fitter's cache. */
+    static final int DEFAULT_TOPIC_MAP_LABELS = 1000;
+
+    /** The table style which draws a black border around every cell of a table. */
+    private static final String TABLE_STYLE_ID = "{3F9D2B7A-6C41-4E8B-A5D0-1B72E8C94F36}", TABLE_STYLE_NAME = "Black Borders";
+
+    /** The parsed template, loaded from the template source on first use and reused afterwards. */
+    private final ParsedTemplateSource pptxTemplate;
 
     /** The source for template settings, like anchor points etc. */
     private final TemplateSettingsSource pptxSettings;
@@ -141,16 +198,89 @@ public class PowerPointServiceImpl implements PowerPointService {
     /** The image source for converting image identifiers to image data. */
     private final ImageSource imageSource;
 
+    /** How to compress presentations written to output streams. */
+    private final CompressionPolicy compressionPolicy;
+
+    /** The executor used to fetch a list's thumbnails concurrently. */
+    private final Executor imageExecutor;
+
+    /** Measures text, to lay out lists, report titles, text and topic map labels. */
+    private final TextMeasurer textMeasurer;
+
+    /** Chooses the font scale of topic map labels, using the text measurer. */
+    private final TopicMapLabelFitter topicMapLabelFitter;
+
     /**
-     * Constructor for the PowerPointServiceImpl, allowing you to provide your own template and settings.
+     * Constructor for the PowerPointServiceImpl, allowing you to provide your own template, settings, compression, the
+     *   executor used to fetch images concurrently and how to measure text.
      * @param pptxTemplate what template .pptx file to use.
      * @param pptxSettings what template settings to use.
      * @param imageSource what image source to use for converting image identifiers to image data.
+     * @param compressionPolicy how to compress presentations written to output streams.
+     * @param imageExecutor what executor to fetch a list's thumbnails on; its size bounds how many are fetched at once.
+     * @param textMeasurer what to measure text with, e.g. a TextMeasurementCache or GlyphMetricsTextMeasurer; it can be shared between services.
      */
-    public PowerPointServiceImpl(final TemplateSource pptxTemplate, final TemplateSettingsSource pptxSettings, final ImageSource imageSource) {
-        this.pptxTemplate = pptxTemplate;
+    public PowerPointServiceImpl(final TemplateSource pptxTemplate, final TemplateSettingsSource pptxSettings, final ImageSource imageSource, final CompressionPolicy compressionPolicy, final Executor imageExecutor, final TextMeasurer textMeasurer) {
+        this(pptxTemplate, pptxSettings, imageSource, compressionPolicy, imageExecutor, new TopicMapLabelFitter(textMeasurer, DEFAULT_TOPIC_MAP_LABELS));
+    }
+
+    /**
+     * Internal constructor for services which share a topic map label fitter, and so its cached label scales; text is
+     *   measured with the fitter's text measurer.
+     * @param pptxTemplate what template .pptx file to use.
+     * @param pptxSettings what template settings to use.
+     * @param imageSource what image source to use for converting image identifiers to image data.
+     * @param compressionPolicy how to compress presentations written to output streams.
+     * @param imageExecutor what executor to fetch a list's thumbnails on; its size bounds how many are fetched at once.
+     * @param topicMapLabelFitter what to choose the font scale of topic map labels with.
+     */
+    PowerPointServiceImpl(final TemplateSource pptxTemplate, final TemplateSettingsSource pptxSettings, final ImageSource imageSource, final CompressionPolicy compressionPolicy, final Executor imageExecutor, final TopicMapLabelFitter topicMapLabelFitter) {
+        this.pptxTemplate = pptxTemplate instanceof ParsedTemplateSource
+                ? (ParsedTemplateSource) pptxTemplate
+                : new TemplateCache(pptxTemplate);
         this.pptxSettings = pptxSettings;
         this.imageSource = imageSource;
+        this.compressionPolicy = compressionPolicy;
+        this.imageExecutor = imageExecutor;
+        this.textMeasurer = topicMapLabelFitter.getTextMeasurer();
+        this.topicMapLabelFitter = topicMapLabelFitter;
+    }
+
+    /**
+     * Constructor for the PowerPointServiceImpl, allowing you to provide your own template, settings, compression and
+     *   the executor used to fetch images concurrently.
+     * Text measurements are cached in a new cache of {@value #DEFAULT_TEXT_MEASUREMENTS} paragraphs.
+     * @param pptxTemplate what template .pptx file to use.
+     * @param pptxSettings what template settings to use.
+     * @param imageSource what image source to use for converting image identifiers to image data.
+     * @param compressionPolicy how to compress presentations written to output streams.
+     * @param imageExecutor what executor to fetch a list's thumbnails on; its size bounds how many are fetched at once.
+     */
+    public PowerPointServiceImpl(final TemplateSource pptxTemplate, final TemplateSettingsSource pptxSettings, final ImageSource imageSource, final CompressionPolicy compressionPolicy, final Executor imageExecutor) {
+        this(pptxTemplate, pptxSettings, imageSource, compressionPolicy, imageExecutor, new TextMeasurementCache(DEFAULT_TEXT_MEASUREMENTS));
+    }
+
+    /**
+     * Constructor for the PowerPointServiceImpl, allowing you to provide your own template, settings and compression.
+     * Thumbnails are fetched on a shared pool of {@value #DEFAULT_IMAGE_THREADS} threads.
+     * @param pptxTemplate what template .pptx file to use.
+     * @param pptxSettings what template settings to use.
+     * @param imageSource what image source to use for converting image identifiers to image data.
+     * @param compressionPolicy how to compress presentations written to output streams.
+     */
+    public PowerPointServiceImpl(final TemplateSource pptxTemplate, final TemplateSettingsSource pptxSettings, final ImageSource imageSource, final CompressionPolicy compressionPolicy) {
+        this(pptxTemplate, pptxSettings, imageSource, compressionPolicy, DefaultImageExecutor.INSTANCE);
+    }
+
+    /**
+     * Constructor for the PowerPointServiceImpl, allowing you to provide your own template and settings.
+     * This uses the default compression policy.
+     * @param pptxTemplate what template .pptx file to use.
+     * @param pptxSettings what template settings to use.
+     * @param imageSource what image source to use for converting image identifiers to image data.
+     */
+    public PowerPointServiceImpl(final TemplateSource pptxTemplate, final TemplateSettingsSource pptxSettings, final ImageSource imageSource) {
+        this(pptxTemplate, pptxSettings, imageSource, CompressionPolicy.DEFAULT);
     }
 
     /**
@@ -176,20 +306,44 @@ public class PowerPointServiceImpl implements PowerPointService {
         loadTemplate();
     }
 
+    @Override
+    public void write(final XMLSlideShow pptx, final OutputStream outputStream) throws IOException {
+        write(pptx, outputStream, null);
+    }
+
+    /**
+     * Internal implementation to write a presentation, some of whose slides may have been spilled to a temp file.
+     * @param pptx the presentation, which can't be used afterwards.
+     * @param outputStream the stream to write to; it will be flushed but not closed.
+     * @param spiller what the presentation's finished slides were spilled to, if anything.
+     * @throws IOException if there's an IO error.
+     */
+    private void write(final XMLSlideShow pptx, final OutputStream outputStream, final SlideSpiller spiller) throws IOException {
+        try {
+            pptx.write(new PolicyZipOutputStream(new NonClosingOutputStream(outputStream), compressionPolicy, spiller));
+        }
+        finally {
+            pptx.getPackage().revert();
+        }
+    }
+
     /**
-     * Utility function to load and parse the template file.
+     * Utility function to get the parsed template file; it's only parsed on first use.
      * @return the internal parsed template and chart information.
      * @throws TemplateLoadException if any errors occurred.
      */
     private SlideShowTemplate loadTemplate() throws TemplateLoadException {
-        try(InputStream inputStream = pptxTemplate.getInputStream()) {
-            return new SlideShowTemplate(inputStream);
-        }
-        catch(IOException e) {
-            throw new TemplateLoadException("Error while loading template", e);
-        }
-        catch(NotOfficeXmlFileException|POIXMLException e) {
-            throw new TemplateLoadException("File is not a valid Office PowerPoint file", e);
+        return pptxTemplate.getTemplate();
+    }
+
+    /**
+     * Utility function to stop rendering if the current thread has been interrupted, e.g. if an asynchronous render
+     *   from {@link AsyncPowerPointService} has been cancelled. The interrupt status is left set.
+     * @throws CancellationException if the current thread has been interrupted.
+     */
+    private static void checkCancelled() throws CancellationException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Rendering was interrupted");
         }
     }
 
@@ -221,7 +375,7 @@ public class PowerPointServiceImpl implements PowerPointService {
     public XMLSlideShow topicmap(
             final TopicMapData topicmap
     ) throws TemplateLoadException {
-        final XMLSlideShow ppt = loadTemplate().getSlideShow();
+        final XMLSlideShow ppt = loadTemplate().createSlideShow();
         final XSLFSlide slide = ppt.createSlide();
 
         addTopicMap(slide, createPageAnchor(ppt), topicmap);
@@ -235,8 +389,10 @@ public class PowerPointServiceImpl implements PowerPointService {
      * @param anchor bounding rectangle to draw onto, in PowerPoint coordinates.
      * @param data the topic map data.
      */
-    private static void addTopicMap(final XSLFSlide slide, final Rectangle2D.Double anchor, final TopicMapData data) {
+    private void addTopicMap(final XSLFSlide slide, final Rectangle2D.Double anchor, final TopicMapData data) {
         for(final TopicMapData.Path reqPath : data.getPaths()) {
+            checkCancelled();
+
             final XSLFFreeformShape shape = slide.createFreeform();
             final Path2D.Double path = new Path2D.Double();
 
@@ -268,32 +424,9 @@ public class PowerPointServiceImpl implements PowerPointService {
             textRun.setFontColor(Color.WHITE);
             textRun.setBold(true);
 
-            final CTShape cs = (CTShape) shape.getXmlObject();
+            topicMapLabelFitter.fit(shape, path.getBounds2D().getHeight());
 
-            double max = 100, min = 1, scale = 100;
-            final CTTextNormalAutofit autoFit = cs.getTxBody().getBodyPr().getNormAutofit();
-            final double availHeight = path.getBounds2D().getHeight();
-            final int RESIZE_ATTEMPTS = 7;
-
-            for (int attempts = 0; attempts < RESIZE_ATTEMPTS; ++attempts) {
-                // PowerPoint doesn't resize the text till you edit it once, which means the text initially looks too
-                //   large when you first view the slide; so we binary-chop to get a sensible initial approximation.
-                // OpenOffice does the text resize on load so it doesn't have this problem.
-                autoFit.setFontScale(Math.max(1, (int)(scale * 1000)));
-
-                final double textHeight = shape.getTextHeight();
-                if (textHeight < availHeight) {
-                    min = scale;
-                    scale = 0.5 * (min + max);
-                }
-                else if (textHeight > availHeight) {
-                    max = scale;
-                    scale = 0.5 * (min + max);
-                }
-                else {
-                    break;
-                }
-            }
+            final CTShape cs = (CTShape) shape.getXmlObject();
 
             final int opacity = (int) (100000 * reqPath.getOpacity());
             final Color c1 = Color.decode(reqPath.getColor());
@@ -424,7 +557,7 @@ public class PowerPointServiceImpl implements PowerPointService {
         }
 
         final SlideShowTemplate template = loadTemplate();
-        final XMLSlideShow ppt = template.getSlideShow();
+        final XMLSlideShow ppt = template.createSlideShow();
         final XSLFSlide slide = ppt.createSlide();
 
         final int shapeId = 1;
@@ -521,6 +654,8 @@ public class PowerPointServiceImpl implements PowerPointService {
         }
 
         for(int idx = 0; idx < values.length; ++idx) {
+            checkCancelled();
+
             final CTStrVal categoryPoint = categoryData.addNewPt();
             categoryPoint.setIdx(idx);
             categoryPoint.setV(categories[idx]);
@@ -594,7 +729,7 @@ public class PowerPointServiceImpl implements PowerPointService {
         numRef.setF(new CellRangeAddress(1, values.length, 1, 1).formatAsString(sheet.getSheetName(), true));
 
         try {
-            writeChart(template.getSlideShow(), slide, baseChart, chartSpace, workbook, relId);
+            writeChart(slide.getSlideShow(), slide, baseChart, template.getDoughnutChartParts(), chartSpace, workbook, relId);
         }
         catch(IOException|InvalidFormatException e) {
             throw new TemplateLoadException("Error writing chart in loaded template", e);
@@ -639,34 +774,342 @@ public class PowerPointServiceImpl implements PowerPointService {
 
     @Override
     public XMLSlideShow table(final TableData tableData, final String title) throws TemplateLoadException {
+        return table(tableData, title, (SlideSpiller) null);
+    }
+
+    @Override
+    public void table(final TableData tableData, final String title, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        try(SlideSpiller spiller = new SlideSpiller()) {
+            write(table(tableData, title, spiller), outputStream, spiller);
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Internal implementation to render a table as a series of slides, with its first row as a header on each of them.
+     * The height of each row is estimated up front from its cells' text, since PowerPoint only grows the rows to fit
+     *   their text once the presentation is opened; then as many rows as fit are put on each slide, or a single row if
+     *   it doesn't fit by itself.
+     * @param tableData the table data.
+     * @param title optional title, which will be shown at the top of each slide.
+     * @param spiller what to spill each slide to once it's finished, or null to keep them all in memory.
+     * @return a new presentation.
+     * @throws TemplateLoadException if the template is invalid.
+     */
+    private XMLSlideShow table(final TableData tableData, final String title, final SlideSpiller spiller) throws TemplateLoadException {
         final int rows = tableData.getRows(),
                   cols = tableData.getCols();
         final String[] data = tableData.getCells();
 
-        final XMLSlideShow ppt = loadTemplate().getSlideShow();
-        final XSLFSlide sl = ppt.createSlide();
+        if (rows < 1 || cols < 1) {
+            throw new IllegalArgumentException("Tables need at least one row and column");
+        }
+
+        final SlideShowTemplate template = loadTemplate();
+        final XMLSlideShow ppt = template.createSlideShow();
+        addTableStyle(ppt);
 
         final Rectangle2D.Double pageAnchor = createPageAnchor(ppt);
+        final double textHeight = StringUtils.isNotBlank(title) ? 0.1 * pageAnchor.getHeight() : 0;
+        final Rectangle2D.Double anchor = remainingSpace(pageAnchor, textHeight);
 
-        final double textHeight;
+        final double[] colWidths = getColumnWidths(cols, anchor.getWidth());
+        // As with lists, the cells are measured on a slide in a copy of the template
+        final XSLFSlide sizingSlide = template.borrowSizingSlide();
+        final double[] rowHeights;
 
-        if (StringUtils.isNotBlank(title)) {
-            textHeight = 0.1 * pageAnchor.getHeight();
-            final XSLFTextBox textBox = sl.createTextBox();
-            textBox.setText(title);
-            textBox.setHorizontalCentered(true);
-            textBox.setTextAutofit(TextShape.TextAutofit.SHAPE);
-            textBox.setAnchor(startingSpace(pageAnchor, textHeight));
+        try {
+            rowHeights = estimateRowHeights(sizingSlide, colWidths, rows, data);
         }
-        else {
-            textHeight = 0;
+        finally {
+            template.returnSizingSlide(sizingSlide);
         }
 
-        addTable(sl, remainingSpace(pageAnchor, textHeight), rows, cols, data, false);
+        int row = 1;
+
+        do {
+            checkCancelled();
+
+            // Take as many rows as fit under the header, but at least one
+            double tableH = rowHeights[0];
+            int end = row;
+
+            while(end < rows && (end == row || tableH + rowHeights[end] <= anchor.getHeight())) {
+                tableH += rowHeights[end++];
+            }
+
+            final XSLFSlide sl = ppt.createSlide();
+
+            if (textHeight > 0) {
+                final XSLFTextBox textBox = sl.createTextBox();
+                textBox.setText(title);
+                textBox.setHorizontalCentered(true);
+                textBox.setTextAutofit(TextShape.TextAutofit.SHAPE);
+                textBox.setAnchor(startingSpace(pageAnchor, textHeight));
+            }
+
+            addTableRows(sl, anchor, colWidths, rowHeights, data, row, end);
+
+            if (spiller != null) {
+                spiller.spill(sl);
+            }
+
+            row = end;
+        }
+        while(row < rows);
 
         return ppt;
     }
 
+    /**
+     * Internal implementation to estimate the height of each row of a table, as the height of its tallest cell's text
+     *   with the default cell margins.
+     * Measuring text with the text measurer is slow, and most cells are a single line; so cells whose text is narrow
+     *   enough to fit on one line in the column's font are taken to be as tall as one line of text, and only the rest
+     *   are measured.
+     * @param sizingSlide the slide to measure text on, from the same template as the table's presentation.
+     * @param colWidths the width of each column.
+     * @param rows number of rows.
+     * @param data the data for each cell, laid out row-by-row.
+     * @return the height of each row.
+     */
+    private double[] estimateRowHeights(final XSLFSlide sizingSlide, final double[] colWidths, final int rows, final String[] data) {
+        final int cols = colWidths.length;
+
+        // Text boxes and table cells have the same default text style and margins, so each column's text is measured in
+        //   a text box of the column's width.
+        final XSLFTextBox[] sizingBoxes = new XSLFTextBox[cols];
+        final Font[] fonts = new Font[cols];
+        final double[] lineWidths = new double[cols];
+        final double[] lineHeights = new double[cols];
+
+        for(int col = 0; col < cols; ++col) {
+            final XSLFTextBox sizingBox = sizingSlide.createTextBox();
+            sizingBox.setAnchor(new Rectangle2D.Double(0, 0, colWidths[col], 0));
+            sizingBox.setText("X");
+            sizingBoxes[col] = sizingBox;
+
+            final XSLFTextParagraph paragraph = sizingBox.getTextParagraphs().get(0);
+            final XSLFTextRun run = paragraph.getTextRuns().get(0);
+            final String fontFamily = run.getFontFamily();
+            final Double fontSize = run.getFontSize();
+
+            fonts[col] = new Font(GlyphMetricsTextMeasurer.getFontAttributes(
+                    fontFamily != null ? fontFamily : paragraph.getDefaultFontFamily(),
+                    (fontSize != null ? fontSize : paragraph.getDefaultFontSize()).floatValue(),
+                    run.isBold(), run.isItalic()));
+            // leave some slack for differences between the font's string bounds and how POI lays the text out
+            lineWidths[col] = 0.95 * GlyphMetricsTextMeasurer.getWrappingWidth(sizingBox, paragraph, true);
+            lineHeights[col] = textMeasurer.getTextHeight(sizingBox) + sizingBox.getTopInset() + sizingBox.getBottomInset();
+        }
+
+        final double[] rowHeights = new double[rows];
+
+        for(int row = 0, idx = 0; row < rows; ++row) {
+            checkCancelled();
+
+            for(int col = 0; col < cols; ++col) {
+                final String text = data[idx++];
+                final double cellHeight;
+
+                if (fitsOnOneLine(text, fonts[col], lineWidths[col])) {
+                    cellHeight = lineHeights[col];
+                }
+                else {
+                    final XSLFTextBox sizingBox = sizingBoxes[col];
+                    sizingBox.setText(text);
+                    cellHeight = textMeasurer.getTextHeight(sizingBox) + sizingBox.getTopInset() + sizingBox.getBottomInset();
+                }
+
+                rowHeights[row] = Math.max(rowHeights[row], cellHeight);
+            }
+        }
+
+        return rowHeights;
+    }
+
+    /**
+     * Utility function to check whether text will be laid out as a single line of a font, without wrapping.
+     * @param text the text, which may be null.
+     * @param font the font the text is shown in.
+     * @param lineWidth the width available to the line.
+     * @return true if the text is a single line, which is no wider than the line and needs no fallback fonts.
+     */
+    private static boolean fitsOnOneLine(final String text, final Font font, final double lineWidth) {
+        if (text == null || text.isEmpty()) {
+            return true;
+        }
+
+        return StringUtils.containsNone(text, "\n\r\u000b")
+                && font.canDisplayUpTo(text) == -1
+                && font.getStringBounds(text, GlyphMetricsTextMeasurer.FONT_RENDER_CONTEXT).getWidth() <= lineWidth;
+    }
+
+    /**
+     * Internal implementation to add a table of a header row and a range of the rows after it to a slide.
+     * @param slide the slide to add to.
+     * @param anchor bounding rectangle to draw onto, in PowerPoint coordinates.
+     * @param colWidths the width of each column.
+     * @param rowHeights the estimated height of each row.
+     * @param data the data for each cell, laid out row-by-row; the first row is the header.
+     * @param from the first row after the header to add.
+     * @param to the row after the last row to add.
+     */
+    private static void addTableRows(final XSLFSlide slide, final Rectangle2D.Double anchor, final double[] colWidths, final double[] rowHeights, final String[] data, final int from, final int to) {
+        final int cols = colWidths.length;
+        final XSLFTable table = slide.createTable(1 + to - from, cols);
+        setTableStyle(table);
+
+        double tableW = 0;
+
+        for(int col = 0; col < cols; ++col) {
+            table.setColumnWidth(col, colWidths[col]);
+            tableW += table.getColumnWidth(col);
+        }
+
+        double tableH = 0;
+
+        for(int row = 0; row <= to - from; ++row) {
+            final int dataRow = row == 0 ? 0 : from + row - 1;
+
+            for(int col = 0; col < cols; ++col) {
+                setTableCell(table.getCell(row, col), data[dataRow * cols + col]);
+            }
+
+            table.setRowHeight(row, rowHeights[dataRow]);
+            tableH += table.getRowHeight(row);
+        }
+
+        final double availWidth = anchor.getWidth();
+        final double width = Math.min(tableW, availWidth);
+
+        table.setAnchor(new Rectangle2D.Double(anchor.getMinX() + 0.5 * (availWidth - width), anchor.getMinY(), width, tableH));
+    }
+
+    /**
+     * Utility function to compute the width of each column of a table.
+     * @param cols number of columns.
+     * @param availWidth the width available for the table.
+     * @return the width of each column.
+     */
+    private static double[] getColumnWidths(final int cols, final double availWidth) {
+        final double[] colWidths = new double[cols];
+
+        if (cols == 2) {
+            // In the most common situation, there's a count column which should be relatively smaller.
+            // Make it take 10%, or 70 pixels, whichever is bigger, unless that's more than 50% of the overall space.
+            final double minCountWidth = 70;
+            final double countColWidth = Math.min(0.5 * availWidth, Math.max(minCountWidth, availWidth * 0.1));
+            colWidths[0] = availWidth - countColWidth;
+            colWidths[1] = countColWidth;
+        }
+        else {
+            Arrays.fill(colWidths, availWidth / cols);
+        }
+
+        return colWidths;
+    }
+
+    /**
+     * Utility function to add the table style which draws a black border around every cell to a presentation's table
+     *   styles, so its tables can refer to it rather than each cell having its own copy of the borders.
+     * If the presentation already has the style, e.g. if the template was saved from one of our presentations or the
+     *   style was already added, the existing style is used.
+     * @param ppt the presentation.
+     * @throws TemplateLoadException if there's an error writing the table styles.
+     */
+    private static void addTableStyle(final XMLSlideShow ppt) throws TemplateLoadException {
+        final XSLFTableStyles tableStyles = ppt.getTableStyles();
+        final CTTableStyleList styleList;
+
+        if (tableStyles != null) {
+            styleList = tableStyles.getXmlObject();
+
+            for(final CTTableStyle style : styleList.getTblStyleArray()) {
+                if (TABLE_STYLE_ID.equals(style.getStyleId())) {
+                    return;
+                }
+            }
+        }
+        else {
+            // PowerPoint always saves a table styles part, but other tools might not
+            styleList = CTTableStyleList.Factory.newInstance();
+            styleList.setDef(TABLE_STYLE_ID);
+        }
+
+        final CTTableStyle style = styleList.addNewTblStyle();
+        style.setStyleId(TABLE_STYLE_ID);
+        style.setStyleName(TABLE_STYLE_NAME);
+
+        // The same line POI's setBorderColor() gives a cell's edge, around the table and between all its cells
+        final CTTableCellBorderStyle borders = style.addNewWholeTbl().addNewTcStyle().addNewTcBdr();
+
+        for(final CTThemeableLineStyle edge : new CTThemeableLineStyle[]{ borders.addNewLeft(), borders.addNewRight(), borders.addNewTop(), borders.addNewBottom(), borders.addNewInsideH(), borders.addNewInsideV() }) {
+            final CTLineProperties line = edge.addNewLn();
+            line.setCmpd(STCompoundLine.SNG);
+            line.setAlgn(STPenAlignment.CTR);
+            line.setCap(STLineCap.FLAT);
+            line.addNewSolidFill().addNewSrgbClr().setVal(new byte[]{ 0, 0, 0 });
+            line.addNewPrstDash().setVal(STPresetLineDashVal.SOLID);
+            line.addNewRound();
+
+            for(final CTLineEndProperties end : new CTLineEndProperties[]{ line.addNewHeadEnd(), line.addNewTailEnd() }) {
+                end.setType(STLineEndType.NONE);
+                end.setW(STLineEndWidth.MED);
+                end.setLen(STLineEndLength.MED);
+            }
+        }
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final XmlOptions xmlOptions = new XmlOptions(DEFAULT_XML_OPTIONS);
+        xmlOptions.setSaveSyntheticDocumentElement(new QName(CTTableStyleList.type.getName().getNamespaceURI(), "tblStyleLst", "a"));
+
+        try {
+            styleList.save(baos, xmlOptions);
+
+            // POI doesn't save changes to the table styles, and clears its part when the presentation is written; so
+            //   the part is replaced, as with the parts we copy for charts.
+            final OPCPackage opcPackage = ppt.getPackage();
+            final PackagePartName partName;
+
+            if (tableStyles != null) {
+                partName = tableStyles.getPackagePart().getPartName();
+                opcPackage.removePart(partName);
+            }
+            else {
+                partName = PackagingURIHelper.createPartName(XSLFRelation.TABLE_STYLES.getDefaultFileName());
+                ppt.getPackagePart().addRelationship(partName, TargetMode.INTERNAL, XSLFRelation.TABLE_STYLES.getRelation());
+            }
+
+            opcPackage.createPart(partName, XSLFRelation.TABLE_STYLES.getContentType(), baos);
+        }
+        catch(IOException|InvalidFormatException e) {
+            throw new TemplateLoadException("Error writing table styles in loaded template", e);
+        }
+    }
+
+    /**
+     * Utility function to draw a table's cells with the black borders of the style added by
+     *   {@link #addTableStyle(XMLSlideShow)}.
+     * @param table the table.
+     */
+    private static void setTableStyle(final XSLFTable table) {
+        table.getCTTable().getTblPr().setTableStyleId(TABLE_STYLE_ID);
+    }
+
+    /**
+     * Utility function to set a table cell's text, leaving its borders to the table's style.
+     * @param cell the cell.
+     * @param text the cell's text.
+     */
+    private static void setTableCell(final XSLFTableCell cell, final String text) {
+        cell.setText(text);
+        // POI creates each cell with properties which turn off all its borders, overriding the table style
+        ((CTTableCell) cell.getXmlObject()).unsetTcPr();
+    }
+
     /**
      * Utility function to compute bounds for a shape in PowerPoint coordinates, given the bounds of the original
      *   free space available and a measure of the shape's height.
@@ -698,38 +1141,27 @@ public class PowerPointServiceImpl implements PowerPointService {
     }
 
     /**
-     * Internal implementation to add a table to a slide.
+     * Internal implementation to add a table to a slide, cropped to the bounding rectangle by removing extra rows.
+     * This doesn't guarantee an exact match, since the font metrics may not exactly match.
      * @param slide the slide to add to.
      * @param anchor bounding rectangle to draw onto, in PowerPoint coordinates.
      * @param rows number of rows.
      * @param cols number of columns.
      * @param data the data for each cell, laid out row-by-row.
-     * @param crop whether we should try and crop the table to the bounding rectangle by removing extra rows.
-     *               This doesn't guarantee an exact match, since the font metrics may not exactly match.
      */
-    private static void addTable(final XSLFSlide slide, final Rectangle2D.Double anchor, final int rows, final int cols, final String[] data, final boolean crop) {
+    private static void addTable(final XSLFSlide slide, final Rectangle2D.Double anchor, final int rows, final int cols, final String[] data) {
         final XSLFTable table = slide.createTable(rows, cols);
+        setTableStyle(table);
 
         int idx = 0;
 
-        double availWidth = anchor.getWidth();
+        final double availWidth = anchor.getWidth();
+        final double[] colWidths = getColumnWidths(cols, availWidth);
         double tableW = 0;
 
-        if (cols == 2) {
-            // In the most common situation, there's a count column which should be relatively smaller.
-            // Make it take 10%, or 70 pixels, whichever is bigger, unless that's more than 50% of the overall space.
-            final double minCountWidth = 70;
-            final double countColWidth = Math.min(0.5 * availWidth, Math.max(minCountWidth, availWidth * 0.1));
-            table.setColumnWidth(0, availWidth - countColWidth);
-            table.setColumnWidth(1, countColWidth);
-            tableW += table.getColumnWidth(0);
-            tableW += table.getColumnWidth(1);
-        }
-        else {
-            for(int col = 0; col < cols; ++col) {
-                table.setColumnWidth(col, availWidth / cols);
-                tableW += table.getColumnWidth(col);
-            }
+        for(int col = 0; col < cols; ++col) {
+            table.setColumnWidth(col, colWidths[col]);
+            tableW += table.getColumnWidth(col);
         }
 
         // PowerPoint won't auto-shrink the table for you; and the POI API can't calculate the heights, so we just
@@ -737,18 +1169,15 @@ public class PowerPointServiceImpl implements PowerPointService {
         double tableH = 0;
 
         for(int row = 0; row < rows; ++row) {
-            for(int col = 0; col < cols; ++col) {
-                final XSLFTableCell cell = table.getCell(row, col);
-                cell.setText(data[idx++]);
+            checkCancelled();
 
-                for(final TableCell.BorderEdge edge : TableCell.BorderEdge.values()) {
-                    cell.setBorderColor(edge, Color.BLACK);
-                }
+            for(int col = 0; col < cols; ++col) {
+                setTableCell(table.getCell(row, col), data[idx++]);
             }
 
             final double nextH = tableH + table.getRowHeight(row);
 
-            if (crop && nextH > anchor.getHeight() && row < rows - 1) {
+            if (nextH > anchor.getHeight() && row < rows - 1) {
                 // If it doesn't fit, merge all the final row cells together and label them with an ellipsis.
                 table.mergeCells(row, row, 0, cols - 1);
                 table.getCell(row, 0).setText("\u2026");
@@ -768,7 +1197,7 @@ public class PowerPointServiceImpl implements PowerPointService {
     public XMLSlideShow map(final MapData map, final String title) throws TemplateLoadException {
         final String image = map.getImage();
 
-        final XMLSlideShow ppt = loadTemplate().getSlideShow();
+        final XMLSlideShow ppt = loadTemplate().createSlideShow();
         final XSLFSlide sl = ppt.createSlide();
 
         final Rectangle2D.Double pageAnchor = createPageAnchor(ppt);
@@ -790,22 +1219,20 @@ public class PowerPointServiceImpl implements PowerPointService {
             textHeight = 0;
         }
 
-        final XSLFPictureData picture = addPictureData(imageSource, ppt, image);
-        addMap(sl, remainingSpace(pageAnchor, textHeight), picture, map.getMarkers());
+        addMap(sl, remainingSpace(pageAnchor, textHeight), getImageData(imageSource, image), map.getMarkers());
 
         return ppt;
     }
 
     /**
-     * Utility function to add image data to a PowerPoint presentation.
+     * Utility function to fetch image data from the image source, unless rendering has been cancelled.
      * @param imageSource the image source.
-     * @param ppt the presentation to add to.
      * @param imageId the image identifier, typically a URI.
-     * @return the picture data.
+     * @return the image data.
      */
-    private static XSLFPictureData addPictureData(final ImageSource imageSource, final XMLSlideShow ppt, final String imageId) {
-        final ImageData imageData = imageSource.getImageData(imageId);
-        return ppt.addPicture(imageData.getData(), imageData.getType());
+    private static ImageData getImageData(final ImageSource imageSource, final String imageId) {
+        checkCancelled();
+        return imageSource.getImageData(imageId);
     }
 
     /**
@@ -813,11 +1240,14 @@ public class PowerPointServiceImpl implements PowerPointService {
      *   Preserves the original image's aspect ratio, leaving blank space below and to the sides of the image.
      * @param slide the slide to add to.
      * @param anchor bounding rectangle to draw onto, in PowerPoint coordinates.
-     * @param picture the picture data.
+     * @param image the image data.
      * @param markers an array of markers to draw over the map.
      * @return the picture shape object added to the slide.
      */
-    private static XSLFPictureShape addMap(final XSLFSlide slide, final Rectangle2D.Double anchor, final XSLFPictureData picture, final Marker[] markers) {
+    private static XSLFPictureShape addMap(final XSLFSlide slide, final Rectangle2D.Double anchor, final ImageData image, final Marker[] markers) {
+        // The size is read from the image header if we can, since POI would decode the entire image just to get its size.
+        final XSLFPictureData picture = PictureProperties.addPicture(slide.getSlideShow(), image);
+
         double tgtW = anchor.getWidth(),
                tgtH = anchor.getHeight();
 
@@ -839,6 +1269,8 @@ public class PowerPointServiceImpl implements PowerPointService {
         canvas.setAnchor(new Rectangle2D.Double(offsetX, offsetY, tgtW, tgtH));
 
         for(Marker marker : markers) {
+            checkCancelled();
+
             final Color color = Color.decode(marker.getColor());
             final double centerX = offsetX + marker.getX() * tgtW;
             final double centerY = offsetY + marker.getY() * tgtH;
@@ -950,212 +1382,316 @@ public class PowerPointServiceImpl implements PowerPointService {
 
     @Override
     public XMLSlideShow list(final ListData documentList, final String results, final String sortBy) throws TemplateLoadException {
-        final XMLSlideShow ppt = loadTemplate().getSlideShow();
+        return list(documentList, results, sortBy, (SlideSpiller) null);
+    }
+
+    @Override
+    public void list(final ListData documentList, final String results, final String sortBy, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        try(SlideSpiller spiller = new SlideSpiller()) {
+            write(list(documentList, results, sortBy, spiller), outputStream, spiller);
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Internal implementation to render a list of documents as a presentation.
+     * @param documentList the data containing all the documents.
+     * @param results an optional string which will be shown in the top-left.
+     * @param sortBy an optional string which will be shown in the top-right.
+     * @param spiller what to spill each slide to once it's finished, or null to keep them all in memory.
+     * @return a new presentation.
+     * @throws TemplateLoadException if the template is invalid.
+     */
+    private XMLSlideShow list(final ListData documentList, final String results, final String sortBy, final SlideSpiller spiller) throws TemplateLoadException {
+        final SlideShowTemplate template = loadTemplate();
+        final XMLSlideShow ppt = template.createSlideShow();
 
-        addList(imageSource, ppt, null, createPageAnchor(ppt), true, documentList, results, sortBy);
+        final Map<String, ImageData> thumbnails = await(fetchThumbnails(documentList));
+        // The documents are measured on a slide in a copy of the template, since even a slide which is removed again
+        //   would change the names of the slides which are added after it
+        final XSLFSlide sizingSlide = template.borrowSizingSlide();
+
+        try {
+            addList(thumbnails::get, ppt, null, sizingSlide, createPageAnchor(ppt), true, documentList, Arrays.asList(documentList.getDocs()).iterator(), results, sortBy, spiller);
+        }
+        finally {
+            template.returnSizingSlide(sizingSlide);
+        }
 
         return ppt;
     }
 
+    @Override
+    public XMLSlideShow list(final ListData format, final Iterator<Document> docs, final String results, final String sortBy) throws TemplateLoadException {
+        return list(format, docs, results, sortBy, (SlideSpiller) null);
+    }
+
+    @Override
+    public void list(final ListData format, final Iterator<Document> docs, final String results, final String sortBy, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        try(SlideSpiller spiller = new SlideSpiller()) {
+            write(list(format, docs, results, sortBy, spiller), outputStream, spiller);
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Internal implementation to render a list of documents read from an iterator as a presentation.
+     * @param format the list's formatting; its documents are ignored.
+     * @param docs the documents, which are read once, in order.
+     * @param results an optional string which will be shown in the top-left.
+     * @param sortBy an optional string which will be shown in the top-right.
+     * @param spiller what to spill each slide to once it's finished, or null to keep them all in memory.
+     * @return a new presentation.
+     * @throws TemplateLoadException if the template is invalid.
+     */
+    private XMLSlideShow list(final ListData format, final Iterator<Document> docs, final String results, final String sortBy, final SlideSpiller spiller) throws TemplateLoadException {
+        final SlideShowTemplate template = loadTemplate();
+        final XMLSlideShow ppt = template.createSlideShow();
+        final ThumbnailPrefetcher prefetcher = new ThumbnailPrefetcher(docs);
+        final XSLFSlide sizingSlide = template.borrowSizingSlide();
+
+        try {
+            addList(prefetcher::getThumbnail, ppt, null, sizingSlide, createPageAnchor(ppt), true, format, prefetcher, results, sortBy, spiller);
+        }
+        finally {
+            // stop fetching the next batch's thumbnails, e.g. if rendering failed or was cancelled
+            prefetcher.cancel();
+            template.returnSizingSlide(sizingSlide);
+        }
+
+        return ppt;
+    }
+
+    /**
+     * Starts fetching the thumbnails for a list of documents as a single batch, concurrently on the image executor
+     *   unless the image source does something better; since fetching remote images one at a time would make the
+     *   list's latency the sum of all the fetch times.
+     * @param data the documents whose thumbnails to fetch.
+     * @return a future of the image data by thumbnail identifier; thumbnails which can't be fetched are left out.
+     */
+    private CompletableFuture<Map<String, ImageData>> fetchThumbnails(final ListData data) {
+        final Set<String> thumbnails = new LinkedHashSet<>();
+
+        for(final Document doc : data.getDocs()) {
+            if (StringUtils.isNotBlank(doc.getThumbnail())) {
+                thumbnails.add(doc.getThumbnail());
+            }
+        }
+
+        return imageSource.getImageDataAsync(thumbnails, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, imageExecutor);
+    }
+
+    /**
+     * Utility function to wait for a batch of images, cancelling the batch if rendering is cancelled while we wait.
+     * @param images the future of the images.
+     * @return image data by image identifier.
+     * @throws CancellationException if the current thread is interrupted while waiting for the images.
+     */
+    private static Map<String, ImageData> await(final CompletableFuture<Map<String, ImageData>> images) throws CancellationException {
+        try {
+            return images.get();
+        }
+        catch(InterruptedException e) {
+            images.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Rendering was interrupted");
+        }
+        catch(ExecutionException e) {
+            // only if a custom image source fails the whole batch; if so, render without the images
+            return Collections.emptyMap();
+        }
+    }
+
     /**
      * Internal implementation to add a list of documents to a presentation; either as a single slide or a series of slides.
-     * @param imageSource the image source to convert images to data.
+     * Each page is laid out in two passes: first its documents are measured in a scratch text box on the sizing slide,
+     *   to plan which documents fit on the page; then only the planned page's shapes are created. Measuring documents
+     *   on the slides they'd be drawn on meant the document which overflowed each page was created, measured and
+     *   removed, then created and measured again on the next page. Documents are read from the iterator as each page is
+     *   planned, so only about a page of them is needed at a time.
+     * @param thumbnails looks up the prefetched thumbnail image data by thumbnail identifier, or null if there isn't any.
      * @param ppt the presentation to add to.
      * @param sl the slide to add to (can be null if pagination is enabled).
+     * @param sizingSlide the slide to measure documents on, which is left as it was; from the same template as the
+     *                    presentation, so text is measured with the same defaults.
      * @param anchor bounding rectangle to draw onto, in PowerPoint coordinates.
      * @param paginate whether to render results as multiple slides if they don't fit on one slide.
-     * @param data the documents to render.
+     * @param data the list's formatting.
+     * @param docs the documents to render.
      * @param results optional string to render into the top-left corner of the available space.
      *                  Will appear on each page if pagination is enabled.
      * @param sortBy optional string to render into the top-right corner of the available space.
      *                  Will appear on each page if pagination is enabled.
+     * @param spiller what to spill each new slide to once it's finished, or null to keep them in memory.
      */
-    private static void addList(final ImageSource imageSource, final XMLSlideShow ppt, XSLFSlide sl, final Rectangle2D.Double anchor, final boolean paginate, final ListData data, final String results, final String sortBy) {
-        final double
-                // How much space to leave at the left and right edge of the slide
-                xMargin = 20,
-                // How much space to leave at the top
-                yMargin = 5,
-                // Size of the icon
-                iconWidth = 20, iconHeight = 24,
-                // Find's thumbnail height is 97px by 55px, hardcoded in the CSS in .document-thumbnail
-                thumbScale = 0.8,
-                thumbW = 97 * thumbScale, thumbH = 55 * thumbScale,
-                // Margin around the thumbnail
-                thumbMargin = 4.,
-                // Space between list items
-                listItemMargin = 5.;
-
-        final Pattern highlightPattern = Pattern.compile("<HavenSearch-QueryText-Placeholder>(.*?)</HavenSearch-QueryText-Placeholder>");
-
-        double yCursor = yMargin + anchor.getMinY(), xCursor = xMargin + anchor.getMinX();
-
-        int docsOnPage = 0;
-
-        final Document[] docs = data.getDocs();
-        for(int docIdx = 0; docIdx < docs.length; ++docIdx) {
-            final Document doc = docs[docIdx];
-
-            if(sl == null) {
-                sl = ppt.createSlide();
-                yCursor = yMargin + anchor.getMinY();
-                xCursor = xMargin + anchor.getMinX();
-                docsOnPage = 0;
-
-                double yStep = 0;
-
-                if (StringUtils.isNotBlank(results)) {
-                    final XSLFTextBox textBox = sl.createTextBox();
-                    textBox.clearText();
-                    final Rectangle2D.Double textBounds = new Rectangle2D.Double(xCursor, yCursor, Math.max(0, anchor.getMaxX() - xCursor - xMargin), 20);
-                    textBox.setAnchor(textBounds);
-
-                    addTextRun(textBox.addNewTextParagraph(), results, 12., Color.LIGHT_GRAY);
-
-                    yStep = textBox.getTextHeight();
-                }
+    private void addList(final Function<String, ImageData> thumbnails, final XMLSlideShow ppt, final XSLFSlide sl, final XSLFSlide sizingSlide, final Rectangle2D.Double anchor, final boolean paginate, final ListData data, final Iterator<Document> docs, final String results, final String sortBy, final SlideSpiller spiller) {
+        final ListPlanner planner = new ListPlanner(thumbnails, ppt, sizingSlide, anchor, data, results, sortBy, docs);
 
-                if (StringUtils.isNotBlank(sortBy)) {
-                    final XSLFTextBox sortByEl = sl.createTextBox();
-                    sortByEl.clearText();
-                    final XSLFTextParagraph sortByText = sortByEl.addNewTextParagraph();
-                    sortByText.setTextAlign(TextParagraph.TextAlign.RIGHT);
-
-                    addTextRun(sortByText, sortBy, 12., Color.LIGHT_GRAY);
-
-                    sortByEl.setAnchor(new Rectangle2D.Double(xCursor, yCursor, Math.max(0, anchor.getMaxX() - xCursor - xMargin), 20));
+        try {
+            for(boolean newSlide = sl == null; planner.hasNext(); newSlide = true) {
+                final ListPage page = planner.planPage(newSlide);
+                final XSLFSlide slide = newSlide ? ppt.createSlide() : sl;
+                addListPage(slide, anchor, data, results, sortBy, page);
 
-                    yStep = Math.max(sortByEl.getTextHeight(), yStep);
+                if (newSlide && spiller != null) {
+                    spiller.spill(slide);
                 }
 
-                if (yStep > 0) {
-                    yCursor += listItemMargin + yStep;
+                if (!paginate) {
+                    break;
                 }
             }
+        }
+        finally {
+            planner.close();
+        }
+    }
+
+    /**
+     * Internal implementation to add a planned page of a list to a slide.
+     * @param sl the slide to add to.
+     * @param anchor bounding rectangle to draw onto, in PowerPoint coordinates.
+     * @param data the list the documents are from.
+     * @param results optional string to render into the top-left corner of a new slide.
+     * @param sortBy optional string to render into the top-right corner of a new slide.
+     * @param page the planned page.
+     */
+    private static void addListPage(final XSLFSlide sl, final Rectangle2D.Double anchor, final ListData data, final String results, final String sortBy, final ListPage page) {
+        if (page.isNewSlide()) {
+            addListHeaders(sl, anchor, results, sortBy);
+        }
+
+        for(final ListItem item : page.getItems()) {
+            double xCursor = LIST_X_MARGIN + anchor.getMinX();
 
-            XSLFAutoShape icon = null;
             if (data.isDrawIcons()) {
-                icon = sl.createAutoShape();
+                final XSLFAutoShape icon = sl.createAutoShape();
                 icon.setShapeType(ShapeType.SNIP_1_RECT);
-                icon.setAnchor(new Rectangle2D.Double(xCursor, yCursor + listItemMargin, iconWidth, iconHeight));
+                icon.setAnchor(new Rectangle2D.Double(xCursor, item.getY() + LIST_ITEM_MARGIN, LIST_ICON_WIDTH, LIST_ICON_HEIGHT));
                 icon.setLineColor(Color.decode("#888888"));
                 icon.setLineWidth(2.0);
 
-                xCursor += iconWidth;
+                xCursor += LIST_ICON_WIDTH;
             }
 
             final XSLFTextBox listEl = sl.createTextBox();
             listEl.clearText();
-            listEl.setAnchor(new Rectangle2D.Double(xCursor, yCursor, Math.max(0, anchor.getMaxX() - xCursor - xMargin), Math.max(0, anchor.getMaxY() - yCursor)));
+            listEl.setAnchor(new Rectangle2D.Double(xCursor, item.getY(), Math.max(0, anchor.getMaxX() - xCursor - LIST_X_MARGIN), Math.max(0, anchor.getMaxY() - item.getY())));
 
-            final XSLFTextParagraph titlePara = listEl.addNewTextParagraph();
-            addTextRun(titlePara, doc.getTitle(), data.getTitleFontSize(), Color.BLACK).setBold(true);
+            addListItemHeading(listEl, item.getDoc(), data);
+            addListItemContent(listEl, item.getDoc(), data, item.getPictureData() != null);
 
-            if (StringUtils.isNotBlank(doc.getDate())) {
-                final XSLFTextParagraph datePara = listEl.addNewTextParagraph();
-                datePara.setLeftMargin(5.);
-                addTextRun(datePara, doc.getDate(), data.getDateFontSize(), Color.GRAY).setItalic(true);
+            if (item.getPictureData() != null) {
+                sl.createPicture(item.getPictureData()).setAnchor(item.getPictureAnchor());
             }
+        }
+    }
 
-            if (StringUtils.isNotBlank(doc.getRef())) {
-                addTextRun(listEl.addNewTextParagraph(), doc.getRef(), data.getRefFontSize(), Color.GRAY);
-            }
+    /**
+     * Internal implementation to add the results and sort-by headers at the top of a new slide of a list.
+     * @param sl the slide to add to.
+     * @param anchor bounding rectangle to draw onto, in PowerPoint coordinates.
+     * @param results optional string to render into the top-left corner of the available space.
+     * @param sortBy optional string to render into the top-right corner of the available space.
+     * @return the text boxes which were added, if any.
+     */
+    private static List<XSLFTextBox> addListHeaders(final XSLFSlide sl, final Rectangle2D.Double anchor, final String results, final String sortBy) {
+        final List<XSLFTextBox> headers = new ArrayList<>(2);
+        final double yCursor = LIST_Y_MARGIN + anchor.getMinY(), xCursor = LIST_X_MARGIN + anchor.getMinX();
 
-            final double thumbnailOffset = listEl.getTextHeight();
+        if (StringUtils.isNotBlank(results)) {
+            final XSLFTextBox textBox = sl.createTextBox();
+            textBox.clearText();
+            final Rectangle2D.Double textBounds = new Rectangle2D.Double(xCursor, yCursor, Math.max(0, anchor.getMaxX() - xCursor - LIST_X_MARGIN), 20);
+            textBox.setAnchor(textBounds);
 
-            final XSLFTextParagraph contentPara = listEl.addNewTextParagraph();
+            addTextRun(textBox.addNewTextParagraph(), results, 12., Color.LIGHT_GRAY);
 
-            Rectangle2D.Double pictureAnchor = null;
-            XSLFPictureData pictureData = null;
+            headers.add(textBox);
+        }
 
-            if (StringUtils.isNotBlank(doc.getThumbnail())) {
-                try {
-                    // Picture reuse is automatic
-                    pictureData = addPictureData(imageSource, ppt, doc.getThumbnail());
-                    // We reserve space for the picture, but we don't actually add it yet.
-                    // The reason is we may have to remove it later if it doesn't fit; but due to a quirk of OpenOffice,
-                    //   deleting the picture shape removes the pictureData as well; which is a problem since the
-                    //   pictureData can be shared between multiple pictures.
-                    pictureAnchor = new Rectangle2D.Double(xCursor, yCursor + thumbnailOffset + thumbMargin, thumbW, thumbH);
-
-                    // If there is enough horizontal space, put the text summary to the right of the thumbnail image,
-                    //    otherwise put it under the thumbnail,
-                    if (listEl.getAnchor().getWidth() > 2.5 * thumbW) {
-                        contentPara.setLeftMargin(thumbW);
-                    }
-                    else {
-                        contentPara.addLineBreak().setFontSize(thumbH);
-                    }
+        if (StringUtils.isNotBlank(sortBy)) {
+            final XSLFTextBox sortByEl = sl.createTextBox();
+            sortByEl.clearText();
+            final XSLFTextParagraph sortByText = sortByEl.addNewTextParagraph();
+            sortByText.setTextAlign(TextParagraph.TextAlign.RIGHT);
 
-                }
-                catch(RuntimeException e) {
-                    // if there's any errors, we'll just ignore the image
-                }
-            }
+            addTextRun(sortByText, sortBy, 12., Color.LIGHT_GRAY);
 
-            final String rawSummary = doc.getSummary();
-            if (StringUtils.isNotBlank(rawSummary)) {
-                // HTML treats newlines and multiple whitespace as a single whitespace.
-                final String summary = rawSummary.replaceAll("\\s+", " ");
-                final Matcher matcher = highlightPattern.matcher(summary);
-                int idx = 0;
+            sortByEl.setAnchor(new Rectangle2D.Double(xCursor, yCursor, Math.max(0, anchor.getMaxX() - xCursor - LIST_X_MARGIN), 20));
 
-                while(matcher.find()) {
-                    final int start = matcher.start();
+            headers.add(sortByEl);
+        }
 
-                    if (idx < start) {
-                        addTextRun(contentPara, summary.substring(idx, start), data.getSummaryFontSize(), Color.DARK_GRAY);
-                    }
+        return headers;
+    }
 
-                    addTextRun(contentPara, matcher.group(1), data.getSummaryFontSize(), Color.DARK_GRAY).setBold(true);
-                    idx = matcher.end();
-                }
+    /**
+     * Internal implementation to add the title, date and reference paragraphs of a document to a list item.
+     * @param listEl the list item's text box.
+     * @param doc the document.
+     * @param data the list the document is from.
+     */
+    private static void addListItemHeading(final XSLFTextBox listEl, final Document doc, final ListData data) {
+        final XSLFTextParagraph titlePara = listEl.addNewTextParagraph();
+        addTextRun(titlePara, doc.getTitle(), data.getTitleFontSize(), Color.BLACK).setBold(true);
+
+        if (StringUtils.isNotBlank(doc.getDate())) {
+            final XSLFTextParagraph datePara = listEl.addNewTextParagraph();
+            datePara.setLeftMargin(5.);
+            addTextRun(datePara, doc.getDate(), data.getDateFontSize(), Color.GRAY).setItalic(true);
+        }
 
-                if (idx < summary.length()) {
-                    addTextRun(contentPara, summary.substring(idx), data.getSummaryFontSize(), Color.DARK_GRAY);
-                }
-            }
+        if (StringUtils.isNotBlank(doc.getRef())) {
+            addTextRun(listEl.addNewTextParagraph(), doc.getRef(), data.getRefFontSize(), Color.GRAY);
+        }
+    }
 
-            double elHeight = Math.max(listEl.getTextHeight(), iconHeight);
-            if (pictureAnchor != null) {
-                elHeight = Math.max(elHeight, pictureAnchor.getMaxY() - yCursor);
+    /**
+     * Internal implementation to add the summary paragraph of a document to a list item, after its heading.
+     * @param listEl the list item's text box.
+     * @param doc the document.
+     * @param data the list the document is from.
+     * @param thumbnail whether to leave space for the document's thumbnail.
+     */
+    private static void addListItemContent(final XSLFTextBox listEl, final Document doc, final ListData data, final boolean thumbnail) {
+        final XSLFTextParagraph contentPara = listEl.addNewTextParagraph();
+
+        if (thumbnail) {
+            // If there is enough horizontal space, put the text summary to the right of the thumbnail image,
+            //    otherwise put it under the thumbnail,
+            if (listEl.getAnchor().getWidth() > 2.5 * THUMBNAIL_WIDTH) {
+                contentPara.setLeftMargin(THUMBNAIL_WIDTH);
             }
+            else {
+                contentPara.addLineBreak().setFontSize(THUMBNAIL_HEIGHT);
+            }
+        }
 
-            yCursor += elHeight;
-            xCursor = xMargin + anchor.getMinX();
-
-            docsOnPage++;
+        final String rawSummary = doc.getSummary();
+        if (StringUtils.isNotBlank(rawSummary)) {
+            // HTML treats newlines and multiple whitespace as a single whitespace.
+            final String summary = rawSummary.replaceAll("\\s+", " ");
+            final Matcher matcher = HIGHLIGHT_PATTERN.matcher(summary);
+            int idx = 0;
 
-            if (yCursor > anchor.getMaxY()) {
-                if (docsOnPage > 1) {
-                    // If we drew more than one list element on this page; and we exceeded the available space,
-                    //   delete the last element's shapes and redraw it on the next page.
-                    // We don't have to remove the picture since we never added it.
-                    sl.removeShape(listEl);
-                    if (icon != null) {
-                        sl.removeShape(icon);
-                    }
+            while(matcher.find()) {
+                final int start = matcher.start();
 
-                    --docIdx;
-                }
-                else if(pictureAnchor != null) {
-                    // We've confirmed we need the picture, add it.
-                    sl.createPicture(pictureData).setAnchor(pictureAnchor);
+                if (idx < start) {
+                    addTextRun(contentPara, summary.substring(idx, start), data.getSummaryFontSize(), Color.DARK_GRAY);
                 }
 
-                sl = null;
-
-                if (!paginate) {
-                    break;
-                }
+                addTextRun(contentPara, matcher.group(1), data.getSummaryFontSize(), Color.DARK_GRAY).setBold(true);
+                idx = matcher.end();
             }
-            else {
-                yCursor += listItemMargin;
 
-                if(pictureAnchor != null) {
-                    // We've confirmed we need the picture, add it.
-                    sl.createPicture(pictureData).setAnchor(pictureAnchor);
-                }
+            if (idx < summary.length()) {
+                addTextRun(contentPara, summary.substring(idx), data.getSummaryFontSize(), Color.DARK_GRAY);
             }
         }
     }
@@ -1181,7 +1717,7 @@ public class PowerPointServiceImpl implements PowerPointService {
             final DategraphData data
     ) throws TemplateLoadException {
         final SlideShowTemplate template = loadTemplate();
-        final XMLSlideShow ppt = template.getSlideShow();
+        final XMLSlideShow ppt = template.createSlideShow();
         final int shapeId = 1;
         final String relId = "relId" + shapeId;
 
@@ -1217,7 +1753,7 @@ public class PowerPointServiceImpl implements PowerPointService {
 
         final XSSFWorkbook wb = writeChart(data);
 
-        final XMLSlideShow ppt = template.getSlideShow();
+        final XMLSlideShow ppt = slide.getSlideShow();
 
         slide.getXmlObject().getCSld().getSpTree().addNewGraphicFrame().set(template.getGraphChartShapeXML(relId, shapeId, "chart" + shapeId, anchor));
 
@@ -1269,7 +1805,7 @@ public class PowerPointServiceImpl implements PowerPointService {
         }
 
         try {
-            writeChart(ppt, slide, baseChart, chartSpace, wb, relId);
+            writeChart(ppt, slide, baseChart, template.getGraphChartParts(), chartSpace, wb, relId);
         }
         catch(IOException|InvalidFormatException e) {
             throw new TemplateLoadException("Unexpected error writing files from loaded template", e);
@@ -1420,8 +1956,31 @@ public class PowerPointServiceImpl implements PowerPointService {
 
     @Override
     public XMLSlideShow report(final ReportData report, final boolean slidePerVisualizer) throws TemplateLoadException {
+        return report(report, slidePerVisualizer, (SlideSpiller) null);
+    }
+
+    @Override
+    public void report(final ReportData report, final boolean slidePerVisualizer, final OutputStream outputStream) throws TemplateLoadException, IOException {
+        try(SlideSpiller spiller = new SlideSpiller()) {
+            write(report(report, slidePerVisualizer, spiller), outputStream, spiller);
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Internal implementation to render a composite report as a presentation.
+     * @param report the data containing a list of visualizations to render.
+     * @param slidePerVisualizer if true, we'll put each visualization on a separate slide.
+     * @param spiller what to spill each visualization's slide to once it's finished, or null to keep them all in
+     *                memory; charts stay in memory either way. Only used if each visualization has its own slide.
+     * @return a new presentation.
+     * @throws TemplateLoadException if the template is invalid.
+     */
+    private XMLSlideShow report(final ReportData report, final boolean slidePerVisualizer, final SlideSpiller spiller) throws TemplateLoadException {
         final SlideShowTemplate template = loadTemplate();
-        final XMLSlideShow ppt = template.getSlideShow();
+        final XMLSlideShow ppt = template.createSlideShow();
 
         final Rectangle2D.Double pageAnchor = createPageAnchor(ppt);
         double width = pageAnchor.getWidth();
@@ -1433,101 +1992,155 @@ public class PowerPointServiceImpl implements PowerPointService {
             Arrays.sort(report.getChildren(), Comparator.comparingInt(PowerPointServiceImpl::prioritizeCharts));
         }
 
-        // As above, we need to have a separate slide to place our sizing textbox for calculations.
-        XSLFSlide sizingSlide = ppt.createSlide();
-        // This is the slide to draw on.
-        XSLFSlide slide = ppt.createSlide();
-
-        int shapeId = 1;
-        boolean first = true;
+        // Gather all the images up front, so they can be fetched as two batches while we render everything else.
+        final Set<String> thumbnailIds = new LinkedHashSet<>();
+        final Set<String> mapImageIds = new LinkedHashSet<>();
+        boolean hasTables = false;
 
         for(final ReportData.Child child : report.getChildren()) {
-            if (slidePerVisualizer && !first) {
-                sizingSlide = ppt.createSlide();
-                slide = ppt.createSlide();
-            }
-
-            first = false;
-
             final ComposableElement data = child.getData();
-            final Rectangle2D.Double anchor = new Rectangle2D.Double(
-                    pageAnchor.getMinX() + width * child.getX(),
-                    pageAnchor.getMinY() + height * child.getY(),
-                    width * child.getWidth(),
-                    height * child.getHeight());
-
-            if (child.getMargin() >= 0) {
-                final double margin = child.getMargin();
-                final double marginX2 = margin * 2;
-                final double textMargin = child.getTextMargin();
-
-                if (anchor.getWidth() > marginX2) {
-                    double xCursor = anchor.getMinX() + margin,
-                           xWidthAvail = anchor.getWidth() - marginX2,
-                           yCursor = anchor.getMinY() + margin,
-                           yHeightAvail = anchor.getHeight() - marginX2;
-                    XSLFTextBox sizingBox = null;
-
-                    final String title = child.getTitle();
-                    if (StringUtils.isNotEmpty(title) && yHeightAvail > 0) {
-                        sizingBox = sizingSlide.createTextBox();
-                        final Rectangle2D.Double sizingAnchor = new Rectangle2D.Double(
-                                xCursor,
-                                yCursor,
-                                xWidthAvail,
-                                yHeightAvail);
-                        sizingBox.setAnchor(sizingAnchor);
-                        sizingBox.clearText();
-                        addTextRun(sizingBox.addNewTextParagraph(), title, child.getFontSize(), Color.BLACK).setFontFamily(child.getFontFamily());
-
-                        final double textHeight = sizingBox.getTextHeight() + textMargin;
-                        yCursor += textHeight;
-                        yHeightAvail -= textHeight;
-                    }
 
-                    if (yHeightAvail > 0) {
-                        anchor.setRect(xCursor, yCursor, xWidthAvail, yHeightAvail);
-                    }
-                    else if (sizingBox != null) {
-                        sizingSlide.removeShape(sizingBox);
+            if (data instanceof ListData) {
+                for(final Document doc : ((ListData) data).getDocs()) {
+                    if (StringUtils.isNotBlank(doc.getThumbnail())) {
+                        thumbnailIds.add(doc.getThumbnail());
                     }
                 }
             }
-
-            if (data instanceof DategraphData) {
-                addDategraph(template, slide, anchor, (DategraphData) data, shapeId, "relId" + shapeId);
-                shapeId++;
-            }
-            else if (data instanceof ListData) {
-                final ListData listData = (ListData) data;
-                addList(imageSource, ppt, slide, anchor, false, listData, null, null);
-            }
             else if (data instanceof MapData) {
-                final MapData mapData = (MapData) data;
-                addMap(slide, anchor, addPictureData(imageSource, ppt, mapData.getImage()), mapData.getMarkers());
-            }
-            else if (data instanceof SunburstData) {
-                addSunburst(template, slide, anchor, (SunburstData) data, shapeId, "relId" + shapeId);
-                shapeId++;
+                mapImageIds.add(((MapData) data).getImage());
             }
             else if (data instanceof TableData) {
-                final TableData tableData = (TableData) data;
-                addTable(slide, anchor, tableData.getRows(), tableData.getCols(), tableData.getCells(), true);
+                hasTables = true;
             }
-            else if (data instanceof TopicMapData) {
-                addTopicMap(slide, anchor, (TopicMapData) data);
-            }
-            else if (data instanceof TextData) {
-                addTextData(slide, anchor, (TextData) data);
+        }
+
+        if (hasTables) {
+            addTableStyle(ppt);
+        }
+
+        final CompletableFuture<Map<String, ImageData>> thumbnailsFuture = imageSource.getImageDataAsync(thumbnailIds, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, imageExecutor);
+        final CompletableFuture<Map<String, ImageData>> mapImagesFuture = imageSource.getImageDataAsync(mapImageIds, imageExecutor);
+        Map<String, ImageData> thumbnails = null, mapImages = null;
+
+        try {
+            // As above, we need to have a separate slide to place our sizing textbox for calculations.
+            XSLFSlide sizingSlide = ppt.createSlide();
+            // This is the slide to draw on.
+            XSLFSlide slide = ppt.createSlide();
+
+            int shapeId = 1;
+            boolean first = true;
+
+            for(final ReportData.Child child : report.getChildren()) {
+                checkCancelled();
+
+                if (slidePerVisualizer && !first) {
+                    sizingSlide = ppt.createSlide();
+                    slide = ppt.createSlide();
+                }
+
+                first = false;
+
+                final ComposableElement data = child.getData();
+                final Rectangle2D.Double anchor = new Rectangle2D.Double(
+                        pageAnchor.getMinX() + width * child.getX(),
+                        pageAnchor.getMinY() + height * child.getY(),
+                        width * child.getWidth(),
+                        height * child.getHeight());
+
+                if (child.getMargin() >= 0) {
+                    final double margin = child.getMargin();
+                    final double marginX2 = margin * 2;
+                    final double textMargin = child.getTextMargin();
+
+                    if (anchor.getWidth() > marginX2) {
+                        double xCursor = anchor.getMinX() + margin,
+                               xWidthAvail = anchor.getWidth() - marginX2,
+                               yCursor = anchor.getMinY() + margin,
+                               yHeightAvail = anchor.getHeight() - marginX2;
+                        XSLFTextBox sizingBox = null;
+
+                        final String title = child.getTitle();
+                        if (StringUtils.isNotEmpty(title) && yHeightAvail > 0) {
+                            sizingBox = sizingSlide.createTextBox();
+                            final Rectangle2D.Double sizingAnchor = new Rectangle2D.Double(
+                                    xCursor,
+                                    yCursor,
+                                    xWidthAvail,
+                                    yHeightAvail);
+                            sizingBox.setAnchor(sizingAnchor);
+                            sizingBox.clearText();
+                            addTextRun(sizingBox.addNewTextParagraph(), title, child.getFontSize(), Color.BLACK).setFontFamily(child.getFontFamily());
+
+                            final double textHeight = textMeasurer.getTextHeight(sizingBox) + textMargin;
+                            yCursor += textHeight;
+                            yHeightAvail -= textHeight;
+                        }
+
+                        if (yHeightAvail > 0) {
+                            anchor.setRect(xCursor, yCursor, xWidthAvail, yHeightAvail);
+                        }
+                        else if (sizingBox != null) {
+                            sizingSlide.removeShape(sizingBox);
+                        }
+                    }
+                }
+
+                if (data instanceof DategraphData) {
+                    addDategraph(template, slide, anchor, (DategraphData) data, shapeId, "relId" + shapeId);
+                    shapeId++;
+                }
+                else if (data instanceof ListData) {
+                    final ListData listData = (ListData) data;
+                    if (thumbnails == null) {
+                        thumbnails = await(thumbnailsFuture);
+                    }
+
+                    addList(thumbnails::get, ppt, slide, sizingSlide, anchor, false, listData, Arrays.asList(listData.getDocs()).iterator(), null, null, null);
+                }
+                else if (data instanceof MapData) {
+                    final MapData mapData = (MapData) data;
+                    if (mapImages == null) {
+                        mapImages = await(mapImagesFuture);
+                    }
+
+                    // if the map image couldn't be fetched, fetch it again to report why
+                    final ImageData image = mapImages.get(mapData.getImage());
+                    addMap(slide, anchor, image != null ? image : getImageData(imageSource, mapData.getImage()), mapData.getMarkers());
+                }
+                else if (data instanceof SunburstData) {
+                    addSunburst(template, slide, anchor, (SunburstData) data, shapeId, "relId" + shapeId);
+                    shapeId++;
+                }
+                else if (data instanceof TableData) {
+                    final TableData tableData = (TableData) data;
+                    addTable(slide, anchor, tableData.getRows(), tableData.getCols(), tableData.getCells());
+                }
+                else if (data instanceof TopicMapData) {
+                    addTopicMap(slide, anchor, (TopicMapData) data);
+                }
+                else if (data instanceof TextData) {
+                    addTextData(slide, anchor, (TextData) data);
+                }
+
+                if (slidePerVisualizer) {
+                    transferSizedTextboxes(ppt, slide, sizingSlide);
+
+                    if (spiller != null) {
+                        spiller.spill(slide);
+                    }
+                }
             }
 
-            if (slidePerVisualizer) {
+            if (!slidePerVisualizer) {
                 transferSizedTextboxes(ppt, slide, sizingSlide);
             }
         }
-
-        if (!slidePerVisualizer) {
-            transferSizedTextboxes(ppt, slide, sizingSlide);
+        finally {
+            // stop any fetches we're no longer waiting for, e.g. if rendering failed or was cancelled
+            thumbnailsFuture.cancel(true);
+            mapImagesFuture.cancel(true);
         }
 
         return ppt;
@@ -1570,22 +2183,9 @@ public class PowerPointServiceImpl implements PowerPointService {
             run.setItalic(runData.isItalic());
             run.setFontColor(Color.decode(runData.getColor()));
 
-            if (textBox.getTextHeight() > anchor.getHeight()) {
+            if (textMeasurer.getTextHeight(textBox) > anchor.getHeight()) {
                 // Try removing words from the last box until we find something that fits, or we run out of words
-                final String trimmedText = runData.getText().trim();
-                run.setText(trimmedText);
-
-                for (final StringBuilder text = new StringBuilder(trimmedText); textBox.getTextHeight() > anchor.getHeight() && text.length() > 0 ; ) {
-                    final int lastSpaceIdx = Math.max(text.lastIndexOf(" "), text.lastIndexOf("\n"));
-
-                    if (lastSpaceIdx < 0) {
-                        break;
-                    }
-
-                    text.delete(lastSpaceIdx, text.length());
-                    // Add a trailing ellipsis unless it's empty or already contained a trailing ellipsis or "..." at the final truncated position.
-                    run.setText(text.length() > 0 ? text.toString().replaceFirst("(\\s*(\\.{3}|\u2026))?$", "\u2026") : "");
-                }
+                TextTruncation.truncate(textMeasurer, textBox, run, runData.getText().trim(), anchor.getHeight());
 
                 // The font metrics aren't going to be perfect (due to unavailability of fonts etc.) so we force the truncated text to fit.
                 textBox.setTextAutofit(TextShape.TextAutofit.NORMAL);
@@ -1643,13 +2243,14 @@ public class PowerPointServiceImpl implements PowerPointService {
      * @param pptx the presentation to add to.
      * @param slide the slide to add to.
      * @param templateChart the original template chart XML reference object from the template.
+     * @param templateChartParts the parts referred to by the template chart, as read from the template.
      * @param modifiedChart the new chart XML object.
      * @param workbook the Excel workbook data corresponding to the chart XML data.
      * @param relId the relation id for the new chart.
      * @throws IOException if there's IO errors working with the chart.
      * @throws InvalidFormatException if there's errors generating new package part names for the new copies of the data.
      */
-    private static void writeChart(final XMLSlideShow pptx, final XSLFSlide slide, final XSLFChart templateChart, final CTChartSpace modifiedChart, final XSSFWorkbook workbook, final String relId) throws IOException, InvalidFormatException {
+    private static void writeChart(final XMLSlideShow pptx, final XSLFSlide slide, final XSLFChart templateChart, final List<SlideShowTemplate.ChartPart> templateChartParts, final CTChartSpace modifiedChart, final XSSFWorkbook workbook, final String relId) throws IOException, InvalidFormatException {
         final OPCPackage opcPackage = pptx.getPackage();
         final PackagePartName chartName = generateNewName(opcPackage, templateChart.getPackagePart().getPartName().getURI().getPath());
 
@@ -1662,23 +2263,301 @@ public class PowerPointServiceImpl implements PowerPointService {
 
         slide.getPackagePart().addRelationship(chartName, TargetMode.INTERNAL, XSLFRelation.CHART.getRelation(), relId);
 
-        for(final POIXMLDocumentPart.RelationPart part : templateChart.getRelationParts()) {
-            final ByteArrayOutputStream partCopy = new ByteArrayOutputStream();
-            final URI targetURI = part.getRelationship().getTargetURI();
+        for(final SlideShowTemplate.ChartPart part : templateChartParts) {
+            final PackagePartName name = generateNewName(opcPackage, part.getPath());
+            final PackagePart partCopy = opcPackage.createPart(name, part.getContentType());
+
+            try(OutputStream outputStream = partCopy.getOutputStream()) {
+                if (part.getData() == null) {
+                    workbook.write(outputStream);
+                }
+                else {
+                    outputStream.write(part.getData());
+                }
+            }
+
+            chartPart.addRelationship(name, TargetMode.INTERNAL, part.getRelationshipType());
+        }
+    }
+
+    /**
+     * Holder for the default image executor, so its threads are only created if it's used.
+     */
+    static class DefaultImageExecutor {
+        static final Executor INSTANCE = createExecutor();
+
+        private static Executor createExecutor() {
+            final AtomicInteger threadCount = new AtomicInteger();
+
+            return Executors.newFixedThreadPool(DEFAULT_IMAGE_THREADS, runnable -> {
+                final Thread thread = new Thread(runnable, "powerpoint-image-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Plans the pages of a list one page at a time, pulling documents from an iterator as it needs them; measuring each
+     *   document in a scratch text box on a sizing slide, so no shapes are created on the list's own slides.
+     */
+    private final class ListPlanner {
+        private final Function<String, ImageData> thumbnails;
+        private final XMLSlideShow ppt;
+        private final XSLFSlide sizingSlide;
+        private final Rectangle2D.Double anchor;
+        private final ListData data;
+        private final Iterator<Document> docs;
+
+        /** Height of the headers at the top of each new slide, or zero if there aren't any. */
+        private final double headerHeight;
+
+        /** The scratch text box documents are measured in, which is reused for every document. */
+        private final XSLFTextBox sizingBox;
+
+        /** The document which didn't fit at the end of the last page planned, if any. */
+        private Document pending;
+
+        private ListPlanner(final Function<String, ImageData> thumbnails, final XMLSlideShow ppt, final XSLFSlide sizingSlide, final Rectangle2D.Double anchor, final ListData data, final String results, final String sortBy, final Iterator<Document> docs) {
+            this.thumbnails = thumbnails;
+            this.ppt = ppt;
+            this.sizingSlide = sizingSlide;
+            this.anchor = anchor;
+            this.data = data;
+            this.docs = docs;
+
+            // The headers are the same on every slide, so we only have to measure them once
+            double yStep = 0;
+
+            for(final XSLFTextBox header : addListHeaders(sizingSlide, anchor, results, sortBy)) {
+                yStep = Math.max(textMeasurer.getTextHeight(header), yStep);
+                sizingSlide.removeShape(header);
+            }
 
-            final PackagePartName name = generateNewName(opcPackage, targetURI.getPath());
+            headerHeight = yStep;
+            sizingBox = sizingSlide.createTextBox();
+        }
 
-            final String contentType = part.getDocumentPart().getPackagePart().getContentType();
+        /**
+         * @return whether there are any documents left to plan.
+         */
+        private boolean hasNext() {
+            return pending != null || docs.hasNext();
+        }
 
-            if("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet".equals(contentType)) {
-                workbook.write(partCopy);
+        /**
+         * Plans the next page of the list: documents are added to the page until one doesn't fit, which is left for the
+         *   next page; unless it's the first document on the page, in which case it's added even though it overflows.
+         * @param newSlide whether the page will be on a new slide, which has the headers at the top.
+         * @return the planned page.
+         * @throws CancellationException if the current thread is interrupted.
+         */
+        private ListPage planPage(final boolean newSlide) throws CancellationException {
+            final List<ListItem> items = new ArrayList<>();
+            double yCursor = LIST_Y_MARGIN + anchor.getMinY();
+
+            if (newSlide && headerHeight > 0) {
+                yCursor += LIST_ITEM_MARGIN + headerHeight;
             }
-            else {
-                IOUtils.copy(part.getDocumentPart().getPackagePart().getInputStream(), partCopy);
+
+            while(hasNext()) {
+                checkCancelled();
+
+                final Document doc = pending != null ? pending : docs.next();
+                pending = null;
+
+                final ListItem item = planItem(doc, yCursor);
+                yCursor += item.getHeight();
+
+                if (yCursor > anchor.getMaxY()) {
+                    if (items.isEmpty()) {
+                        items.add(item);
+                    }
+                    else {
+                        pending = doc;
+                    }
+
+                    break;
+                }
+
+                yCursor += LIST_ITEM_MARGIN;
+                items.add(item);
+            }
+
+            return new ListPage(newSlide, items);
+        }
+
+        /**
+         * Measures a document in the sizing text box, as if it were drawn at a given vertical position.
+         * @param doc the document.
+         * @param yCursor the top of the document's text box.
+         * @return the planned list item.
+         */
+        private ListItem planItem(final Document doc, final double yCursor) {
+            double xCursor = LIST_X_MARGIN + anchor.getMinX();
+
+            if (data.isDrawIcons()) {
+                xCursor += LIST_ICON_WIDTH;
+            }
+
+            sizingBox.clearText();
+            sizingBox.setAnchor(new Rectangle2D.Double(xCursor, yCursor, Math.max(0, anchor.getMaxX() - xCursor - LIST_X_MARGIN), Math.max(0, anchor.getMaxY() - yCursor)));
+
+            addListItemHeading(sizingBox, doc, data);
+
+            final double thumbnailOffset = textMeasurer.getTextHeight(sizingBox);
+
+            Rectangle2D.Double pictureAnchor = null;
+            XSLFPictureData pictureData = null;
+
+            final ImageData thumbnail = StringUtils.isNotBlank(doc.getThumbnail()) ? thumbnails.apply(doc.getThumbnail()) : null;
+
+            if (thumbnail != null) {
+                try {
+                    // Picture reuse is automatic. We only add the picture shape when the page is drawn, since due to a
+                    //   quirk of OpenOffice, deleting a picture shape removes the pictureData as well; which is a
+                    //   problem since the pictureData can be shared between multiple pictures.
+                    pictureData = PictureProperties.addPicture(ppt, thumbnail);
+                    pictureAnchor = new Rectangle2D.Double(xCursor, yCursor + thumbnailOffset + LIST_THUMBNAIL_MARGIN, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+                }
+                catch(RuntimeException e) {
+                    // if there's any errors, we'll just ignore the image
+                }
+            }
+
+            addListItemContent(sizingBox, doc, data, pictureData != null);
+
+            double elHeight = Math.max(textMeasurer.getTextHeight(sizingBox), LIST_ICON_HEIGHT);
+            if (pictureAnchor != null) {
+                elHeight = Math.max(elHeight, pictureAnchor.getMaxY() - yCursor);
+            }
+
+            return new ListItem(doc, yCursor, elHeight, pictureData, pictureAnchor);
+        }
+
+        /**
+         * Removes the sizing text box from the sizing slide.
+         */
+        private void close() {
+            sizingSlide.removeShape(sizingBox);
+        }
+    }
+
+    /**
+     * Reads documents from an iterator in batches, fetching the next batch's thumbnails while the current batch is laid
+     *   out; so only two batches of documents and their thumbnails are held at a time, however long the list is.
+     */
+    private final class ThumbnailPrefetcher implements Iterator<Document> {
+        private final Iterator<Document> docs;
+
+        /** The rest of the current batch of documents. */
+        private Iterator<Document> batch = Collections.emptyIterator();
+
+        /** The thumbnails of the current batch, by thumbnail identifier. */
+        private Map<String, ImageData> thumbnails = Collections.emptyMap();
+
+        /** The next batch of documents, or null if there are no more documents. */
+        private List<Document> nextBatch;
+
+        /** The future of the next batch's thumbnails, or null if there are no more documents. */
+        private CompletableFuture<Map<String, ImageData>> nextThumbnails;
+
+        private ThumbnailPrefetcher(final Iterator<Document> docs) {
+            this.docs = docs;
+            prefetch();
+        }
+
+        /**
+         * Reads the next batch of documents, and starts fetching their thumbnails.
+         */
+        private void prefetch() {
+            final List<Document> next = new ArrayList<>(LIST_BATCH_SIZE);
+            final Set<String> thumbnailIds = new LinkedHashSet<>();
+
+            while(next.size() < LIST_BATCH_SIZE && docs.hasNext()) {
+                final Document doc = docs.next();
+                next.add(doc);
+
+                if (StringUtils.isNotBlank(doc.getThumbnail())) {
+                    thumbnailIds.add(doc.getThumbnail());
+                }
+            }
+
+            nextBatch = next.isEmpty() ? null : next;
+            nextThumbnails = next.isEmpty() ? null : imageSource.getImageDataAsync(thumbnailIds, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, imageExecutor);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return batch.hasNext() || nextBatch != null;
+        }
+
+        /**
+         * @return the next document; its thumbnail can be looked up until the document after it is read.
+         * @throws CancellationException if the current thread is interrupted while waiting for the thumbnails.
+         */
+        @Override
+        public Document next() throws CancellationException {
+            if (!batch.hasNext()) {
+                if (nextBatch == null) {
+                    throw new NoSuchElementException();
+                }
+
+                batch = nextBatch.iterator();
+                thumbnails = await(nextThumbnails);
+                prefetch();
             }
 
-            opcPackage.createPart(name, contentType, partCopy);
-            chartPart.addRelationship(name, TargetMode.INTERNAL, part.getRelationship().getRelationshipType());
+            return batch.next();
+        }
+
+        /**
+         * @param thumbnailId the thumbnail identifier of a document in the current batch.
+         * @return the thumbnail image data, or null if it couldn't be fetched.
+         */
+        private ImageData getThumbnail(final String thumbnailId) {
+            return thumbnails.get(thumbnailId);
         }
+
+        /**
+         * Cancels fetching the next batch's thumbnails.
+         */
+        private void cancel() {
+            if (nextThumbnails != null) {
+                nextThumbnails.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * A planned page of a list.
+     */
+    @Data
+    private static class ListPage {
+        /** Whether the page is on a new slide, which has the headers at the top. */
+        private final boolean newSlide;
+
+        /** The documents on the page, from top to bottom. */
+        private final List<ListItem> items;
+    }
+
+    /**
+     * A planned document in a list.
+     */
+    @Data
+    private static class ListItem {
+        private final Document doc;
+
+        /** The top of the document's text box. */
+        private final double y;
+
+        /** The height of the document, including its icon and thumbnail. */
+        private final double height;
+
+        /** The document's thumbnail, or null if it doesn't have one. */
+        private final XSLFPictureData pictureData;
+
+        /** Where to draw the thumbnail, or null if there isn't one. */
+        private final Rectangle2D.Double pictureAnchor;
     }
-}
\ No newline at end of file
+}
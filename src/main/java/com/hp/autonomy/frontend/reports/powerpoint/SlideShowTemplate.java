@@ -6,13 +6,32 @@
 package com.hp.autonomy.frontend.reports.powerpoint;
 
 import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.ZipOutputStream;
 import javax.xml.namespace.QName;
+import lombok.Data;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.poi.POIXMLDocumentPart;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.util.IOUtils;
 import org.apache.poi.xslf.usermodel.XMLSlideShow;
 import org.apache.poi.xslf.usermodel.XSLFChart;
 import org.apache.poi.xslf.usermodel.XSLFGraphicFrame;
@@ -29,17 +48,32 @@ import static org.apache.poi.util.Units.EMU_PER_POINT;
 
 /**
  * Internal implementation class to keep track of required elements from the template.
+ * Once constructed, it's treated as read-only and may be shared between threads; each presentation we generate gets
+ *   its own copy of the template via {@link #createSlideShow()}.
  */
 class SlideShowTemplate {
 
     private static final String RELATION_NAMESPACE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
 
+    /** Content type of the Excel workbook embedded in a chart. */
+    static final String WORKBOOK_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
     /** Parsed PowerPoint file from the template. */
     private final XMLSlideShow pptx;
+    /** The template presentation with all slides removed, serialized as an uncompressed .pptx so it's cheap to re-read. */
+    private final byte[] snapshot;
     /** Doughnut chart XML object, cached so we can clone it. */
     private final ImmutablePair<XSLFChart, CTGraphicalObjectFrame> doughnutChart;
     /** An xy scatterplot chart XML object, cached so we can clone it.  */
     private final ImmutablePair<XSLFChart, CTGraphicalObjectFrame> graphChart;
+    /** Parts referred to by the doughnut chart, serialized so we can copy them into new charts. */
+    private final List<ChartPart> doughnutChartParts;
+    /** Parts referred to by the xy scatterplot chart, serialized so we can copy them into new charts. */
+    private final List<ChartPart> graphChartParts;
+    /** The snapshot without the parts which aren't needed to measure text; see {@link #createSizingSnapshot(byte[])}. */
+    private final byte[] sizingSnapshot;
+    /** An idle slide in a copy of the sizing snapshot, for measuring text on; see {@link #borrowSizingSlide()}. */
+    private final AtomicReference<XSLFSlide> sizingSlide = new AtomicReference<>();
 
     SlideShowTemplate(final InputStream inputStream) throws TemplateLoadException {
         try {
@@ -66,15 +100,36 @@ class SlideShowTemplate {
                 throw new TemplateLoadException("Second slide has the wrong chart type, should have a time-axis xy scatterplot chart");
             }
 
+            doughnutChartParts = getChartParts(doughnutChart.getLeft());
+            graphChartParts = getChartParts(graphChart.getLeft());
+
             // Remove the slides afterwards
             pptx.removeSlide(1);
             pptx.removeSlide(0);
+
+            // Snapshot the stripped presentation; we don't compress it since it's only kept in memory, and skipping
+            //   compression makes it much faster to unzip each time we create a new presentation from it.
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final ZipOutputStream zos = new ZipOutputStream(baos);
+            zos.setLevel(Deflater.NO_COMPRESSION);
+            pptx.write(zos);
+            snapshot = baos.toByteArray();
+            sizingSnapshot = createSizingSnapshot(snapshot);
         }
         catch(IOException e) {
             throw new TemplateLoadException("Error while loading slide show", e);
         }
     }
 
+    /**
+     * Rough estimate of the heap retained by this template; the snapshot plus the parsed template, which takes up at
+     *   least as much space again, and likewise for the sizing snapshot and its idle copy.
+     * @return the estimated size in bytes.
+     */
+    long getEstimatedSize() {
+        return 2L * snapshot.length + 2L * sizingSnapshot.length;
+    }
+
     /**
      * Get the doughnut chart from the first slide. Do not modify this object.
      * @return the doughnut chart from the first slide
@@ -83,6 +138,14 @@ class SlideShowTemplate {
         return doughnutChart.getLeft();
     }
 
+    /**
+     * Get the parts referred to by the doughnut chart, e.g. colors1.xml and style1.xml.
+     * @return the doughnut chart's parts.
+     */
+    List<ChartPart> getDoughnutChartParts() {
+        return doughnutChartParts;
+    }
+
     /**
      * Creates a new clone of the doughnut chart XML from the first slide, for inclusion into a slide's shapes.
      * @param relId the relation id to the chart.
@@ -103,6 +166,14 @@ class SlideShowTemplate {
         return graphChart.getLeft();
     }
 
+    /**
+     * Get the parts referred to by the graph xy scatterplot chart, e.g. colors2.xml and style2.xml.
+     * @return the graph chart's parts.
+     */
+    List<ChartPart> getGraphChartParts() {
+        return graphChartParts;
+    }
+
     /**
      * Creates a new clone of the scatterplot chart XML from the second slide, for inclusion into a slide's shapes.
      * @param relId the relation id to the chart.
@@ -116,11 +187,129 @@ class SlideShowTemplate {
     }
 
     /**
-     * Get the template presentation with all slides removed.
-     * @return the template presentation without any slides.
+     * Creates a new copy of the template presentation with all slides removed, which can be freely modified.
+     * @return a new copy of the template presentation without any slides.
+     * @throws TemplateLoadException if the copy couldn't be created.
      */
-    XMLSlideShow getSlideShow() {
-        return pptx;
+    XMLSlideShow createSlideShow() throws TemplateLoadException {
+        try {
+            return new XMLSlideShow(new ByteArrayInputStream(snapshot));
+        }
+        catch(IOException e) {
+            throw new TemplateLoadException("Error while copying slide show from template", e);
+        }
+    }
+
+    /**
+     * Get an empty slide in a copy of the template, to measure text on without adding shapes to a presentation, since
+     *   even a slide which is removed again would change the names of the slides which are added after it.
+     * Parsing a copy of the template is slower than rendering most presentations, so the slide should be returned with
+     *   {@link #returnSizingSlide(XSLFSlide)} once it's no longer needed, to be reused by the next presentation. Only one
+     *   idle slide is kept, so its memory is bounded and counted by {@link #getEstimatedSize()}; concurrent renders
+     *   parse their own copies, which are small since the sizing snapshot only has what's needed to measure text.
+     * @return an empty slide, which isn't used by anyone else until it's returned.
+     * @throws TemplateLoadException if a new copy of the template was needed, but it couldn't be created.
+     */
+    XSLFSlide borrowSizingSlide() throws TemplateLoadException {
+        final XSLFSlide slide = sizingSlide.getAndSet(null);
+
+        if (slide != null) {
+            return slide;
+        }
+
+        try {
+            return new XMLSlideShow(new ByteArrayInputStream(sizingSnapshot)).createSlide();
+        }
+        catch(IOException e) {
+            throw new TemplateLoadException("Error while copying slide show from template", e);
+        }
+    }
+
+    /**
+     * Returns a slide from {@link #borrowSizingSlide()}, removing any shapes which were left on it.
+     * @param slide the slide, which mustn't be used afterwards.
+     */
+    void returnSizingSlide(final XSLFSlide slide) {
+        for(final XSLFShape shape : new ArrayList<>(slide.getShapes())) {
+            slide.removeShape(shape);
+        }
+
+        if (!sizingSlide.compareAndSet(null, slide)) {
+            try {
+                slide.getSlideShow().close();
+            }
+            catch(IOException e) {
+                // nothing was written to the copy, so there's nothing to lose
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of the snapshot for measuring text on, which keeps the masters, layouts and theme which provide
+     *   the default text properties; but drops the parts which are no longer referred to, e.g. the template slides'
+     *   charts, and empties the binary parts, e.g. images and embedded fonts, which text measurement doesn't read.
+     * @param snapshot the snapshot of the template presentation.
+     * @return the sizing snapshot, or the snapshot itself if it couldn't be reduced.
+     * @throws IOException if the sizing snapshot couldn't be written.
+     */
+    private static byte[] createSizingSnapshot(final byte[] snapshot) throws IOException {
+        final OPCPackage pkg;
+
+        try {
+            pkg = OPCPackage.open(new ByteArrayInputStream(snapshot));
+        }
+        catch(InvalidFormatException e) {
+            return snapshot;
+        }
+
+        try {
+            final Set<PackagePartName> reachable = new HashSet<>();
+            addReachableParts(pkg, pkg.getRelationships(), reachable);
+
+            for(final PackagePart part : pkg.getParts()) {
+                if (!reachable.contains(part.getPartName())) {
+                    if (!part.isRelationshipPart()) {
+                        pkg.removePart(part);
+                    }
+                }
+                else if (!part.getContentType().endsWith("xml")) {
+                    // Writing nothing replaces the part with an empty one
+                    part.getOutputStream().close();
+                }
+            }
+
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final ZipOutputStream zos = new ZipOutputStream(baos);
+            zos.setLevel(Deflater.NO_COMPRESSION);
+            pkg.save(zos);
+            return baos.toByteArray();
+        }
+        catch(InvalidFormatException e) {
+            return snapshot;
+        }
+        finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Adds the targets of relationships, and the parts they refer to in turn, to a set of reachable parts.
+     * @param pkg the package.
+     * @param relationships the relationships to follow.
+     * @param reachable the names of the parts found so far.
+     * @throws InvalidFormatException if a relationship target isn't a valid part name.
+     */
+    private static void addReachableParts(final OPCPackage pkg, final PackageRelationshipCollection relationships, final Set<PackagePartName> reachable) throws InvalidFormatException {
+        for(final PackageRelationship relationship : relationships) {
+            if (relationship.getTargetMode() == TargetMode.INTERNAL) {
+                final PackagePartName name = PackagingURIHelper.createPartName(PackagingURIHelper.resolvePartUri(relationship.getSourceURI(), relationship.getTargetURI()));
+                final PackagePart part = pkg.getPart(name);
+
+                if (part != null && reachable.add(name)) {
+                    addReachableParts(pkg, part.getRelationships(), reachable);
+                }
+            }
+        }
     }
 
     /**
@@ -155,6 +344,36 @@ class SlideShowTemplate {
         throw new TemplateLoadException(error);
     }
 
+    /**
+     * Reads all the parts referred to by a chart, so they can be copied into new charts without re-reading them.
+     * @param chart a chart from the template.
+     * @return the chart's parts, in the same order as the chart's relations.
+     * @throws IOException if we can't read the parts.
+     */
+    private static List<ChartPart> getChartParts(final XSLFChart chart) throws IOException {
+        final List<ChartPart> parts = new ArrayList<>();
+
+        for(final POIXMLDocumentPart.RelationPart part : chart.getRelationParts()) {
+            final PackagePart packagePart = part.getDocumentPart().getPackagePart();
+            final String contentType = packagePart.getContentType();
+            final byte[] data;
+
+            if (WORKBOOK_CONTENT_TYPE.equals(contentType)) {
+                // The workbook data is different for every chart, so there's no point keeping it
+                data = null;
+            }
+            else {
+                try(InputStream inputStream = packagePart.getInputStream()) {
+                    data = IOUtils.toByteArray(inputStream);
+                }
+            }
+
+            parts.add(new ChartPart(part.getRelationship().getTargetURI().getPath(), contentType, part.getRelationship().getRelationshipType(), data));
+        }
+
+        return Collections.unmodifiableList(parts);
+    }
+
     /**
      * Utility function to clone the graphical object which represents a chart on a slide.
      * @param base the object to clone.
@@ -215,4 +434,19 @@ class SlideShowTemplate {
         return copy;
     }
 
+    /**
+     * A part referred to by a template chart, e.g. colors1.xml or style1.xml, along with its relationship to the chart.
+     */
+    @Data
+    static class ChartPart {
+        /** Path of the part in the template; new copies will be named after it. */
+        private final String path;
+        /** Content type of the part. */
+        private final String contentType;
+        /** Type of the relationship from the chart to this part. */
+        private final String relationshipType;
+        /** Contents of the part, or null for the embedded workbook, which has to be written for each chart. */
+        private final byte[] data;
+    }
+
 }
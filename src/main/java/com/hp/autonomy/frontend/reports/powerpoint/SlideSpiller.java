@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.namespace.QName;
+import lombok.Data;
+import org.apache.poi.POIXMLDocumentPart;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xslf.usermodel.XSLFPictureData;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTGroupShape;
+
+import static org.apache.poi.POIXMLTypeLoader.DEFAULT_XML_OPTIONS;
+
+/**
+ * Internal implementation class which moves finished slides, and the pictures on them, out of the heap and into a
+ *   temporary file while the rest of a presentation is rendered; otherwise every slide's XML tree and every picture
+ *   stays live until the presentation is written, so heap usage grows with the number of slides.
+ * Each slide's XML is serialized just as POI would serialize it, then its shapes are removed, which leaves POI with an
+ *   empty slide and its relationships to write. When the presentation is written through a
+ *   {@link PolicyZipOutputStream}, the spilled content is copied from the file in place of what POI writes.
+ */
+final class SlideSpiller implements Closeable {
+
+    private static final QName SLIDE = new QName("http://schemas.openxmlformats.org/presentationml/2006/main", "sld");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+
+    /** Where the content of each spilled zip entry is in the file, by entry name. */
+    private final Map<String, Extent> entries = new HashMap<>();
+
+    /** How many of the presentation's pictures have their checksums cached. */
+    private int checksummedPictures;
+
+    /**
+     * Creates a spiller backed by a new temporary file, which is deleted when the spiller is closed.
+     * @throws IOException if the file can't be created.
+     */
+    SlideSpiller() throws IOException {
+        channel = FileChannel.open(Files.createTempFile("slides", ".tmp"), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Moves a finished slide's XML and the data of the pictures on it to the file. The slide is left without any shapes,
+     *   so it shouldn't be changed afterwards; pictures which are already on it can still be added to other slides.
+     * @param slide the slide, which must be from the presentation that will be written with this spiller.
+     * @throws UncheckedIOException if there's an IO error writing to the file.
+     */
+    void spill(final XSLFSlide slide) throws UncheckedIOException {
+        try {
+            final XmlOptions options = new XmlOptions(DEFAULT_XML_OPTIONS);
+            options.setSaveSyntheticDocumentElement(SLIDE);
+            final long slideOffset = channel.position();
+            final OutputStream slideOut = append();
+            slide.getXmlObject().save(slideOut, options);
+            put(slide.getPackagePart(), slideOffset, slideOut);
+
+            // Drop the shapes from the slide's shape tree, keeping the tree's own properties, which are its first two
+            //   children; and from POI's list of the slide's shapes, which would otherwise keep their XML alive.
+            final CTGroupShape spTree = slide.getXmlObject().getCSld().getSpTree();
+            final XmlObject[] children = spTree.selectPath("./*");
+
+            for(int ii = 2; ii < children.length; ++ii) {
+                final XmlCursor cursor = children[ii].newCursor();
+                cursor.removeXml();
+                cursor.dispose();
+            }
+
+            slide.getShapes().clear();
+
+            // The presentation finds existing pictures by their checksums, which POI caches along with their sizes;
+            //   so those have to be cached before any picture data is moved out.
+            final List<XSLFPictureData> pictures = slide.getSlideShow().getPictureData();
+
+            for(; checksummedPictures < pictures.size(); ++checksummedPictures) {
+                PictureProperties.cache(pictures.get(checksummedPictures));
+            }
+
+            for(final POIXMLDocumentPart relation : slide.getRelations()) {
+                if (relation instanceof XSLFPictureData) {
+                    final PackagePart picture = relation.getPackagePart();
+
+                    if (!isSpilled(getEntryName(picture))) {
+                        final long pictureOffset = channel.position();
+                        final OutputStream pictureOut = append();
+
+                        try(InputStream in = picture.getInputStream()) {
+                            IOUtils.copy(in, pictureOut);
+                        }
+
+                        put(picture, pictureOffset, pictureOut);
+                        picture.clear();
+                    }
+                }
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Error spilling slide", e);
+        }
+    }
+
+    /**
+     * Checks whether a zip entry's content has been spilled.
+     * @param entryName the name of the zip entry.
+     * @return true if the entry's content should be copied from the file.
+     */
+    boolean isSpilled(final String entryName) {
+        return entries.containsKey(entryName);
+    }
+
+    /**
+     * Copies a spilled zip entry's content from the file.
+     * @param entryName the name of the zip entry, which must have been spilled.
+     * @param out the stream to copy to.
+     * @throws IOException if there's an IO error.
+     */
+    void writeTo(final String entryName, final OutputStream out) throws IOException {
+        final Extent extent = entries.get(entryName);
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        for(long position = extent.getOffset(), end = position + extent.getLength(); position < end; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+
+            final int read = channel.read(buffer, position);
+
+            if (read < 0) {
+                throw new EOFException("Spilled entry " + entryName + " is truncated");
+            }
+
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Starts appending to the file; the stream mustn't be closed, since that would close the file.
+     */
+    private OutputStream append() {
+        return new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    }
+
+    /**
+     * Records a part's content as everything appended to the file from an offset.
+     */
+    private void put(final PackagePart part, final long offset, final OutputStream out) throws IOException {
+        out.flush();
+        entries.put(getEntryName(part), new Extent(offset, channel.position() - offset));
+    }
+
+    /**
+     * The name of a part's entry in the zip file, which POI derives from its part name without the leading slash.
+     */
+    private static String getEntryName(final PackagePart part) {
+        return part.getPartName().getName().substring(1);
+    }
+
+    @Data
+    private static class Extent {
+        private final long offset;
+        private final long length;
+    }
+}
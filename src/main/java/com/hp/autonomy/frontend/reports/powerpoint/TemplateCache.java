@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.poi.POIXMLException;
+import org.apache.poi.openxml4j.exceptions.NotOfficeXmlFileException;
+
+/**
+ * Internal implementation class which parses the template from a {@link TemplateSource} on first use and caches it,
+ *   so generating a presentation only has to copy the already-validated template instead of re-parsing it.
+ * If the template is invalid, nothing is cached and the next call will try to parse it again.
+ */
+class TemplateCache implements ParsedTemplateSource {
+
+    /** The source for the template file. */
+    private final TemplateSource source;
+
+    /** The parsed template, or null if it hasn't been successfully loaded yet. */
+    private volatile SlideShowTemplate template;
+
+    TemplateCache(final TemplateSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Get the parsed template, loading it from the template source if it hasn't already been loaded.
+     * @return the internal parsed template and chart information.
+     * @throws TemplateLoadException if any errors occurred.
+     */
+    @Override
+    public SlideShowTemplate getTemplate() throws TemplateLoadException {
+        SlideShowTemplate loaded = template;
+
+        if (loaded == null) {
+            synchronized(this) {
+                loaded = template;
+
+                if (loaded == null) {
+                    template = loaded = parse(source);
+                }
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Utility function to load and parse a template file.
+     * @param source the source for the template file.
+     * @return the internal parsed template and chart information.
+     * @throws TemplateLoadException if any errors occurred.
+     */
+    static SlideShowTemplate parse(final TemplateSource source) throws TemplateLoadException {
+        try(InputStream inputStream = source.getInputStream()) {
+            return new SlideShowTemplate(inputStream);
+        }
+        catch(IOException e) {
+            throw new TemplateLoadException("Error while loading template", e);
+        }
+        catch(NotOfficeXmlFileException|POIXMLException e) {
+            throw new TemplateLoadException("File is not a valid Office PowerPoint file", e);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Data;
+
+/**
+ * A registry of templates and settings for multiple tenants, so many tenants can share a single image source and a
+ *   bounded amount of memory instead of needing one service (and one cached template) per tenant.
+ *
+ * Parsed templates are cached in a least-recently-used cache, capped both by the number of templates and by their
+ *   estimated retained size. Evicted templates are parsed again from their template source the next time they're used.
+ * Text measurements and topic map label scales are cached once for the whole registry, and shared by all tenants.
+ *
+ * <pre>
+ *     final TemplateRegistry registry = new TemplateRegistry(new WebAndDataUriImageSource(), 100, 256 * 1024 * 1024);
+ *     registry.register("customer1", () -&gt; new FileInputStream("/path/to/customer1.pptx"), TemplateSettingsSource.DEFAULT);
+ *
+ *     final XMLSlideShow pptx = registry.getService("customer1").graph(dategraph);
+ * </pre>
+ */
+public class TemplateRegistry {
+
+    /** The image source shared by all tenants. */
+    private final ImageSource imageSource;
+
+    /** Chooses the font scale of topic map labels, with the text measurer shared by all tenants. */
+    private final TopicMapLabelFitter topicMapLabelFitter;
+
+    /** Maximum number of parsed templates to keep. */
+    private final int maxTemplates;
+
+    /** Maximum estimated size of all the parsed templates to keep, in bytes. */
+    private final long maxBytes;
+
+    /** Registered tenants, by tenant ID. Only changed while holding {@link #templates}. */
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+    /** Parsed templates by tenant ID, in least-recently-used order. Guarded by itself. */
+    private final LinkedHashMap<String, SlideShowTemplate> templates = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Estimated size of all the templates in the cache. Guarded by {@link #templates}. */
+    private long cachedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new registry, which measures text with its own TextMeasurementCache.
+     * @param imageSource what image source to use for converting image identifiers to image data, for all tenants.
+     * @param maxTemplates the maximum number of parsed templates to keep in memory.
+     * @param maxBytes the maximum estimated size of all parsed templates to keep in memory, in bytes.
+     *                 The most recently used template is always kept, even if it's larger than this.
+     */
+    public TemplateRegistry(final ImageSource imageSource, final int maxTemplates, final long maxBytes) {
+        this(imageSource, maxTemplates, maxBytes, new TextMeasurementCache(PowerPointServiceImpl.DEFAULT_TEXT_MEASUREMENTS));
+    }
+
+    /**
+     * Creates a new registry.
+     * @param imageSource what image source to use for converting image identifiers to image data, for all tenants.
+     * @param maxTemplates the maximum number of parsed templates to keep in memory.
+     * @param maxBytes the maximum estimated size of all parsed templates to keep in memory, in bytes.
+     *                 The most recently used template is always kept, even if it's larger than this.
+     * @param textMeasurer what to measure text with, for all tenants, e.g. a TextMeasurementCache or GlyphMetricsTextMeasurer.
+     */
+    public TemplateRegistry(final ImageSource imageSource, final int maxTemplates, final long maxBytes, final TextMeasurer textMeasurer) {
+        if (maxTemplates < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("The registry should allow at least one template");
+        }
+
+        this.imageSource = imageSource;
+        this.topicMapLabelFitter = new TopicMapLabelFitter(textMeasurer, PowerPointServiceImpl.DEFAULT_TOPIC_MAP_LABELS);
+        this.maxTemplates = maxTemplates;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds or replaces a tenant's template and settings. The template isn't parsed until it's first used.
+     * @param tenantId the tenant ID.
+     * @param pptxTemplate what template .pptx file to use.
+     * @param pptxSettings what template settings to use.
+     */
+    public void register(final String tenantId, final TemplateSource pptxTemplate, final TemplateSettingsSource pptxSettings) {
+        synchronized(templates) {
+            tenants.put(tenantId, new Tenant(tenantId, pptxTemplate, pptxSettings));
+            removeTemplate(tenantId);
+        }
+    }
+
+    /**
+     * Removes a tenant and its cached template.
+     * @param tenantId the tenant ID.
+     */
+    public void unregister(final String tenantId) {
+        synchronized(templates) {
+            tenants.remove(tenantId);
+            removeTemplate(tenantId);
+        }
+    }
+
+    /**
+     * Get a service which renders presentations using a tenant's template and settings.
+     * The service shares the registry's image source, text measurer and template cache, so it's cheap to create and
+     *   there's no need to keep it once you've rendered your presentation.
+     * @param tenantId the tenant ID.
+     * @return a service for the tenant.
+     * @throws IllegalArgumentException if the tenant isn't registered.
+     */
+    public PowerPointService getService(final String tenantId) throws IllegalArgumentException {
+        final Tenant tenant = tenants.get(tenantId);
+
+        if (tenant == null) {
+            throw new IllegalArgumentException("Unknown tenant: " + tenantId);
+        }
+
+        return new PowerPointServiceImpl(tenant, tenant.pptxSettings, imageSource, CompressionPolicy.DEFAULT, PowerPointServiceImpl.DefaultImageExecutor.INSTANCE, topicMapLabelFitter);
+    }
+
+    /**
+     * Get a snapshot of the cache statistics.
+     * @return the cache statistics.
+     */
+    public Statistics getStatistics() {
+        synchronized(templates) {
+            return new Statistics(hits.get(), misses.get(), evictions.get(), templates.size(), cachedBytes);
+        }
+    }
+
+    /**
+     * Get a tenant's parsed template from the cache, or parse and cache it if it's not already cached.
+     * @param tenant the tenant.
+     * @return the parsed template.
+     * @throws TemplateLoadException if the tenant's template is invalid.
+     */
+    private SlideShowTemplate getTemplate(final Tenant tenant) throws TemplateLoadException {
+        SlideShowTemplate template = getCachedTemplate(tenant.tenantId);
+
+        if (template != null) {
+            hits.incrementAndGet();
+            return template;
+        }
+
+        // Only parse each tenant's template once if there's multiple requests for it, without blocking other tenants.
+        synchronized(tenant) {
+            template = getCachedTemplate(tenant.tenantId);
+
+            if (template != null) {
+                hits.incrementAndGet();
+                return template;
+            }
+
+            misses.incrementAndGet();
+            template = TemplateCache.parse(tenant.pptxTemplate);
+            putTemplate(tenant, template);
+
+            return template;
+        }
+    }
+
+    private SlideShowTemplate getCachedTemplate(final String tenantId) {
+        synchronized(templates) {
+            return templates.get(tenantId);
+        }
+    }
+
+    /**
+     * Caches a tenant's parsed template, unless the tenant has been replaced or removed while it was being parsed; which
+     *   is checked under the same lock as register and unregister, so a stale template is never cached.
+     * @param tenant the tenant whose template was parsed.
+     * @param template the parsed template.
+     */
+    private void putTemplate(final Tenant tenant, final SlideShowTemplate template) {
+        synchronized(templates) {
+            if (tenants.get(tenant.tenantId) != tenant) {
+                return;
+            }
+
+            final SlideShowTemplate old = templates.put(tenant.tenantId, template);
+
+            if (old != null) {
+                cachedBytes -= old.getEstimatedSize();
+            }
+
+            cachedBytes += template.getEstimatedSize();
+
+            // Evict the least-recently-used templates, always keeping the template we just added.
+            final Iterator<SlideShowTemplate> iterator = templates.values().iterator();
+
+            while(templates.size() > 1 && (templates.size() > maxTemplates || cachedBytes > maxBytes)) {
+                cachedBytes -= iterator.next().getEstimatedSize();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void removeTemplate(final String tenantId) {
+        synchronized(templates) {
+            final SlideShowTemplate old = templates.remove(tenantId);
+
+            if (old != null) {
+                cachedBytes -= old.getEstimatedSize();
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the registry's cache statistics.
+     */
+    @Data
+    public static class Statistics {
+        /** Number of times a template was found in the cache. */
+        private final long hitCount;
+
+        /** Number of times a template had to be parsed since it wasn't in the cache. */
+        private final long missCount;
+
+        /** Number of templates evicted from the cache to keep it within its limits. */
+        private final long evictionCount;
+
+        /** Number of templates currently in the cache. */
+        private final int size;
+
+        /** Estimated size of the templates currently in the cache, in bytes. */
+        private final long estimatedBytes;
+    }
+
+    /**
+     * A registered tenant, which acts as the template source for the tenant's service.
+     */
+    private class Tenant implements TemplateSource, ParsedTemplateSource {
+        private final String tenantId;
+        private final TemplateSource pptxTemplate;
+        private final TemplateSettingsSource pptxSettings;
+
+        private Tenant(final String tenantId, final TemplateSource pptxTemplate, final TemplateSettingsSource pptxSettings) {
+            this.tenantId = tenantId;
+            this.pptxTemplate = pptxTemplate;
+            this.pptxSettings = pptxSettings;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return pptxTemplate.getInputStream();
+        }
+
+        @Override
+        public SlideShowTemplate getTemplate() throws TemplateLoadException {
+            return TemplateRegistry.this.getTemplate(this);
+        }
+    }
+}
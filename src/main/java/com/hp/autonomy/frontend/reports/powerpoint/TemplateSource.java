@@ -14,7 +14,8 @@ import java.io.InputStream;
 public interface TemplateSource {
     /**
      * This should return a new {@link InputStream} containing the PowerPoint template we'll use.
-     * This method may be called multiple times (typically once per generated PowerPoint).
+     * This method may be called multiple times, though the service parses and caches the template, so it's typically
+     *   only called once per service.
      * The template has specific requirements, see <a href="https://github.com/hpe-idol/java-powerpoint-report/" target="_blank">README.md</a> for details.
      * @return stream containing the data for the PowerPoint template.
      * @throws IOException if there's an IO error.
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Data;
+import org.apache.poi.sl.draw.DrawFactory;
+import org.apache.poi.sl.draw.DrawTextParagraph;
+import org.apache.poi.sl.usermodel.Insets2D;
+import org.apache.poi.sl.usermodel.TextParagraph;
+import org.apache.poi.sl.usermodel.TextShape;
+import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
+import org.apache.poi.xslf.usermodel.XSLFTextRun;
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+
+/**
+ * Measures the height of text shapes like {@link XSLFTextShape#getTextHeight()}, caching the measurement of each
+ *   paragraph; since POI runs a full AWT text layout on every call, while the same titles, dates, refs and font sizes
+ *   recur throughout a list or report, and between requests.
+ *
+ * Paragraphs are keyed by their text and the properties which affect their layout: the font family, size, bold and
+ *   italic of each run, the paragraph's margins and line spacing, and the wrapping width of the shape. The shape's
+ *   height is then summed from its paragraphs the same way POI does, so it matches POI to within rounding.
+ *
+ * A cache is safe to share between threads and renders.
+ */
+public class TextMeasurementCache implements TextMeasurer {
+
+    /** Character used to separate the parts of a cache key. */
+    private static final char SEPARATOR = '\u0000';
+
+    /** Maximum number of paragraph measurements to cache, or zero to always use POI directly. */
+    private final int maxEntries;
+
+    /** Cached paragraph measurements by key, in least-recently-used order. Guarded by itself. */
+    private final Map<String, ParagraphMeasurement> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a text measurement cache.
+     * @param maxEntries the maximum number of paragraph measurements to cache; or zero to disable caching, so every
+     *                   shape is measured by POI directly.
+     */
+    public TextMeasurementCache(final int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("The cache size shouldn't be negative");
+        }
+
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<String, ParagraphMeasurement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, ParagraphMeasurement> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Measures the height of the text in a shape, including the space between paragraphs but not the shape's insets.
+     * @param shape the text shape to measure.
+     * @return the height of the text, in points.
+     */
+    @Override
+    public double getTextHeight(final XSLFTextShape shape) {
+        if (maxEntries == 0) {
+            return shape.getTextHeight();
+        }
+
+        final List<XSLFTextParagraph> paragraphs = shape.getTextParagraphs();
+        final List<ParagraphMeasurement> measurements = new ArrayList<>(paragraphs.size());
+        final String shapeKey = getShapeKey(shape);
+
+        Graphics2D graphics = null;
+
+        try {
+            for(final XSLFTextParagraph paragraph : paragraphs) {
+                final TextParagraph.BulletStyle bulletStyle = paragraph.getBulletStyle();
+
+                if (bulletStyle != null && bulletStyle.getAutoNumberingScheme() != null) {
+                    // numbered paragraphs depend on their position in the shape
+                    return shape.getTextHeight();
+                }
+
+                final String key = getParagraphKey(shapeKey, paragraph);
+                ParagraphMeasurement measurement;
+
+                synchronized(cache) {
+                    measurement = cache.get(key);
+                }
+
+                if (measurement != null) {
+                    hits.incrementAndGet();
+                }
+                else {
+                    misses.incrementAndGet();
+
+                    if (graphics == null) {
+                        graphics = createGraphics();
+                    }
+
+                    measurement = new ParagraphMeasurer(paragraph).measure(graphics);
+
+                    if (measurement == null) {
+                        // POI doesn't handle paragraphs without any lines consistently, so let it measure them itself
+                        return shape.getTextHeight();
+                    }
+
+                    synchronized(cache) {
+                        cache.put(key, measurement);
+                    }
+                }
+
+                measurements.add(measurement);
+            }
+        }
+        finally {
+            if (graphics != null) {
+                graphics.dispose();
+            }
+        }
+
+        return ParagraphMeasurement.sum(paragraphs, measurements);
+    }
+
+    /**
+     * Removes all measurements from the cache.
+     */
+    public void clear() {
+        synchronized(cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Get a snapshot of the cache statistics.
+     * @return the cache statistics.
+     */
+    public Statistics getStatistics() {
+        synchronized(cache) {
+            return new Statistics(hits.get(), misses.get(), cache.size());
+        }
+    }
+
+    /**
+     * The properties of a shape which affect how its paragraphs wrap.
+     */
+    private static String getShapeKey(final XSLFTextShape shape) {
+        final Rectangle2D anchor = shape.getAnchor();
+        final Insets2D insets = shape.getInsets();
+        final TextShape.TextDirection direction = shape.getTextDirection();
+
+        // vertical text wraps to the height of the shape rather than its width
+        final double wrapLength = direction == TextShape.TextDirection.VERTICAL || direction == TextShape.TextDirection.VERTICAL_270
+                ? anchor.getHeight()
+                : anchor.getWidth();
+
+        // unwrapped text is measured to the edge of the slide
+        final String position = shape.getWordWrap() ? "" : String.valueOf(anchor.getX());
+
+        return String.valueOf(wrapLength) + SEPARATOR + insets.left + SEPARATOR + insets.right
+                + SEPARATOR + position + SEPARATOR + direction;
+    }
+
+    /**
+     * The text of a paragraph, and the properties which affect its layout.
+     */
+    private static String getParagraphKey(final String shapeKey, final XSLFTextParagraph paragraph) {
+        final StringBuilder key = new StringBuilder(shapeKey)
+                .append(SEPARATOR).append(paragraph.getIndentLevel())
+                .append(SEPARATOR).append(paragraph.getLeftMargin())
+                .append(SEPARATOR).append(paragraph.getRightMargin())
+                .append(SEPARATOR).append(paragraph.getIndent())
+                .append(SEPARATOR).append(paragraph.getLineSpacing())
+                .append(SEPARATOR).append(paragraph.getTextAlign());
+
+        boolean empty = true;
+
+        for(final XSLFTextRun run : paragraph.getTextRuns()) {
+            final String text = run.getRawText();
+
+            if (text == null || text.isEmpty()) {
+                continue;
+            }
+
+            empty = false;
+
+            final String fontFamily = run.getFontFamily();
+            final Double fontSize = run.getFontSize();
+
+            key.append(SEPARATOR).append(text)
+                    .append(SEPARATOR).append(fontFamily != null ? fontFamily : paragraph.getDefaultFontFamily())
+                    .append(SEPARATOR).append(fontSize != null ? fontSize : paragraph.getDefaultFontSize())
+                    .append(SEPARATOR).append(run.isBold())
+                    .append(SEPARATOR).append(run.isItalic())
+                    .append(SEPARATOR).append(run.isSubscript())
+                    .append(SEPARATOR).append(run.isSuperscript())
+                    .append(SEPARATOR).append(run.getTextCap());
+        }
+
+        if (empty) {
+            // empty paragraphs are measured as a space in the default font size
+            key.append(SEPARATOR).append(paragraph.getDefaultFontSize());
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Creates a graphics context like the one POI uses to measure text.
+     */
+    private static Graphics2D createGraphics() {
+        final Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        DrawFactory.getInstance(graphics).fixFonts(graphics);
+        return graphics;
+    }
+
+    /**
+     * Snapshot of the text measurement cache statistics.
+     */
+    @Data
+    public static class Statistics {
+        /** Number of paragraphs whose measurement was found in the cache. */
+        private final long hitCount;
+
+        /** Number of paragraphs which had to be laid out since they weren't in the cache. */
+        private final long missCount;
+
+        /** Number of paragraph measurements currently in the cache. */
+        private final int size;
+
+        /**
+         * Get the fraction of paragraph measurements which were found in the cache.
+         * @return the hit rate, from 0 to 1; or 0 if nothing has been measured.
+         */
+        public double getHitRate() {
+            final long requests = hitCount + missCount;
+            return requests == 0 ? 0 : (double) hitCount / requests;
+        }
+    }
+
+    /**
+     * Lays out a single paragraph with POI, without drawing it.
+     */
+    private static class ParagraphMeasurer extends DrawTextParagraph {
+        private ParagraphMeasurer(final XSLFTextParagraph paragraph) {
+            super(paragraph);
+        }
+
+        /**
+         * Breaks the paragraph into lines, and adds up their heights.
+         * @return the measurement, or null if the paragraph doesn't have any lines.
+         */
+        private ParagraphMeasurement measure(final Graphics2D graphics) {
+            breakText(graphics);
+
+            if (lines.isEmpty()) {
+                return null;
+            }
+
+            final float[] lineHeights = new float[lines.size()];
+
+            for(int ii = 0; ii < lineHeights.length; ++ii) {
+                lineHeights[ii] = lines.get(ii).getHeight();
+            }
+
+            final double height = ParagraphMeasurement.sumLines((XSLFTextParagraph) paragraph, lineHeights, lineHeights.length);
+
+            return new ParagraphMeasurement(height, getFirstLineHeight(), getLastLineHeight());
+        }
+    }
+}
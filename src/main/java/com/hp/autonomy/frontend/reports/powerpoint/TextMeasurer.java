@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+
+/**
+ * An interface to measure the height of text, which is used to lay out lists, report titles, text and topic map labels.
+ *
+ * The default implementation (POI) runs a full AWT text layout on every call, which dominates the rendering time of
+ *   text-heavy lists and reports. A TextMeasurementCache reuses the measurements of repeated paragraphs, and a
+ *   GlyphMetricsTextMeasurer computes them from font metrics without running a full text layout.
+ *
+ *  @see TextMeasurementCache
+ *  @see GlyphMetricsTextMeasurer
+ */
+public interface TextMeasurer {
+
+    /**
+     * Measures the height of the text in a shape, including the space between paragraphs but not the shape's insets;
+     *   as {@link XSLFTextShape#getTextHeight()} does.
+     * @param shape the text shape to measure.
+     * @return the height of the text, in points.
+     */
+    double getTextHeight(final XSLFTextShape shape);
+
+    TextMeasurer POI = XSLFTextShape::getTextHeight;
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.regex.Pattern;
+import org.apache.poi.xslf.usermodel.XSLFTextRun;
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+
+/**
+ * Internal implementation class to truncate the text of a run word by word, with a trailing ellipsis, until its shape's
+ *   text fits a given height.
+ *
+ * Rather than removing one word at a time and measuring the text after each, we find the offsets of all the words up
+ *   front, then gallop and binary-search over them for the longest text which fits; so truncating a long text takes
+ *   O(log words) measurements rather than O(words).
+ */
+final class TextTruncation {
+
+    /** Matches any trailing ellipsis, to be replaced with a single ellipsis character. */
+    private static final Pattern TRAILING_ELLIPSIS = Pattern.compile("(\\s*(\\.{3}|\u2026))?$");
+
+    private TextTruncation() {}
+
+    /**
+     * Truncates the text of a run at a space or newline, adding a trailing ellipsis, so the shape's text fits a height.
+     * The run is left with its longest text which fits; or the shortest, if none of them fit.
+     * @param textMeasurer what to measure the text with.
+     * @param shape the text shape.
+     * @param run the run to truncate, which should be the shape's last.
+     * @param text the text of the run, without leading or trailing whitespace.
+     * @param maxHeight the height the text should fit in, in points.
+     */
+    static void truncate(final TextMeasurer textMeasurer, final XSLFTextShape shape, final XSLFTextRun run, final String text, final double maxHeight) {
+        run.setText(text);
+
+        if (textMeasurer.getTextHeight(shape) <= maxHeight) {
+            return;
+        }
+
+        // The end of each truncated text, from the longest to the shortest; i.e. each space or newline, from the last
+        final int[] ends = new int[text.length()];
+        int count = 0;
+
+        for(int ii = text.length() - 1; ii >= 0; --ii) {
+            final char c = text.charAt(ii);
+
+            if (c == ' ' || c == '\n') {
+                ends[count++] = ii;
+            }
+        }
+
+        if (count == 0) {
+            return;
+        }
+
+        // Gallop towards shorter texts till one fits, then binary-search for the longest which does; since removing words
+        //   doesn't add lines, every text shorter than one which fits will fit too.
+        int tooLong = -1, fits = -1;
+
+        for(int step = 1; fits < 0; step *= 2) {
+            final int index = Math.min(tooLong + step, count - 1);
+
+            if (fits(textMeasurer, shape, run, text, ends[index], maxHeight)) {
+                fits = index;
+            }
+            else if (index == count - 1) {
+                // even the shortest text doesn't fit, but it's the best we can do
+                return;
+            }
+            else {
+                tooLong = index;
+            }
+        }
+
+        while(fits - tooLong > 1) {
+            final int index = (tooLong + fits) >>> 1;
+
+            if (fits(textMeasurer, shape, run, text, ends[index], maxHeight)) {
+                fits = index;
+            }
+            else {
+                tooLong = index;
+            }
+        }
+
+        run.setText(truncate(text, ends[fits]));
+    }
+
+    private static boolean fits(final TextMeasurer textMeasurer, final XSLFTextShape shape, final XSLFTextRun run, final String text, final int end, final double maxHeight) {
+        run.setText(truncate(text, end));
+        return textMeasurer.getTextHeight(shape) <= maxHeight;
+    }
+
+    /**
+     * Truncates text, adding a trailing ellipsis unless it's empty or already had a trailing ellipsis or "..." at the
+     *   truncated position.
+     */
+    private static String truncate(final String text, final int end) {
+        return end > 0 ? TRAILING_ELLIPSIS.matcher(text.substring(0, end)).replaceFirst("\u2026") : "";
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.awt.font.TextHitInfo;
+import java.awt.font.TextLayout;
+import java.awt.geom.Rectangle2D;
+import java.text.BreakIterator;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.sl.usermodel.TextRun;
+import org.apache.poi.sl.usermodel.TextShape;
+import org.apache.poi.xslf.usermodel.XSLFAutoShape;
+import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
+import org.apache.poi.xslf.usermodel.XSLFTextRun;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTTextNormalAutofit;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTShape;
+
+/**
+ * Internal implementation class which chooses the font scale of topic map labels, so their text fits the height of
+ *   their polygon.
+ *
+ * PowerPoint doesn't resize the text till you edit it once, which means the text initially looks too large when you
+ *   first view the slide; so we have to choose a sensible initial scale. OpenOffice does the text resize on load so it
+ *   doesn't have this problem.
+ *
+ * Rather than measuring the label at each step of a binary search, we lay it out once at full scale, and estimate its
+ *   height at smaller scales from the widths of its words and its line height, which scale with the font size. The
+ *   same search then runs on the estimates, and the chosen scale is checked with one measurement; falling back to the
+ *   next smaller scales, then to the binary search, if the text doesn't fit. Scales are cached by the label and the
+ *   size of its polygon, which recur whenever a topic map is exported again.
+ */
+final class TopicMapLabelFitter {
+
+    /** Number of steps of the binary search, which chooses the scale to within 100 / 2^6 percent. */
+    static final int RESIZE_ATTEMPTS = 7;
+
+    /** Difference between successive scales the binary search can choose, in percent. */
+    static final double SCALE_STEP = 99.0 / (1 << (RESIZE_ATTEMPTS - 2));
+
+    /** Number of scales to measure before falling back to the binary search, if the estimated scale doesn't fit. */
+    private static final int CHECK_ATTEMPTS = 3;
+
+    /** Full font scale, in thousandths of a percent. */
+    static final int FULL_SCALE = 100000;
+
+    /** Character used to separate the parts of a cache key. */
+    private static final char SEPARATOR = '\u0000';
+
+    /** Measures the text of the labels. */
+    private final TextMeasurer textMeasurer;
+
+    /** Maximum number of scales to cache, or zero to disable caching. */
+    private final int maxEntries;
+
+    /** Cached font scales by key, in least-recently-used order. Guarded by itself. */
+    private final Map<String, Integer> cache;
+
+    /**
+     * Creates a fitter.
+     * @param textMeasurer what to measure the labels with.
+     * @param maxEntries the maximum number of font scales to cache, or zero to disable caching.
+     */
+    TopicMapLabelFitter(final TextMeasurer textMeasurer, final int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("The cache size shouldn't be negative");
+        }
+
+        this.textMeasurer = textMeasurer;
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Integer> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the text measurer which the labels are measured with.
+     * @return the text measurer.
+     */
+    TextMeasurer getTextMeasurer() {
+        return textMeasurer;
+    }
+
+    /**
+     * Sets the font scale of a shape with normal autofit, so its text fits a given height.
+     * @param shape the shape, with a single paragraph of text in a single font.
+     * @param availHeight the height to fit the text into, in points.
+     * @return the font scale, in thousandths of a percent.
+     */
+    int fit(final XSLFAutoShape shape, final double availHeight) {
+        final CTTextNormalAutofit autoFit = ((CTShape) shape.getXmlObject()).getTxBody().getBodyPr().getNormAutofit();
+        autoFit.setFontScale(FULL_SCALE);
+
+        final String key = maxEntries > 0 ? getKey(shape, availHeight) : null;
+
+        if (key != null) {
+            final Integer cached;
+
+            synchronized(cache) {
+                cached = cache.get(key);
+            }
+
+            if (cached != null) {
+                autoFit.setFontScale(cached);
+                return cached;
+            }
+        }
+
+        final int fontScale = fitAnalytically(shape, autoFit, availHeight);
+
+        if (key != null) {
+            synchronized(cache) {
+                cache.put(key, fontScale);
+            }
+        }
+
+        return fontScale;
+    }
+
+    /**
+     * Sets the font scale of a shape with normal autofit by binary search, measuring the text at each step.
+     * @param shape the shape.
+     * @param availHeight the height to fit the text into, in points.
+     * @return the font scale, in thousandths of a percent.
+     */
+    int binarySearch(final XSLFAutoShape shape, final double availHeight) {
+        final CTTextNormalAutofit autoFit = ((CTShape) shape.getXmlObject()).getTxBody().getBodyPr().getNormAutofit();
+
+        double max = 100, min = 1, scale = 100;
+        int fontScale = FULL_SCALE;
+
+        for (int attempts = 0; attempts < RESIZE_ATTEMPTS; ++attempts) {
+            fontScale = toFontScale(scale);
+            autoFit.setFontScale(fontScale);
+
+            final double textHeight = textMeasurer.getTextHeight(shape);
+            if (textHeight < availHeight) {
+                min = scale;
+                scale = 0.5 * (min + max);
+            }
+            else if (textHeight > availHeight) {
+                max = scale;
+                scale = 0.5 * (min + max);
+            }
+            else {
+                break;
+            }
+        }
+
+        return fontScale;
+    }
+
+    private int fitAnalytically(final XSLFAutoShape shape, final CTTextNormalAutofit autoFit, final double availHeight) {
+        final LabelLayout layout = LabelLayout.create(shape);
+
+        if (layout == null) {
+            return binarySearch(shape, availHeight);
+        }
+
+        // The same search, but on the estimated height. Its last step is the scale we choose, so it isn't estimated.
+        double max = 100, min = 1, scale = 100;
+
+        for (int attempts = 0; attempts < RESIZE_ATTEMPTS - 1; ++attempts) {
+            final double estimatedHeight = layout.estimateHeight((double) toFontScale(scale) / FULL_SCALE);
+
+            if (estimatedHeight < availHeight) {
+                min = scale;
+                scale = 0.5 * (min + max);
+            }
+            else if (estimatedHeight > availHeight) {
+                max = scale;
+                scale = 0.5 * (min + max);
+            }
+            else {
+                break;
+            }
+        }
+
+        // check the estimate; if the text overflows, the next smaller scales the search could have chosen may fit
+        for(int attempts = 0; attempts < CHECK_ATTEMPTS && scale >= 1; ++attempts, scale -= SCALE_STEP) {
+            final int fontScale = toFontScale(scale);
+            autoFit.setFontScale(fontScale);
+
+            if (textMeasurer.getTextHeight(shape) <= availHeight) {
+                return fontScale;
+            }
+        }
+
+        return binarySearch(shape, availHeight);
+    }
+
+    private static String getKey(final XSLFAutoShape shape, final double availHeight) {
+        final Rectangle2D anchor = shape.getAnchor();
+        final StringBuilder key = new StringBuilder()
+            .append(anchor.getWidth()).append(SEPARATOR)
+            .append(anchor.getHeight()).append(SEPARATOR)
+            .append(availHeight);
+
+        for(final XSLFTextParagraph paragraph : shape.getTextParagraphs()) {
+            key.append(SEPARATOR).append(paragraph.getDefaultFontSize());
+
+            for(final XSLFTextRun run : paragraph.getTextRuns()) {
+                key.append(SEPARATOR).append(run.getFontFamily())
+                    .append(SEPARATOR).append(run.getFontSize())
+                    .append(SEPARATOR).append(run.isBold())
+                    .append(SEPARATOR).append(run.getRawText());
+            }
+        }
+
+        return key.toString();
+    }
+
+    private static int toFontScale(final double scale) {
+        return Math.max(1, (int)(scale * 1000));
+    }
+
+    /**
+     * The layout of a label at full scale, from which we estimate its height at other scales.
+     */
+    private static class LabelLayout {
+        /** Position of the start of each word, i.e. each segment between possible line breaks. */
+        private final float[] wordStarts;
+
+        /** Position of the end of each word, leaving out any trailing whitespace which can overflow the line. */
+        private final float[] wordEnds;
+
+        /** Width available to the first line, and subsequent lines. */
+        private final double firstLineWidth, lineWidth;
+
+        private final float ascent, descent, leading;
+
+        private LabelLayout(final float[] wordStarts, final float[] wordEnds, final double firstLineWidth, final double lineWidth, final TextLayout layout) {
+            this.wordStarts = wordStarts;
+            this.wordEnds = wordEnds;
+            this.firstLineWidth = firstLineWidth;
+            this.lineWidth = lineWidth;
+            ascent = layout.getAscent();
+            descent = layout.getDescent();
+            leading = layout.getLeading();
+        }
+
+        /**
+         * Lays out a label at full scale, as POI does.
+         * @return the layout, or null if the label isn't a single line-spaced run of horizontal text.
+         */
+        private static LabelLayout create(final XSLFAutoShape shape) {
+            final List<XSLFTextParagraph> paragraphs = shape.getTextParagraphs();
+
+            if (paragraphs.size() != 1 || !shape.getWordWrap() || shape.getTextDirection() != TextShape.TextDirection.HORIZONTAL) {
+                return null;
+            }
+
+            final XSLFTextParagraph paragraph = paragraphs.get(0);
+            final List<XSLFTextRun> runs = paragraph.getTextRuns();
+
+            if (runs.size() != 1 || paragraph.getLineSpacing() != null || paragraph.getBulletStyle() != null) {
+                return null;
+            }
+
+            final XSLFTextRun run = runs.get(0);
+            final String text = run.getRawText();
+
+            if (text == null || text.isEmpty() || run.isSubscript() || run.isSuperscript() || run.getTextCap() != TextRun.TextCap.NONE) {
+                return null;
+            }
+
+            for(int ii = 0; ii < text.length(); ++ii) {
+                final char c = text.charAt(ii);
+
+                if (c == '\n' || c == '\t' || c == '\u000b') {
+                    return null;
+                }
+            }
+
+            final String fontFamily = run.getFontFamily();
+            final Double fontSize = run.getFontSize();
+
+            final TextLayout layout = new TextLayout(text, GlyphMetricsTextMeasurer.getFontAttributes(
+                fontFamily != null ? fontFamily : paragraph.getDefaultFontFamily(),
+                (fontSize != null ? fontSize : paragraph.getDefaultFontSize()).floatValue(),
+                run.isBold(), run.isItalic()
+            ), GlyphMetricsTextMeasurer.FONT_RENDER_CONTEXT);
+
+            if (!layout.isLeftToRight()) {
+                return null;
+            }
+
+            final BreakIterator breaks = BreakIterator.getLineInstance();
+            breaks.setText(text);
+
+            final float[] wordStarts = new float[text.length()];
+            final float[] wordEnds = new float[text.length()];
+            int words = 0;
+
+            for(int start = breaks.first(), end = breaks.next(); end != BreakIterator.DONE; start = end, end = breaks.next()) {
+                int visibleEnd = end;
+
+                while(visibleEnd > start && Character.isWhitespace(text.charAt(visibleEnd - 1))) {
+                    --visibleEnd;
+                }
+
+                wordStarts[words] = getPosition(layout, start);
+                wordEnds[words] = getPosition(layout, visibleEnd);
+                ++words;
+            }
+
+            return new LabelLayout(
+                Arrays.copyOf(wordStarts, words), Arrays.copyOf(wordEnds, words),
+                GlyphMetricsTextMeasurer.getWrappingWidth(shape, paragraph, true),
+                GlyphMetricsTextMeasurer.getWrappingWidth(shape, paragraph, false),
+                layout
+            );
+        }
+
+        private static float getPosition(final TextLayout layout, final int offset) {
+            return offset < layout.getCharacterCount() ? layout.getCaretInfo(TextHitInfo.leading(offset))[0] : layout.getAdvance();
+        }
+
+        /**
+         * Estimates the height of the label, by wrapping its words greedily like AWT's LineBreakMeasurer.
+         * @param ratio the font scale, as a fraction of full scale.
+         * @return the estimated height, in points.
+         */
+        private double estimateHeight(final double ratio) {
+            int lines = 0;
+
+            for(int ii = 0; ii < wordStarts.length; ) {
+                final double width = lines == 0 ? firstLineWidth : lineWidth;
+                final float lineStart = wordStarts[ii];
+                int next = ii;
+
+                while(next < wordStarts.length && (wordEnds[next] - lineStart) * ratio <= width) {
+                    ++next;
+                }
+
+                if (next == ii) {
+                    // the word doesn't fit on a line by itself, so it's broken over several
+                    lines += (int) Math.ceil((wordEnds[ii] - lineStart) * ratio / width);
+                    ++ii;
+                }
+                else {
+                    ++lines;
+                    ii = next;
+                }
+            }
+
+            return lines * (Math.ceil(ascent * ratio) + Math.ceil(descent * ratio) + leading * ratio);
+        }
+    }
+}
@@ -5,15 +5,23 @@
 package com.hp.autonomy.frontend.reports.powerpoint;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.poi.sl.usermodel.PictureData;
-import org.apache.poi.util.IOUtils;
 
 /**
  * This ImageSource implementation fetches http: and https: URLs from the internet for embedding and treats all other
@@ -22,9 +30,74 @@ import org.apache.poi.util.IOUtils;
  * To mitigate attempts to use this service as an open proxy to attack intranet sites, we require that web URLs have a
  *   path which end in '.jpeg', '.jpg', '.png' or '.gif'. You may want to override allowHttpURI to customize
  *   this if your service has better knowledge of which URIs are safe to visit.
+ *
+ * So a slow or unresponsive image host can't stall rendering, downloads have connect, read and total timeouts, a
+ *   maximum response size, and a cap on the number of concurrent downloads from each host.
+ * Connections are kept alive and reused between downloads by the JDK's HTTP keep-alive cache, whose size per host is
+ *   controlled by the {@code http.maxConnections} system property.
  */
 public class WebAndDataUriImageSource extends DataUriImageSource {
 
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+    private static final int DEFAULT_TOTAL_TIMEOUT_MILLIS = 30000;
+    private static final int DEFAULT_MAX_RESPONSE_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    /** How long to wait to connect to an image host. */
+    private final int connectTimeoutMillis;
+
+    /** How long to wait for each read from an image host. */
+    private final int readTimeoutMillis;
+
+    /** How long to wait for the whole download, including waiting for a connection to the host to be available. */
+    private final int totalTimeoutMillis;
+
+    /** The largest image we'll download. */
+    private final int maxResponseBytes;
+
+    /** The maximum number of concurrent downloads from each host. */
+    private final int maxConnectionsPerHost;
+
+    /**
+     * Permits for concurrent downloads, by scheme, host and port.
+     * Hosts are only tracked while there are downloads from them in progress, so this doesn't grow with the number of
+     *   distinct hosts we've ever seen.
+     */
+    private final ConcurrentMap<String, HostPermits> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an image source with the default limits: a 5 second connect timeout, a 10 second read timeout, a 30 second
+     *   total timeout, a maximum image size of 16MB and at most 8 concurrent downloads from each host.
+     */
+    public WebAndDataUriImageSource() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_TOTAL_TIMEOUT_MILLIS, DEFAULT_MAX_RESPONSE_BYTES, DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * Creates an image source with custom limits.
+     * @param connectTimeoutMillis how long to wait to connect to an image host, in milliseconds.
+     * @param readTimeoutMillis how long to wait for each read from an image host, in milliseconds.
+     * @param totalTimeoutMillis how long to wait for each image in total, in milliseconds.
+     * @param maxResponseBytes the largest image to download, in bytes.
+     * @param maxConnectionsPerHost the maximum number of concurrent downloads from each host.
+     */
+    public WebAndDataUriImageSource(final int connectTimeoutMillis, final int readTimeoutMillis, final int totalTimeoutMillis, final int maxResponseBytes, final int maxConnectionsPerHost) {
+        if (connectTimeoutMillis < 1 || readTimeoutMillis < 1 || totalTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Timeouts should be positive");
+        }
+
+        if (maxResponseBytes < 1 || maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("Response size and connection limits should be positive");
+        }
+
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.totalTimeoutMillis = totalTimeoutMillis;
+        this.maxResponseBytes = maxResponseBytes;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
     /**
      * Accepts HTTP/HTTPs URLs or base64-encoded image data and converts them to image data.
      * @param imageId the image identifier.
@@ -34,26 +107,15 @@ public class WebAndDataUriImageSource extends DataUriImageSource {
     @Override
     public ImageData getImageData(final String imageId) throws IllegalArgumentException {
         if(imageId.startsWith("https:") || imageId.startsWith("http:")) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalArgumentException("Selected image URI was not fetched since the thread was interrupted: " + imageId);
+            }
+
             try {
                 final URI uri = new URI(imageId);
 
                 if(allowHttpURI(uri)) {
-                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-                    final HttpURLConnection conn = (HttpURLConnection) new URL(imageId).openConnection();
-                    conn.connect();
-                    final String contentType = conn.getContentType();
-
-                    for(final PictureData.PictureType pictureType : PictureData.PictureType.values()) {
-                        if(pictureType.contentType.equalsIgnoreCase(contentType)) {
-                            try(final InputStream input = conn.getInputStream()) {
-                                IOUtils.copy(input, baos);
-                                return new ImageData(pictureType, baos.toByteArray());
-                            }
-                        }
-                    }
-
-                    throw new IllegalArgumentException("Selected image URI uses an unsupported content type: " + imageId);
+                    return fetch(uri);
                 }
             }
             catch(URISyntaxException | IOException e) {
@@ -76,4 +138,203 @@ public class WebAndDataUriImageSource extends DataUriImageSource {
         final String path = uri.getPath().toLowerCase(Locale.US);
         return path.endsWith(".jpg") || path.endsWith(".jpeg") || path.endsWith(".png") || path.endsWith(".gif");
     }
+
+    /**
+     * Downloads an image, waiting for one of the host's download permits first.
+     * @param uri the image URI.
+     * @return the image data.
+     * @throws IOException if there's an IO error, or if any of the limits are exceeded.
+     */
+    private ImageData fetch(final URI uri) throws IOException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(totalTimeoutMillis);
+
+        final String host = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+
+        // Users are only counted inside compute calls, which ConcurrentHashMap runs atomically for each host.
+        final HostPermits permits = hostPermits.compute(host, (key, existing) -> {
+            final HostPermits entry = existing == null ? new HostPermits(maxConnectionsPerHost) : existing;
+            ++entry.users;
+            return entry;
+        });
+
+        try {
+            try {
+                if (!permits.semaphore.tryAcquire(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+                    throw new SocketTimeoutException("Timed out waiting for one of the " + maxConnectionsPerHost + " connections to " + uri.getHost());
+                }
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Image download was interrupted");
+            }
+
+            try {
+                return download(uri, deadline);
+            }
+            finally {
+                permits.semaphore.release();
+            }
+        }
+        finally {
+            hostPermits.computeIfPresent(host, (key, entry) -> --entry.users == 0 ? null : entry);
+        }
+    }
+
+    /**
+     * The number of hosts whose download permits are currently being tracked.
+     * @return the number of hosts with downloads in progress or waiting.
+     */
+    int getTrackedHostCount() {
+        return hostPermits.size();
+    }
+
+    /**
+     * Downloads an image, aborting the download if it's not complete by the deadline.
+     * @param uri the image URI.
+     * @param deadline when the download should be complete by, compared to {@link System#nanoTime()}.
+     * @return the image data.
+     * @throws IOException if there's an IO error, or if any of the limits are exceeded.
+     */
+    private ImageData download(final URI uri, final long deadline) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) uri.toURL().openConnection();
+        conn.setConnectTimeout((int) Math.min(connectTimeoutMillis, remainingMillis(deadline)));
+        conn.setReadTimeout(readTimeoutMillis);
+
+        // The read timeout only limits each read, so a slow trickle of data could take forever without this.
+        // The flag is set before disconnecting, since the download can fail before the abort task has finished.
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final ScheduledFuture<?> abort = DownloadTimer.INSTANCE.schedule(() -> {
+            timedOut.set(true);
+            conn.disconnect();
+        }, remainingMillis(deadline), TimeUnit.MILLISECONDS);
+
+        // Only connections whose response was read completely can be reused.
+        boolean reusable = false;
+
+        try {
+            final PictureData.PictureType pictureType = getPictureType(conn.getContentType());
+
+            if (pictureType == null) {
+                throw new IllegalArgumentException("Selected image URI uses an unsupported content type: " + uri);
+            }
+
+            final long contentLength = conn.getContentLengthLong();
+
+            if (contentLength > maxResponseBytes) {
+                throw new IOException("Image is larger than " + maxResponseBytes + " bytes");
+            }
+
+            try(final InputStream input = conn.getInputStream()) {
+                final byte[] data = read(input, contentLength);
+                reusable = true;
+                return new ImageData(pictureType, data);
+            }
+        }
+        catch(IOException e) {
+            if (timedOut.get()) {
+                throw new SocketTimeoutException("Image download took longer than " + totalTimeoutMillis + "ms");
+            }
+
+            throw e;
+        }
+        finally {
+            abort.cancel(false);
+
+            if (!reusable) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Reads the image data, into a buffer of the right size if we know the content length; stopping early if the
+     *   current thread is interrupted (e.g. if an asynchronous render has been cancelled) or the image is too large.
+     * @param input the stream to read from.
+     * @param contentLength the content length, or -1 if unknown.
+     * @return the image data.
+     * @throws IOException if there's an IO error, or InterruptedIOException if the thread is interrupted.
+     */
+    private byte[] read(final InputStream input, final long contentLength) throws IOException {
+        if (contentLength >= 0) {
+            final byte[] data = new byte[(int) contentLength];
+
+            for(int offset = 0, read; offset < data.length; offset += read) {
+                read = input.read(data, offset, data.length - offset);
+                checkInterrupted();
+
+                if (read < 0) {
+                    throw new EOFException("Image download ended after " + offset + " of " + contentLength + " bytes");
+                }
+            }
+
+            return data;
+        }
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+        final byte[] buffer = new byte[8192];
+
+        for(int read; (read = input.read(buffer)) >= 0; ) {
+            checkInterrupted();
+
+            if (output.size() + read > maxResponseBytes) {
+                throw new IOException("Image is larger than " + maxResponseBytes + " bytes");
+            }
+
+            output.write(buffer, 0, read);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Utility function to stop downloading if the current thread is interrupted; the interrupt status is left set.
+     * @throws InterruptedIOException if the current thread is interrupted.
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Image download was interrupted");
+        }
+    }
+
+    /**
+     * Utility function to get the time remaining until a deadline.
+     * @param deadline the deadline, compared to {@link System#nanoTime()}.
+     * @return the remaining time in milliseconds, at least 1 since a zero timeout would mean no timeout.
+     */
+    private static long remainingMillis(final long deadline) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Holder for the timer which aborts slow downloads, so its thread is only created if it's used.
+     */
+    private static class DownloadTimer {
+        private static final ScheduledThreadPoolExecutor INSTANCE = createTimer();
+
+        private static ScheduledThreadPoolExecutor createTimer() {
+            final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "powerpoint-image-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            // most downloads finish in time, so don't keep their cancelled timeouts around
+            timer.setRemoveOnCancelPolicy(true);
+            return timer;
+        }
+    }
+
+    /**
+     * A host's download permits, and how many downloads are using or waiting for them.
+     */
+    private static class HostPermits {
+        private final Semaphore semaphore;
+
+        /** Only read or written inside {@link ConcurrentMap#compute} calls for the host. */
+        private int users;
+
+        private HostPermits(final int maxConnections) {
+            semaphore = new Semaphore(maxConnections);
+        }
+    }
 }
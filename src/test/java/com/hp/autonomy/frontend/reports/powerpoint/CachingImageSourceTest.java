@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CachingImageSourceTest {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private final ImageSource countingSource = imageId -> {
+        fetches.incrementAndGet();
+        return new ImageData(PictureData.PictureType.PNG, new byte[1000]);
+    };
+
+    @Test
+    public void testRepeatedImagesAreCached() {
+        final CachingImageSource imageSource = new CachingImageSource(countingSource, 1024 * 1024);
+        final String dataUri = "data:image/png;base64," + StringUtils.repeat("A", 200);
+
+        final ImageData first = imageSource.getImageData(dataUri);
+        Assert.assertSame(first, imageSource.getImageData(dataUri));
+        imageSource.getImageData("short");
+        imageSource.getImageData("short");
+
+        Assert.assertEquals(2, fetches.get());
+
+        final CachingImageSource.Statistics stats = imageSource.getStatistics();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(2, stats.getMissCount());
+        Assert.assertEquals(2, stats.getSize());
+        Assert.assertEquals(0.5, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        // room for two 1000-byte images, but not three
+        final CachingImageSource imageSource = new CachingImageSource(countingSource, 2500);
+
+        imageSource.getImageData("a");
+        imageSource.getImageData("b");
+        imageSource.getImageData("a");
+        // should evict 'b', since 'a' was used more recently
+        imageSource.getImageData("c");
+        imageSource.getImageData("a");
+        Assert.assertEquals(3, fetches.get());
+
+        imageSource.getImageData("b");
+        Assert.assertEquals(4, fetches.get());
+
+        final CachingImageSource.Statistics stats = imageSource.getStatistics();
+        Assert.assertEquals(2, stats.getEvictionCount());
+        Assert.assertEquals(2, stats.getSize());
+        Assert.assertTrue(stats.getEstimatedBytes() <= 2500);
+    }
+
+    @Test
+    public void testExpiry() {
+        final AtomicLong now = new AtomicLong();
+        final CachingImageSource imageSource = new CachingImageSource(countingSource, 1024 * 1024, 1000, now::get);
+
+        imageSource.getImageData("a");
+        now.set(999);
+        imageSource.getImageData("a");
+        Assert.assertEquals(1, fetches.get());
+
+        now.set(1000);
+        imageSource.getImageData("a");
+        Assert.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        final CachingImageSource imageSource = new CachingImageSource(imageId -> {
+            fetches.incrementAndGet();
+            throw new IllegalArgumentException("Unable to fetch " + imageId);
+        }, 1024 * 1024);
+
+        for(int ii = 0; ii < 2; ++ii) {
+            try {
+                imageSource.getImageData("a");
+                Assert.fail("Should have thrown an exception");
+            }
+            catch(IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        Assert.assertEquals(2, fetches.get());
+        Assert.assertEquals(0, imageSource.getStatistics().getSize());
+    }
+
+    @Test
+    public void testBatchOnlyFetchesMisses() throws Exception {
+        final List<Collection<String>> batches = new ArrayList<>();
+
+        final CachingImageSource imageSource = new CachingImageSource(new ImageSource() {
+            @Override
+            public ImageData getImageData(final String imageId) {
+                throw new AssertionError("Should only fetch images in batches");
+            }
+
+            @Override
+            public Map<String, ImageData> getImageData(final Collection<String> imageIds) {
+                batches.add(imageIds);
+                return ImageBatches.fetchAll(imageIds, countingSource::getImageData);
+            }
+
+            @Override
+            public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final Executor executor) {
+                return CompletableFuture.completedFuture(getImageData(imageIds));
+            }
+        }, 1024 * 1024);
+
+        Assert.assertEquals(2, imageSource.getImageData(Arrays.asList("a", "b", "a")).size());
+        Assert.assertEquals(3, imageSource.getImageDataAsync(Arrays.asList("a", "b", "c"), Runnable::run).get().size());
+
+        Assert.assertEquals(Arrays.asList(Arrays.asList("a", "b"), Collections.singletonList("c")), toLists(batches));
+        Assert.assertEquals(3, fetches.get());
+
+        final CachingImageSource.Statistics stats = imageSource.getStatistics();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(3, stats.getMissCount());
+    }
+
+    @Test
+    public void testDisplaySizeIsPassedOnAndCachedSeparately() throws Exception {
+        final List<String> requests = new ArrayList<>();
+
+        final CachingImageSource imageSource = new CachingImageSource(new ImageSource() {
+            @Override
+            public ImageData getImageData(final String imageId) {
+                requests.add(imageId);
+                return countingSource.getImageData(imageId);
+            }
+
+            @Override
+            public ImageData getImageData(final String imageId, final double width, final double height) {
+                requests.add(imageId + "@" + width + "x" + height);
+                return countingSource.getImageData(imageId);
+            }
+        }, 1024 * 1024);
+
+        imageSource.getImageData("a");
+        imageSource.getImageData("a", 10, 20);
+        imageSource.getImageData(Arrays.asList("a", "b"), 10, 20);
+        imageSource.getImageDataAsync(Arrays.asList("a", "b"), 30, 40, Runnable::run).get();
+        imageSource.getImageData(Arrays.asList("a", "b"));
+
+        Assert.assertEquals(Arrays.asList("a", "a@10.0x20.0", "b@10.0x20.0", "a@30.0x40.0", "b@30.0x40.0", "b"), requests);
+
+        final CachingImageSource.Statistics stats = imageSource.getStatistics();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(6, stats.getSize());
+    }
+
+    private static List<List<String>> toLists(final List<Collection<String>> collections) {
+        final List<List<String>> lists = new ArrayList<>();
+
+        for(final Collection<String> collection : collections) {
+            lists.add(new ArrayList<>(collection));
+        }
+
+        return lists;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoalescingImageSourceTest {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private final AtomicBoolean failing = new AtomicBoolean(true);
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final ImageSource flakySource = imageId -> {
+        fetches.incrementAndGet();
+
+        if (failing.get()) {
+            throw new IllegalArgumentException("Unable to fetch " + imageId);
+        }
+
+        return new ImageData(PictureData.PictureType.PNG, new byte[10]);
+    };
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CoalescingImageSource imageSource = new CoalescingImageSource(imageId -> {
+            fetches.incrementAndGet();
+
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return new ImageData(PictureData.PictureType.PNG, new byte[10]);
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final List<Future<ImageData>> futures = new ArrayList<>();
+
+            for(int ii = 0; ii < 4; ++ii) {
+                futures.add(executor.submit(() -> imageSource.getImageData("http://example.com/image.png")));
+            }
+
+            // wait for everyone to join the first fetch
+            for(int ii = 0; ii < 3000 && imageSource.getStatistics().getCoalescedCount() < 3; ++ii) {
+                Thread.sleep(10);
+            }
+
+            release.countDown();
+
+            final ImageData first = futures.get(0).get(30, TimeUnit.SECONDS);
+
+            for(final Future<ImageData> future : futures) {
+                Assert.assertSame(first, future.get(30, TimeUnit.SECONDS));
+            }
+
+            Assert.assertEquals(1, fetches.get());
+            Assert.assertEquals(3, imageSource.getStatistics().getCoalescedCount());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureBackoff() {
+        final CoalescingImageSource imageSource = new CoalescingImageSource(flakySource, 100, 250, 100, 1000, now::get);
+
+        assertFails(imageSource, "a");
+        assertFails(imageSource, "a");
+        Assert.assertEquals(1, fetches.get());
+
+        // retried after the backoff, and fails again; so the backoff doubles
+        now.set(100);
+        assertFails(imageSource, "a");
+        Assert.assertEquals(2, fetches.get());
+
+        now.set(299);
+        assertFails(imageSource, "a");
+        Assert.assertEquals(2, fetches.get());
+
+        failing.set(false);
+        now.set(300);
+        imageSource.getImageData("a");
+        imageSource.getImageData("a");
+        Assert.assertEquals(4, fetches.get());
+
+        final CoalescingImageSource.Statistics stats = imageSource.getStatistics();
+        Assert.assertEquals(2, stats.getRecentFailureRejectionCount());
+        Assert.assertEquals(0, stats.getFailedImages());
+    }
+
+    @Test
+    public void testHostCircuitBreaker() {
+        final CoalescingImageSource imageSource = new CoalescingImageSource(flakySource, 0, 0, 2, 1000, now::get);
+
+        assertFails(imageSource, "http://bad.example.com/1.png");
+        assertFails(imageSource, "http://bad.example.com/2.png");
+        Assert.assertEquals(2, fetches.get());
+
+        // the circuit is open, so other images from the host fail immediately; but other hosts are fine
+        assertFails(imageSource, "http://bad.example.com/3.png");
+        Assert.assertEquals(2, fetches.get());
+        assertFails(imageSource, "http://other.example.com/1.png");
+        Assert.assertEquals(3, fetches.get());
+        Assert.assertEquals(1, imageSource.getStatistics().getOpenCircuits());
+
+        // after the open period, a trial request is allowed and closes the circuit if it succeeds
+        failing.set(false);
+        now.set(1000);
+        imageSource.getImageData("http://bad.example.com/3.png");
+        imageSource.getImageData("http://bad.example.com/4.png");
+        Assert.assertEquals(5, fetches.get());
+
+        final CoalescingImageSource.Statistics stats = imageSource.getStatistics();
+        Assert.assertEquals(1, stats.getCircuitRejectionCount());
+        Assert.assertEquals(0, stats.getOpenCircuits());
+    }
+
+    @Test
+    public void testHealthyHostsAreForgotten() {
+        final CoalescingImageSource imageSource = new CoalescingImageSource(flakySource, 0, 0, 2, 1000, now::get);
+
+        failing.set(false);
+
+        for(int ii = 0; ii < 3; ++ii) {
+            imageSource.getImageData("http://host" + ii + ".example.com/image.png");
+        }
+
+        Assert.assertEquals(0, imageSource.getTrackedHostCount());
+
+        // a failing host is remembered until it succeeds again
+        failing.set(true);
+        assertFails(imageSource, "http://host0.example.com/1.png");
+        Assert.assertEquals(1, imageSource.getTrackedHostCount());
+
+        failing.set(false);
+        imageSource.getImageData("http://host0.example.com/2.png");
+        Assert.assertEquals(0, imageSource.getTrackedHostCount());
+    }
+
+    private static void assertFails(final ImageSource imageSource, final String imageId) {
+        try {
+            imageSource.getImageData(imageId);
+            Assert.fail("Should have thrown an exception");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ReportData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark measuring write throughput at each compression level, with and without storing already-compressed parts.
+ * Only the write is measured; the output size for each setting is printed at the end of each trial.
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark=CompressionPolicyBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompressionPolicyBenchmark {
+
+    @Param({"0", "1", "6", "9"})
+    private int level;
+
+    @Param({"false", "true"})
+    private boolean storeCompressedParts;
+
+    private PowerPointService service;
+
+    private ReportData report;
+
+    private XMLSlideShow pptx;
+
+    private long outputSize;
+
+    @Setup
+    public void setup() throws TemplateLoadException, IOException {
+        service = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, ImageSource.DEFAULT, new CompressionPolicy(level, storeCompressedParts));
+        report = new ObjectMapper().readValue(CompressionPolicyBenchmark.class.getResource("multiwidgetreport.json"), ReportData.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void render() throws TemplateLoadException {
+        pptx = service.report(report, true);
+    }
+
+    @TearDown
+    public void printSize() {
+        System.out.println();
+        System.out.println("level=" + level + " storeCompressedParts=" + storeCompressedParts + " output size=" + outputSize + " bytes");
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(1024 * 1024);
+        service.write(pptx, output);
+        outputSize = output.size();
+        return outputSize;
+    }
+}
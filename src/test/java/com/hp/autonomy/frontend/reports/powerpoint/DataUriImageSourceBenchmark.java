@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark comparing decoding a data URI image in place, against the previous implementation which copied the
+ *   base64 data out of the URI before decoding it with commons-codec.
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark="DataUriImageSourceBenchmark -prof gc"} to
+ *   compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DataUriImageSourceBenchmark {
+
+    private static final String DATA_PREFIX = "data:";
+
+    /** Size of the decoded image, in bytes. */
+    @Param({"10000", "2000000"})
+    public int size;
+
+    private final ImageSource imageSource = new DataUriImageSource();
+
+    private String dataUri;
+
+    @Setup
+    public void setup() {
+        final byte[] image = new byte[size];
+        new Random(42).nextBytes(image);
+
+        dataUri = "data:image/png;base64," + Base64.encodeBase64String(image);
+    }
+
+    @Benchmark
+    public ImageData inPlace() {
+        return imageSource.getImageData(dataUri);
+    }
+
+    @Benchmark
+    public ImageData copied() {
+        return copiedImageData(dataUri);
+    }
+
+    /**
+     * The previous DataUriImageSource implementation.
+     */
+    private static ImageData copiedImageData(final String imageId) {
+        final String contentType, data;
+
+        if(imageId.startsWith(DATA_PREFIX)) {
+            contentType = imageId.substring(DATA_PREFIX.length(), imageId.indexOf(';'));
+            data = imageId.substring(imageId.indexOf(","));
+        }
+        else {
+            contentType = "image/jpeg";
+            data = imageId;
+        }
+
+        for(final PictureData.PictureType pictureType : PictureData.PictureType.values()) {
+            if(pictureType.contentType.equalsIgnoreCase(contentType)) {
+                return new ImageData(pictureType, Base64.decodeBase64(data));
+            }
+        }
+
+        throw new IllegalArgumentException("Unable to parse data URI: " + imageId);
+    }
+}
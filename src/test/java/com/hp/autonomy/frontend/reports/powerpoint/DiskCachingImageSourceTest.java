@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DiskCachingImageSourceTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private final ImageSource countingSource = imageId -> {
+        fetches.incrementAndGet();
+        return new ImageData(PictureData.PictureType.JPEG, imageId.getBytes());
+    };
+
+    @Test
+    public void testCacheSurvivesRestart() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+
+        final DiskCachingImageSource first = new DiskCachingImageSource(countingSource, directory, 1024);
+        first.getImageData("http://example.com/a.jpg");
+        first.getImageData("http://example.com/a.jpg");
+        Assert.assertEquals(1, fetches.get());
+        Assert.assertEquals(1, first.getStatistics().getHitCount());
+
+        final DiskCachingImageSource second = new DiskCachingImageSource(countingSource, directory, 1024);
+        Assert.assertEquals(1, second.getStatistics().getSize());
+
+        final ImageData imageData = second.getImageData("http://example.com/a.jpg");
+        Assert.assertEquals(1, fetches.get());
+        Assert.assertEquals(PictureData.PictureType.JPEG, imageData.getType());
+        Assert.assertEquals("http://example.com/a.jpg", new String(imageData.getData()));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+
+        // each file is 9 bytes of header plus 10 bytes of data, so only two fit
+        final DiskCachingImageSource imageSource = new DiskCachingImageSource(countingSource, directory, 40);
+        imageSource.getImageData("image-0001");
+        imageSource.getImageData("image-0002");
+        imageSource.getImageData("image-0001");
+        imageSource.getImageData("image-0003");
+
+        final DiskCachingImageSource.Statistics stats = imageSource.getStatistics();
+        Assert.assertEquals(1, stats.getEvictionCount());
+        Assert.assertEquals(2, stats.getSize());
+        Assert.assertEquals(38, stats.getCachedBytes());
+        Assert.assertEquals(2, countFiles(directory));
+
+        imageSource.getImageData("image-0001");
+        Assert.assertEquals(3, fetches.get());
+        imageSource.getImageData("image-0002");
+        Assert.assertEquals(4, fetches.get());
+    }
+
+    @Test
+    public void testRestartEvictsOldestFiles() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+
+        final DiskCachingImageSource first = new DiskCachingImageSource(countingSource, directory, 1024);
+        first.getImageData("image-0001");
+        first.getImageData("image-0002");
+
+        // make image-0002 the older file, then restart with room for only one image
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for(final Path file : stream) {
+                final boolean isSecond = "image-0002".equals(new String(Files.readAllBytes(file), "US-ASCII").substring(9));
+                Files.setLastModifiedTime(file, FileTime.fromMillis(isSecond ? 1000000 : 2000000));
+            }
+        }
+
+        final DiskCachingImageSource second = new DiskCachingImageSource(countingSource, directory, 20);
+        Assert.assertEquals(1, second.getStatistics().getSize());
+
+        second.getImageData("image-0001");
+        Assert.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testCorruptFileIsRefetched() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+
+        final DiskCachingImageSource imageSource = new DiskCachingImageSource(countingSource, directory, 1024);
+        imageSource.getImageData("image-0001");
+
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for(final Path file : stream) {
+                Files.write(file, new byte[]{ 1, 2, 3 });
+            }
+        }
+
+        final ImageData imageData = imageSource.getImageData("image-0001");
+        Assert.assertEquals("image-0001", new String(imageData.getData()));
+        Assert.assertEquals(2, fetches.get());
+
+        imageSource.getImageData("image-0001");
+        Assert.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testInterruptedReadKeepsFile() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+
+        final DiskCachingImageSource imageSource = new DiskCachingImageSource(countingSource, directory, 1024);
+        imageSource.getImageData("image-0001");
+
+        Thread.currentThread().interrupt();
+
+        try {
+            imageSource.getImageData("image-0001");
+            Assert.fail("Should have thrown an exception");
+        }
+        catch(IllegalArgumentException e) {
+            Assert.assertTrue(Thread.currentThread().isInterrupted());
+        }
+        finally {
+            Thread.interrupted();
+        }
+
+        Assert.assertEquals(1, fetches.get());
+        Assert.assertEquals(1, imageSource.getStatistics().getSize());
+
+        final ImageData imageData = imageSource.getImageData("image-0001");
+        Assert.assertEquals("image-0001", new String(imageData.getData()));
+        Assert.assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testInterruptedWriteReturnsImage() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+
+        final DiskCachingImageSource imageSource = new DiskCachingImageSource(countingSource, directory, 1024);
+
+        Thread.currentThread().interrupt();
+
+        try {
+            final ImageData imageData = imageSource.getImageData("image-0001");
+            Assert.assertEquals("image-0001", new String(imageData.getData()));
+            Assert.assertTrue(Thread.currentThread().isInterrupted());
+        }
+        finally {
+            Thread.interrupted();
+        }
+
+        Assert.assertEquals(0, imageSource.getStatistics().getSize());
+        Assert.assertEquals(0, countFiles(directory));
+    }
+
+    private static int countFiles(final Path directory) throws IOException {
+        int count = 0;
+
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for(final Path ignored : stream) {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ListData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.TableData;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFShape;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileTemplateSourceTest {
+
+    private static final TableData TABLE = new TableData(2, 2, new String[]{ "Colour", "Count", "Red", "3" });
+
+    /** Name of the group shape which draws the logo on the blank layout of validTemplateWithLogo.pptx. */
+    private static final String LOGO_SHAPE = "Group 4";
+
+    private File dir;
+
+    private File file;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("templates").toFile();
+        file = new File(dir, "template.pptx");
+        FileUtils.copyInputStreamToFile(TemplateSource.DEFAULT.getInputStream(), file);
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testWatcherReloadsChangedFile() throws Exception {
+        try(final FileTemplateSource source = new FileTemplateSource(file.toPath())) {
+            final PowerPointService service = new PowerPointServiceImpl(source, TemplateSettingsSource.DEFAULT);
+            Assert.assertFalse(hasLogo(service.table(TABLE, "Before")));
+
+            replaceTemplate("validTemplateWithLogo.pptx");
+
+            // the watcher should pick up the change by itself
+            final long deadline = System.currentTimeMillis() + 30000;
+
+            while(source.getVersion() == 0) {
+                Assert.assertTrue("Template change was not picked up", System.currentTimeMillis() < deadline);
+                Thread.sleep(50);
+            }
+
+            Assert.assertTrue(hasLogo(service.table(TABLE, "After")));
+        }
+    }
+
+    @Test
+    public void testInvalidTemplateKeepsCurrentVersion() throws TemplateLoadException, IOException {
+        try(final FileTemplateSource source = new FileTemplateSource(file.toPath())) {
+            final PowerPointService service = new PowerPointServiceImpl(source, TemplateSettingsSource.DEFAULT);
+
+            replaceTemplate("invalidTemplate.pptx");
+
+            try {
+                source.reload();
+                Assert.fail("Invalid template should not be loaded");
+            }
+            catch(TemplateLoadException e) {
+                Assert.assertEquals(0, source.getVersion());
+            }
+
+            Assert.assertFalse(hasLogo(service.table(TABLE, "Invalid")));
+
+            replaceTemplate("validTemplateWithLogo.pptx");
+            source.reload();
+            // the file watcher may also have picked up the change in the meantime
+            Assert.assertTrue(source.getVersion() > 0);
+
+            Assert.assertTrue(hasLogo(service.table(TABLE, "Valid")));
+        }
+    }
+
+    @Test
+    public void testRenderInProgressKeepsItsTemplate() throws Exception {
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final CountDownLatch reloaded = new CountDownLatch(1);
+
+        // the list's thumbnail is fetched after the render has loaded its template, and waits till it's been replaced
+        final ImageSource imageSource = imageId -> {
+            fetching.countDown();
+
+            try {
+                if (!reloaded.await(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Template was not reloaded");
+                }
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException(e);
+            }
+
+            return ImageSource.DEFAULT.getImageData(imageId);
+        };
+
+        final ListData list = new ListData(new ListData.Document[]{
+                new ListData.Document("title", "5 months ago", "reference", "summary", PowerPointServiceImplTest.samplePNGImage)
+        });
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try(final FileTemplateSource source = new FileTemplateSource(file.toPath())) {
+            final PowerPointService service = new PowerPointServiceImpl(source, TemplateSettingsSource.DEFAULT, imageSource);
+            final Future<XMLSlideShow> inProgress = executor.submit(() -> service.list(list, null, null));
+
+            Assert.assertTrue(fetching.await(30, TimeUnit.SECONDS));
+            replaceTemplate("validTemplateWithLogo.pptx");
+            source.reload();
+            reloaded.countDown();
+
+            Assert.assertFalse(hasLogo(inProgress.get()));
+            Assert.assertTrue(hasLogo(service.list(list, null, null)));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void replaceTemplate(final String resource) throws IOException {
+        FileUtils.copyInputStreamToFile(getClass().getResourceAsStream(resource), file);
+    }
+
+    /**
+     * Checks whether a presentation was rendered with validTemplateWithLogo.pptx, by writing it and checking its first
+     *   slide's layout for the logo.
+     */
+    private static boolean hasLogo(final XMLSlideShow pptx) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pptx.write(output);
+        final XMLSlideShow written = new XMLSlideShow(new ByteArrayInputStream(output.toByteArray()));
+
+        for(final XSLFShape shape : written.getSlides().get(0).getSlideLayout().getShapes()) {
+            if (LOGO_SHAPE.equals(shape.getShapeName())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
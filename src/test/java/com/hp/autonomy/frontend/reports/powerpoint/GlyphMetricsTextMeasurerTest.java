@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ReportData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.TopicMapData;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.sl.usermodel.AutoNumberingScheme;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFShape;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
+import org.apache.poi.xslf.usermodel.XSLFTextRun;
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GlyphMetricsTextMeasurerTest {
+
+    private static final String[] SAMPLE_TEXT = {
+        "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.",
+        "Supercalifragilisticexpialidocious-antidisestablishmentarianism",
+        "R\u00e9sum\u00e9 of caf\u00e9 na\u00efvet\u00e9 \u2014 \u201cquoted\u201d text\u2026 with \u2018dashes\u2019 \u2013 and spaces",
+        "  leading and trailing whitespace   ",
+        "http://www.example.com/a/very/long/url/which/has/no/spaces/to/break/at/whatsoever.html",
+        "",
+    };
+
+    @Test
+    public void testMatchesPOIOnReports() throws TemplateLoadException, IOException {
+        final List<XSLFTextShape> shapes = new ArrayList<>();
+        final PowerPointServiceImpl service = new PowerPointServiceImpl();
+
+        for(final String fixture : new String[]{ "multiwidgetreport.json", "report.json", "reportMultiTopicmap.json" }) {
+            final ReportData report = new ObjectMapper().readValue(GlyphMetricsTextMeasurerTest.class.getResource(fixture), ReportData.class);
+            addTextShapes(shapes, service.report(report, false));
+        }
+
+        addTextShapes(shapes, service.topicmap(new ObjectMapper().readValue(GlyphMetricsTextMeasurerTest.class.getResource("topicmap.json"), TopicMapData.class)));
+
+        final GlyphMetricsTextMeasurer measurer = new GlyphMetricsTextMeasurer();
+        assertMatchesPOI(measurer, shapes);
+
+        // nearly all the text in the reports is simple enough to measure from glyph metrics
+        final GlyphMetricsTextMeasurer.Statistics stats = measurer.getStatistics();
+        Assert.assertTrue(stats.getMeasuredCount() >= 9 * stats.getFallbackCount());
+    }
+
+    @Test
+    public void testMatchesPOIOnParagraphs() {
+        final XMLSlideShow ppt = new XMLSlideShow();
+        final XSLFSlide slide = ppt.createSlide();
+        final List<XSLFTextShape> shapes = new ArrayList<>();
+
+        for(final double width : new double[]{ 20, 75, 150, 400 }) {
+            for(final String text : SAMPLE_TEXT) {
+                for(int style = 0; style < 4; ++style) {
+                    final XSLFTextBox textBox = slide.createTextBox();
+                    textBox.setAnchor(new Rectangle2D.Double(0, 0, width, 300));
+                    textBox.clearText();
+
+                    final XSLFTextParagraph paragraph = textBox.addNewTextParagraph();
+                    final XSLFTextRun run = paragraph.addNewTextRun();
+                    run.setText(text);
+                    run.setBold((style & 1) != 0);
+                    run.setItalic((style & 2) != 0);
+                    run.setFontSize(8. + 4 * style);
+
+                    // a second paragraph with mixed fonts, margins and spacing
+                    final XSLFTextParagraph second = textBox.addNewTextParagraph();
+                    second.setLeftMargin(5. * style);
+                    second.setIndent(style == 3 ? -10. : 2. * style);
+                    second.setSpaceBefore(style == 2 ? -6. : 20.);
+                    second.setLineSpacing(style == 1 ? 150. : null);
+                    second.addNewTextRun().setText(text);
+                    second.addLineBreak();
+
+                    final XSLFTextRun mixed = second.addNewTextRun();
+                    mixed.setText("Mixed fonts " + text);
+                    mixed.setFontFamily(style == 0 ? "Serif" : "Monospaced");
+                    mixed.setFontSize(20.);
+
+                    shapes.add(textBox);
+                }
+            }
+        }
+
+        final GlyphMetricsTextMeasurer measurer = new GlyphMetricsTextMeasurer();
+        assertMatchesPOI(measurer, shapes);
+        Assert.assertEquals(0, measurer.getStatistics().getFallbackCount());
+    }
+
+    @Test
+    public void testFallback() {
+        final XMLSlideShow ppt = new XMLSlideShow();
+        final XSLFSlide slide = ppt.createSlide();
+
+        final XSLFTextBox cjk = slide.createTextBox();
+        cjk.setAnchor(new Rectangle2D.Double(0, 0, 100, 300));
+        cjk.setText("\u6f22\u5b57\u304b\u306a\u4ea4\u3058\u308a\u6587");
+
+        final XSLFTextBox numbered = slide.createTextBox();
+        numbered.setAnchor(new Rectangle2D.Double(0, 0, 100, 300));
+        numbered.setText("First item");
+        numbered.getTextParagraphs().get(0).setBullet(true);
+        numbered.getTextParagraphs().get(0).setBulletAutoNumber(AutoNumberingScheme.arabicPeriod, 1);
+
+        final XSLFTextBox unwrapped = slide.createTextBox();
+        unwrapped.setAnchor(new Rectangle2D.Double(0, 0, 100, 300));
+        unwrapped.setText("A line of text which doesn't wrap");
+        unwrapped.setWordWrap(false);
+
+        final List<XSLFTextShape> shapes = new ArrayList<>();
+        shapes.add(cjk);
+        shapes.add(numbered);
+        shapes.add(unwrapped);
+
+        final GlyphMetricsTextMeasurer measurer = new GlyphMetricsTextMeasurer();
+        assertMatchesPOI(measurer, shapes);
+
+        final GlyphMetricsTextMeasurer.Statistics stats = measurer.getStatistics();
+        Assert.assertEquals(0, stats.getMeasuredCount());
+        Assert.assertEquals(3, stats.getFallbackCount());
+    }
+
+    private static void assertMatchesPOI(final TextMeasurer measurer, final List<XSLFTextShape> shapes) {
+        Assert.assertFalse(shapes.isEmpty());
+
+        for(final XSLFTextShape shape : shapes) {
+            Assert.assertEquals(shape.getText(), shape.getTextHeight(), measurer.getTextHeight(shape), 1e-3);
+        }
+    }
+
+    private static void addTextShapes(final List<XSLFTextShape> shapes, final XMLSlideShow pptx) {
+        for(final XSLFSlide slide : pptx.getSlides()) {
+            for(final XSLFShape shape : slide.getShapes()) {
+                if (shape instanceof XSLFTextShape) {
+                    shapes.add((XSLFTextShape) shape);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ListData;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the latency of rendering a paginated list of thousands of documents, with random summaries of up to a
+ *   few hundred words and a mix of thumbnails.
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark=ListPaginationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ListPaginationBenchmark {
+
+    @Param({"1000", "10000"})
+    private int documents;
+
+    private ListData listData;
+
+    private PowerPointService service;
+
+    @Setup
+    public void setup() {
+        listData = PowerPointServiceImplTest.createRandomListData(new Random(17), documents);
+        listData.setDrawIcons(true);
+        service = new PowerPointServiceImpl();
+    }
+
+    @Benchmark
+    public XMLSlideShow list() throws TemplateLoadException {
+        return service.list(listData, "Showing 1 to " + documents + " of " + documents + " results", "Sort by Relevance");
+    }
+}
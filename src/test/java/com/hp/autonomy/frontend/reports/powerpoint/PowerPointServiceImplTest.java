@@ -15,18 +15,67 @@ import com.hp.autonomy.frontend.reports.powerpoint.dto.SunburstData;
 import com.hp.autonomy.frontend.reports.powerpoint.dto.TableData;
 import com.hp.autonomy.frontend.reports.powerpoint.dto.TextData;
 import com.hp.autonomy.frontend.reports.powerpoint.dto.TopicMapData;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.imageio.ImageIO;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.sl.usermodel.PictureData;
 import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFChart;
+import org.apache.poi.xslf.usermodel.XSLFPictureData;
+import org.apache.poi.xslf.usermodel.XSLFRelation;
+import org.apache.poi.xslf.usermodel.XSLFShape;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTable;
+import org.apache.poi.xslf.usermodel.XSLFTableCell;
+import org.apache.poi.xslf.usermodel.XSLFTableRow;
+import org.apache.poi.xslf.usermodel.XSLFTableStyle;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.openxmlformats.schemas.drawingml.x2006.main.CTTableCell;
 
 import static java.io.File.createTempFile;
 
@@ -35,7 +84,7 @@ public class PowerPointServiceImplTest {
 
     private static final String sampleJPEGWithoutHeader = "/9j/4AAQSkZJRgABAQAASABIAAD/2wBDAAMCAgICAgMCAgIDAwMDBAYEBAQEBAgGBgUGCQgKCgkICQkKDA8MCgsOCwkJDRENDg8QEBEQCgwSExIQEw8QEBD/2wBDAQMDAwQDBAgEBAgQCwkLEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBD/wAARCAAeADIDASIAAhEBAxEB/8QAGQABAQEBAQEAAAAAAAAAAAAAAAcGBQQI/8QAJRAAAQQCAgICAgMAAAAAAAAAAQIDBAUABgcREiEIEyMxMkFR/8QAGAEBAQEBAQAAAAAAAAAAAAAAAAUDBgT/xAAjEQEAAQQBBAIDAAAAAAAAAAABEQACAwQhBRIxURNBBhax/9oADAMBAAIRAxEAPwD7NxjMtypuUrjzjjZN4hVC7N+jrX5qIqVBPmUJJ7USR0gfyUR78QroE9A9Zra+Tbz2a+Im69LT65WDl4Oa4KtTjIPK+X/HmswqJneIdjW2s+qiWdgwBHAgof8ASVFJf8nArorCWvtWEFJUB3msY5/06ZyY/wAWQa23k2UWUiHIkNIYLTTimg6CWy6JH1+JH5Q0W+/XllnN+LdYwDdfr3doXXT9dtqCj4Tkj2IkiUhqmYybcJcq2/KsTZ5VrqUqkFHsEyoYDpbIcQyso6JS4r8qSk+foJBUAkqAJyk5L39HN0zZu1dgC+3zCP1PkkpTGMZ46Uzl7VrlbuGs22pXAcMC6gv18r6leK/qdbKF+J/o9KPR/wBzqYzTFkvw3mTGxcMj6Tw0qTMfHHW4bsSTA3ndYchqBFrJ0iJZoju2kaMsqYRIW20CCgEoCmvrV4eiT7z2Xvx/1DZN8h79c3N9KfgWTFtGguyGnI7MlkDwLa1Nl9tHYCi0h0Nk/tPvKbjK/wCx9V7/AJPme6EniYYk8egD0AEAFJrJ6JxvUceythfpbO0eY2O1fuXosp1C2Y0h5RW79PSApKVKV2QpSv0Ous1mMZL2dnLuZXNnu7rmJfcEfwpTGMZhSv/Z";
     private static final String sampleJPEGImage = "data:image/jpeg;base64," + sampleJPEGWithoutHeader;
-    private static final String samplePNGImage = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAA8AAAAFCAIAAAAVLyF7AAAAPUlEQVQI14WNSQoAMAgDo/b/Lxamh9JiF+gcZJJDlCbA1z0zawXcvq5HhApmVr1GSa6d55NFO/IYA47VQQfmMSztMBTTBAAAAABJRU5ErkJggg==";
+    static final String samplePNGImage = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAA8AAAAFCAIAAAAVLyF7AAAAPUlEQVQI14WNSQoAMAgDo/b/Lxamh9JiF+gcZJJDlCbA1z0zawXcvq5HhApmVr1GSa6d55NFO/IYA47VQQfmMSztMBTTBAAAAABJRU5ErkJggg==";
     public static final String JPEG_REFERENCE_ID = "tinyJPG";
 
     private PowerPointService pptxService;
@@ -129,6 +178,74 @@ public class PowerPointServiceImplTest {
         ).validateTemplate();
     }
 
+    @Test
+    public void testTemplateIsOnlyParsedOnce() throws TemplateLoadException, IOException {
+        final AtomicInteger templateReads = new AtomicInteger();
+
+        final PowerPointService service = new PowerPointServiceImpl(
+            () -> {
+                templateReads.incrementAndGet();
+                return TemplateSource.DEFAULT.getInputStream();
+            },
+            TemplateSettingsSource.DEFAULT
+        );
+
+        final XMLSlideShow graph = service.graph(createTwoAxisDategraphData());
+        final XMLSlideShow sunburst = service.sunburst(createSunburstData());
+        testWrite(graph);
+        testWrite(sunburst);
+
+        // Each presentation should have its own copy of the template
+        Assert.assertEquals(1, templateReads.get());
+        Assert.assertNotSame(graph, sunburst);
+        Assert.assertEquals(1, graph.getSlides().size());
+        Assert.assertEquals(1, sunburst.getSlides().size());
+    }
+
+    @Test
+    public void testReportToOutputStream() throws TemplateLoadException, IOException {
+        final ReportData report = new ObjectMapper().readValue(PowerPointServiceImplTest.class.getResource("multiwidgetreport.json"), ReportData.class);
+
+        final AtomicBoolean closed = new AtomicBoolean();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        pptxService.report(report, false, output);
+
+        Assert.assertFalse("The caller's stream should be left open", closed.get());
+        Assert.assertEquals(1, new XMLSlideShow(new ByteArrayInputStream(output.toByteArray())).getSlides().size());
+    }
+
+    @Test
+    public void testStoreCompressedParts() throws TemplateLoadException, IOException {
+        final ReportData report = new ObjectMapper().readValue(PowerPointServiceImplTest.class.getResource("multiwidgetreport.json"), ReportData.class);
+
+        final PowerPointService service = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, ImageSource.DEFAULT, CompressionPolicy.FAST);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.report(report, false, output);
+
+        int storedMedia = 0;
+
+        try(final ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            for(ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                if (entry.getName().startsWith("ppt/media/") && !entry.getName().endsWith(".emf")) {
+                    Assert.assertEquals(entry.getName(), ZipEntry.STORED, entry.getMethod());
+                    storedMedia++;
+                }
+                else if (entry.getName().endsWith(".xml")) {
+                    Assert.assertEquals(entry.getName(), ZipEntry.DEFLATED, entry.getMethod());
+                }
+            }
+        }
+
+        Assert.assertTrue(storedMedia > 0);
+        Assert.assertEquals(1, new XMLSlideShow(new ByteArrayInputStream(output.toByteArray())).getSlides().size());
+    }
+
     @Test
     public void testDateGraphTwoAxes() throws TemplateLoadException, IOException {
         final DategraphData data = createTwoAxisDategraphData();
@@ -159,6 +276,64 @@ public class PowerPointServiceImplTest {
         Assert.assertEquals(pptx.getSlides().size(), 1);
     }
 
+    @Test
+    public void testChartPartsCopied() throws TemplateLoadException, IOException, InvalidFormatException {
+        final OPCPackage template = OPCPackage.open(TemplateSource.DEFAULT.getInputStream());
+
+        // the sunburst is based on the doughnut chart on the template's first slide, and the graph on its second
+        assertChartPartsCopied(getSlideChart(template, 1), pptxService.sunburst(createSunburstData()));
+        assertChartPartsCopied(getSlideChart(template, 2), pptxService.graph(createTwoAxisDategraphData()));
+    }
+
+    /**
+     * Checks that a presentation's chart refers to a copy of each part referred to by the template chart, with the same
+     *   relationship types and contents; except for the workbook, which is written for each chart.
+     */
+    private static void assertChartPartsCopied(final PackagePart templateChart, final XMLSlideShow pptx) throws IOException, InvalidFormatException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pptx.write(output);
+        final byte[] written = output.toByteArray();
+
+        final PackagePart chart = getSlideChart(OPCPackage.open(new ByteArrayInputStream(written)), 1);
+        Assert.assertEquals(templateChart.getRelationships().size(), chart.getRelationships().size());
+
+        for(final PackageRelationship templateRelationship : templateChart.getRelationships()) {
+            final PackageRelationshipCollection relationships = chart.getRelationshipsByType(templateRelationship.getRelationshipType());
+            Assert.assertEquals(templateRelationship.getRelationshipType(), 1, relationships.size());
+
+            final PackagePart templatePart = templateChart.getRelatedPart(templateRelationship);
+            final PackagePart part = chart.getRelatedPart(relationships.getRelationship(0));
+            Assert.assertNotNull(templateRelationship.getRelationshipType(), part);
+            Assert.assertEquals(templatePart.getContentType(), part.getContentType());
+
+            try(InputStream templateInput = templatePart.getInputStream(); InputStream input = part.getInputStream()) {
+                if (SlideShowTemplate.WORKBOOK_CONTENT_TYPE.equals(part.getContentType())) {
+                    try(XSSFWorkbook workbook = new XSSFWorkbook(input)) {
+                        Assert.assertTrue(workbook.getSheetAt(0).getPhysicalNumberOfRows() > 0);
+                    }
+                }
+                else {
+                    Assert.assertArrayEquals(part.getPartName().getName(), IOUtils.toByteArray(templateInput), IOUtils.toByteArray(input));
+                }
+            }
+        }
+
+        // and POI can still read the chart
+        final XMLSlideShow reopened = new XMLSlideShow(new ByteArrayInputStream(written));
+        Assert.assertTrue(reopened.getSlides().get(0).getRelations().stream().anyMatch(part -> part instanceof XSLFChart));
+    }
+
+    /**
+     * Finds the chart referred to by one of a package's slides.
+     */
+    private static PackagePart getSlideChart(final OPCPackage pkg, final int slideNumber) throws InvalidFormatException {
+        final PackagePart slide = pkg.getPart(PackagingURIHelper.createPartName("/ppt/slides/slide" + slideNumber + ".xml"));
+        final PackageRelationshipCollection relationships = slide.getRelationshipsByType(XSLFRelation.CHART.getRelation());
+        Assert.assertEquals(1, relationships.size());
+
+        return slide.getRelatedPart(relationships.getRelationship(0));
+    }
+
     @Test
     public void testSunburst() throws TemplateLoadException, IOException {
         final SunburstData sunburst = createSunburstData();
@@ -249,6 +424,35 @@ public class PowerPointServiceImplTest {
         Assert.assertTrue(pptx.getSlides().size() > 1);
     }
 
+    @Test
+    public void testSizingSlideReuse() throws TemplateLoadException, IOException {
+        final SlideShowTemplate template = new SlideShowTemplate(TemplateSource.DEFAULT.getInputStream());
+
+        final XSLFSlide slide = template.borrowSizingSlide();
+        slide.createTextBox().setText("Left behind");
+        template.returnSizingSlide(slide);
+
+        // the same slide is reused, without the shapes which were left on it
+        final XSLFSlide reused = template.borrowSizingSlide();
+        Assert.assertSame(slide, reused);
+        Assert.assertTrue(reused.getShapes().isEmpty());
+
+        // a slide which is still borrowed isn't shared
+        final XSLFSlide other = template.borrowSizingSlide();
+        Assert.assertNotSame(reused, other);
+
+        // text is measured with the template's own defaults
+        Assert.assertEquals(template.createSlideShow().getSlideMasters().get(0).getXmlObject().xmlText(), other.getSlideMaster().getXmlObject().xmlText());
+
+        // only one idle slide is kept
+        template.returnSizingSlide(reused);
+        template.returnSizingSlide(other);
+        Assert.assertSame(reused, template.borrowSizingSlide());
+        final XSLFSlide created = template.borrowSizingSlide();
+        Assert.assertNotSame(reused, created);
+        Assert.assertNotSame(other, created);
+    }
+
     @Test
     public void testListSingleMappedImage() throws TemplateLoadException, IOException {
         // testing using a mapped ID which doesn't contain any real data, but which the image source knows how to
@@ -273,6 +477,456 @@ public class PowerPointServiceImplTest {
         Assert.assertTrue(pptx.getSlides().size() > 1);
     }
 
+    @Test
+    public void testListLayoutUnchanged() throws TemplateLoadException, IOException {
+        // SHA-1 digests of the content of each part, as rendered when each list item was created on its slide, measured,
+        //   then removed and recreated on the next slide if it didn't fit
+        final ListData listData = createRandomListData(new Random(17), 120);
+        Assert.assertEquals("7717999bdce8862fb7948a3785034cd880890d54", digestParts(pptxService.list(listData, "Showing 1 to 120 of 120 results", "Sort by Relevance")));
+
+        listData.setDrawIcons(true);
+        Assert.assertEquals("72add9d348cae3416e31bbc322fc4d096292307d", digestParts(pptxService.list(listData, null, null)));
+    }
+
+    @Test
+    public void testStreamingListMatchesList() throws TemplateLoadException, IOException {
+        final ListData listData = createRandomListData(new Random(17), 120);
+        listData.setDrawIcons(true);
+
+        final ListData format = new ListData();
+        format.setDrawIcons(true);
+
+        final String expected = digestParts(pptxService.list(listData, "Showing 1 to 120 of 120 results", "Sort by Relevance"));
+
+        Assert.assertEquals(expected, digestParts(pptxService.list(format, Arrays.asList(listData.getDocs()).iterator(), "Showing 1 to 120 of 120 results", "Sort by Relevance")));
+        Assert.assertEquals(expected, digestParts(pptxService.listSpliterator(format, Arrays.spliterator(listData.getDocs()), "Showing 1 to 120 of 120 results", "Sort by Relevance")));
+    }
+
+    @Test
+    public void testSpilledListMatchesList() throws TemplateLoadException, IOException {
+        final ListData listData = createRandomListData(new Random(17), 120);
+        listData.setDrawIcons(true);
+
+        final ListData format = new ListData();
+        format.setDrawIcons(true);
+
+        final String expected = digestParts(pptxService.list(listData, "Showing 1 to 120 of 120 results", "Sort by Relevance"));
+
+        // each slide and its thumbnails are spilled to a temp file as it's finished, then copied into the output
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pptxService.list(listData, "Showing 1 to 120 of 120 results", "Sort by Relevance", output);
+        Assert.assertEquals(expected, digestParts(output.toByteArray(), true));
+
+        output.reset();
+        pptxService.list(format, Arrays.asList(listData.getDocs()).iterator(), "Showing 1 to 120 of 120 results", "Sort by Relevance", output);
+        Assert.assertEquals(expected, digestParts(output.toByteArray(), true));
+    }
+
+    @Test
+    public void testSpilledReportMatchesReport() throws TemplateLoadException, IOException {
+        // charts, lists, maps and tables, each on their own slide
+        final ReportData report = createComplicatedReport(0.01);
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        pptxService.report(report, true).write(expected);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pptxService.report(report, true, output);
+
+        // the charts' workbooks are written with the time they're written at
+        Assert.assertEquals(digestParts(expected.toByteArray(), false), digestParts(output.toByteArray(), false));
+    }
+
+    @Test
+    public void testStreamingListReadsDocumentsInBatches() throws TemplateLoadException, IOException {
+        final int count = 200;
+        final AtomicInteger read = new AtomicInteger();
+        final List<Integer> readWhenFetched = new ArrayList<>();
+
+        final Iterator<ListData.Document> docs = new Iterator<ListData.Document>() {
+            @Override
+            public boolean hasNext() {
+                return read.get() < count;
+            }
+
+            @Override
+            public ListData.Document next() {
+                final int ii = read.getAndIncrement();
+                return new ListData.Document("title" + ii, "5 months ago", "reference" + ii, "summary", sampleJPEGImage);
+            }
+        };
+
+        final ImageSource recordingImageSource = new ImageSource() {
+            @Override
+            public ImageData getImageData(final String imageId) {
+                throw new AssertionError("Should only fetch images in batches");
+            }
+
+            @Override
+            public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final Executor executor) {
+                readWhenFetched.add(read.get());
+                return CompletableFuture.completedFuture(ImageSource.DEFAULT.getImageData(imageIds));
+            }
+
+            @Override
+            public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final double width, final double height, final Executor executor) {
+                return getImageDataAsync(imageIds, executor);
+            }
+        };
+
+        final XMLSlideShow pptx = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, recordingImageSource).list(new ListData(), docs, null, null);
+        testWrite(pptx);
+
+        // documents are read a batch at a time, as the batch before is laid out, rather than all up front
+        Assert.assertEquals(Arrays.asList(32, 64, 96, 128, 160, 192, 200), readWhenFetched);
+        Assert.assertEquals(count, read.get());
+        Assert.assertTrue(pptx.getSlides().size() > 1);
+    }
+
+    @Test
+    public void testAsyncGraph() throws Exception {
+        final AsyncPowerPointService asyncService = new AsyncPowerPointService(pptxService);
+
+        final XMLSlideShow pptx = asyncService.graph(createTwoAxisDategraphData()).get(30, TimeUnit.SECONDS);
+        testWrite(pptx);
+
+        Assert.assertEquals(1, pptx.getSlides().size());
+    }
+
+    @Test
+    public void testAsyncListCancellation() throws Exception {
+        // createListData() has two distinct thumbnails, which should be fetched at the same time
+        final CountDownLatch fetching = new CountDownLatch(2);
+        final CountDownLatch interrupted = new CountDownLatch(2);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        // an image source which blocks until it's interrupted, like a slow image download
+        final ImageSource slowImageSource = imageId -> {
+            fetching.countDown();
+
+            try {
+                new CountDownLatch(1).await();
+                throw new IllegalStateException("Should have been interrupted");
+            }
+            catch(InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException("Interrupted while fetching " + imageId, e);
+            }
+        };
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final ExecutorService imageExecutor = Executors.newFixedThreadPool(2);
+
+        try {
+            final PowerPointService service = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, slowImageSource, CompressionPolicy.DEFAULT, imageExecutor);
+            final AsyncPowerPointService asyncService = new AsyncPowerPointService(service, executor);
+
+            final CompletableFuture<XMLSlideShow> future = asyncService.list(createListData(), null, null);
+            future.whenComplete((pptx, e) -> finished.countDown());
+
+            Assert.assertTrue(fetching.await(30, TimeUnit.SECONDS));
+            Assert.assertTrue(future.cancel(true));
+            Assert.assertTrue(future.isCancelled());
+
+            // the render should stop its image fetches, and leave the thread usable for the next task
+            Assert.assertTrue(interrupted.await(30, TimeUnit.SECONDS));
+            Assert.assertFalse(executor.submit(() -> Thread.currentThread().isInterrupted()).get(30, TimeUnit.SECONDS));
+            Assert.assertTrue(finished.await(30, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+            imageExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testListThumbnailsFetchedConcurrently() throws TemplateLoadException, IOException {
+        final CountDownLatch fetching = new CountDownLatch(2);
+        final AtomicInteger fetches = new AtomicInteger();
+
+        // each fetch waits for the other, so this would time out if the thumbnails were fetched one at a time
+        final ImageSource imageSource = imageId -> {
+            fetches.incrementAndGet();
+            fetching.countDown();
+
+            try {
+                if (!fetching.await(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Thumbnails were not fetched concurrently");
+                }
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException(e);
+            }
+
+            return ImageSource.DEFAULT.getImageData(imageId);
+        };
+
+        final XMLSlideShow pptx = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, imageSource).list(createListData(), null, null);
+        testWrite(pptx);
+
+        // repeated thumbnails are only fetched once
+        Assert.assertEquals(2, fetches.get());
+        Assert.assertEquals(2, pptx.getPictureData().size());
+    }
+
+    @Test
+    public void testListThumbnailFailure() throws TemplateLoadException, IOException {
+        final ImageSource imageSource = imageId -> {
+            if (imageId.startsWith("data:image/png")) {
+                throw new IllegalArgumentException("Unable to fetch " + imageId);
+            }
+
+            return ImageSource.DEFAULT.getImageData(imageId);
+        };
+
+        final XMLSlideShow pptx = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, imageSource).list(createListData(), null, null);
+        testWrite(pptx);
+
+        // the failed thumbnail is left out, but the rest of the list is still rendered
+        Assert.assertEquals(1, pptx.getPictureData().size());
+        Assert.assertTrue(pptx.getSlides().size() > 1);
+    }
+
+    @Test
+    public void testReportImagesFetchedAsBatches() throws TemplateLoadException, IOException {
+        final List<Collection<String>> batches = new ArrayList<>();
+
+        final ImageSource batchImageSource = new ImageSource() {
+            @Override
+            public ImageData getImageData(final String imageId) {
+                throw new AssertionError("Should only fetch images in batches");
+            }
+
+            @Override
+            public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final Executor executor) {
+                synchronized(batches) {
+                    batches.add(imageIds);
+                }
+
+                return CompletableFuture.completedFuture(ImageSource.DEFAULT.getImageData(imageIds));
+            }
+
+            @Override
+            public CompletableFuture<Map<String, ImageData>> getImageDataAsync(final Collection<String> imageIds, final double width, final double height, final Executor executor) {
+                return getImageDataAsync(imageIds, executor);
+            }
+        };
+
+        final XMLSlideShow pptx = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, batchImageSource).report(createComplicatedReport(3), false);
+        testWrite(pptx);
+
+        // one batch for the list's two distinct thumbnails, and one for the map image
+        Assert.assertEquals(2, batches.size());
+        Assert.assertEquals(2, batches.get(0).size());
+        Assert.assertEquals(1, batches.get(1).size());
+    }
+
+    @Test
+    public void testDataUriDecoding() {
+        final Random random = new Random(42);
+
+        for(int length = 0; length < 100; ++length) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            final String base64 = Base64.encodeBase64String(data);
+            final String[] variants = {
+                base64,
+                Base64.encodeBase64URLSafeString(data),
+                // line breaks, trailing data after the padding, and truncated data should all match commons-codec
+                Base64.encodeBase64String(data).replaceAll("(.{7})", "$1\r\n"),
+                base64 + "=AAAA",
+                base64.substring(0, base64.length() / 2)
+            };
+
+            for(final String variant : variants) {
+                final ImageData imageData = ImageSource.DEFAULT.getImageData("data:image/png;base64," + variant);
+                Assert.assertEquals(PictureData.PictureType.PNG, imageData.getType());
+                Assert.assertArrayEquals(variant, Base64.decodeBase64(variant), imageData.getData());
+
+                Assert.assertArrayEquals(variant, Base64.decodeBase64(variant), ImageSource.DEFAULT.getImageData(variant).getData());
+            }
+        }
+
+        Assert.assertEquals(PictureData.PictureType.GIF, ImageSource.DEFAULT.getImageData("data:IMAGE/GIF;base64,R0lG").getType());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDataUriUnsupportedContentType() {
+        ImageSource.DEFAULT.getImageData("data:text/plain;base64,AAAA");
+    }
+
+    @Test
+    public void testListThumbnailNormalization() throws TemplateLoadException, IOException {
+        // a photo-sized thumbnail, with enough noise that it doesn't compress well
+        final BufferedImage photo = new BufferedImage(1600, 900, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(42);
+
+        for(int y = 0; y < photo.getHeight(); ++y) {
+            for(int x = 0; x < photo.getWidth(); ++x) {
+                photo.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+
+        final ByteArrayOutputStream photoBytes = new ByteArrayOutputStream();
+        ImageIO.write(photo, "png", photoBytes);
+        final String photoUri = "data:image/png;base64," + Base64.encodeBase64String(photoBytes.toByteArray());
+
+        final NormalizingImageSource imageSource = new NormalizingImageSource(ImageSource.DEFAULT, 150, 100);
+        final PowerPointService service = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, imageSource);
+
+        final ListData listData = new ListData(new ListData.Document[]{
+                new ListData.Document("title1", "5 months ago", "reference", "summary", photoUri),
+                new ListData.Document("title2", "5 months ago", "reference", "summary", samplePNGImage)
+        });
+
+        final XMLSlideShow pptx = service.list(listData, null, null);
+
+        // the photo should be scaled down to 150dpi at 77.6 x 44 points; the tiny image should be unchanged
+        final BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(pptx.getPictureData().stream()
+                .filter(picture -> picture.getType() == PictureData.PictureType.JPEG)
+                .findFirst().get().getData()));
+        // keeping the aspect ratio, the height needs 92px at 150dpi, so the width is 1600 * 92 / 900
+        Assert.assertEquals(164, thumbnail.getWidth());
+        Assert.assertEquals(92, thumbnail.getHeight());
+        Assert.assertEquals(1, pptx.getPictureData().stream()
+                .filter(picture -> Arrays.equals(picture.getData(), ImageSource.DEFAULT.getImageData(samplePNGImage).getData()))
+                .count());
+        testWrite(pptx);
+
+        NormalizingImageSource.Statistics stats = imageSource.getStatistics();
+        Assert.assertEquals(2, stats.getNormalizedCount());
+        Assert.assertTrue(stats.getBytesSaved() > photoBytes.size() / 2);
+
+        service.list(listData, null, null);
+        stats = imageSource.getStatistics();
+        Assert.assertEquals(2, stats.getNormalizedCount());
+        Assert.assertEquals(2, stats.getHitCount());
+    }
+
+    @Test
+    public void testImageSizeFromHeader() throws IOException {
+        final BufferedImage image = new BufferedImage(123, 45, BufferedImage.TYPE_INT_RGB);
+        final List<byte[]> images = new ArrayList<>();
+
+        for(final String format : new String[]{ "png", "jpeg", "gif", "bmp" }) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageIO.write(image, format, output);
+            images.add(output.toByteArray());
+        }
+
+        images.add(ImageSource.DEFAULT.getImageData(sampleJPEGImage).getData());
+        images.add(ImageSource.DEFAULT.getImageData(samplePNGImage).getData());
+
+        for(final byte[] data : images) {
+            final BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(data));
+            // the declared type doesn't matter, since the format is detected from the data
+            final Dimension size = new ImageData(PictureData.PictureType.PNG, data).getPixelSize();
+
+            if (data[0] == 'B') {
+                // we don't read BMP headers
+                Assert.assertNull(size);
+            }
+            else {
+                Assert.assertEquals(new Dimension(decoded.getWidth(), decoded.getHeight()), size);
+            }
+        }
+
+        Assert.assertNull(new ImageData(PictureData.PictureType.PNG, Arrays.copyOf(images.get(0), 20)).getPixelSize());
+    }
+
+    @Test
+    public void testReportMapNotDecoded() throws TemplateLoadException, IOException {
+        // Just the PNG signature and header, which ImageIO can't decode; so if POI tried, it'd use a dummy 200x200 size.
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(640, 320, BufferedImage.TYPE_INT_RGB), "png", output);
+        final ImageData mapImage = new ImageData(PictureData.PictureType.PNG, Arrays.copyOf(output.toByteArray(), 33));
+
+        final String mapImageId = createMapData().getImage();
+        final ImageSource imageSource = imageId -> imageId.equals(mapImageId) ? mapImage : ImageSource.DEFAULT.getImageData(imageId);
+
+        // the list's thumbnails are added after the map, and POI compares them with every existing picture
+        final XMLSlideShow pptx = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, imageSource).report(createComplicatedReport(3), false);
+        Assert.assertTrue(pptx.getPictureData().size() > 1);
+
+        final XSLFPictureData map = pptx.getPictureData().stream()
+                .filter(picture -> Arrays.equals(mapImage.getData(), picture.getData()))
+                .findFirst().get();
+
+        Assert.assertEquals(new Dimension(480, 240), map.getImageDimension());
+    }
+
+    /**
+     * Creates a list of documents with random titles, dates, references, summaries and thumbnails; with summaries of up
+     *   to a few hundred words, so some list items wrap over many lines and some won't fit on a slide.
+     */
+    static ListData createRandomListData(final Random random, final int count) {
+        final String[] thumbnails = { null, null, sampleJPEGImage, samplePNGImage };
+        final ListData.Document[] docs = new ListData.Document[count];
+
+        for(int ii = 0; ii < count; ++ii) {
+            final String summary = TextTruncationTest.randomText(random, random.nextInt(4) > 0 ? random.nextInt(60) : random.nextInt(400));
+
+            docs[ii] = new ListData.Document(
+                "Document " + ii + " " + TextTruncationTest.randomText(random, random.nextInt(8)).trim(),
+                random.nextBoolean() ? (1 + random.nextInt(11)) + " months ago" : null,
+                random.nextInt(4) > 0 ? "ref" + ii : null,
+                random.nextBoolean() ? summary + "<HavenSearch-QueryText-Placeholder>lorem</HavenSearch-QueryText-Placeholder> ipsum" : summary,
+                thumbnails[random.nextInt(thumbnails.length)]);
+        }
+
+        return new ListData(docs);
+    }
+
+    /**
+     * Creates a table with a header row and random cells; mostly a few words, and sometimes enough to wrap over several
+     *   lines.
+     */
+    static TableData createRandomTableData(final Random random, final int rows, final int cols) {
+        final String[] cells = new String[rows * cols];
+
+        for(int col = 0; col < cols; ++col) {
+            cells[col] = "Column " + col;
+        }
+
+        for(int ii = cols; ii < cells.length; ++ii) {
+            cells[ii] = TextTruncationTest.randomText(random, 1 + (random.nextInt(8) > 0 ? random.nextInt(4) : random.nextInt(40))).trim();
+        }
+
+        return new TableData(rows, cols, cells);
+    }
+
+    /**
+     * Utility function to digest the name and content of each part of a presentation, ignoring the zip timestamps.
+     */
+    private static String digestParts(final XMLSlideShow pptx) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pptx.write(output);
+        return digestParts(output.toByteArray(), true);
+    }
+
+    /**
+     * Utility function to digest the name and content of each part of a written presentation, ignoring the zip
+     *   timestamps; and optionally the content of embedded workbooks, which are zips with timestamps of their own.
+     */
+    private static String digestParts(final byte[] pptx, final boolean embeddings) throws IOException {
+        final MessageDigest digest = DigestUtils.getSha1Digest();
+
+        try(final ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(pptx))) {
+            for(ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+
+                if (embeddings || !entry.getName().startsWith("ppt/embeddings/")) {
+                    digest.update(IOUtils.toByteArray(zip));
+                }
+            }
+        }
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
     private static ListData createListData() {
         return new ListData(new ListData.Document[]{
                 new ListData.Document("title1", "5 months ago", "reference", "summary", null),
@@ -308,6 +962,113 @@ public class PowerPointServiceImplTest {
         Assert.assertEquals(pptx.getSlides().size(), 1);
     }
 
+    @Test
+    public void testPaginatedTable() throws TemplateLoadException, IOException {
+        final int rows = 200, cols = 3;
+        final TableData tableData = createRandomTableData(new Random(17), rows, cols);
+        final String[] cells = tableData.getCells();
+
+        final XMLSlideShow pptx = pptxService.table(tableData, "Random table");
+        testWrite(pptx);
+
+        final double pageHeight = pptx.getPageSize().getHeight();
+        final List<XSLFSlide> slides = pptx.getSlides();
+        Assert.assertTrue(slides.size() > 1);
+
+        // each slide starts with the header, and every other row is on exactly one slide, in order
+        int nextRow = 1;
+
+        for(final XSLFSlide slide : slides) {
+            final XSLFTable table = slide.getShapes().stream().filter(XSLFTable.class::isInstance).map(XSLFTable.class::cast).findFirst().get();
+            Assert.assertTrue(table.getAnchor().getMaxY() <= pageHeight);
+
+            for(int row = 0; row < table.getNumberOfRows(); ++row) {
+                final int dataRow = row == 0 ? 0 : nextRow++;
+
+                for(int col = 0; col < cols; ++col) {
+                    Assert.assertEquals(cells[dataRow * cols + col], table.getCell(row, col).getText());
+                }
+            }
+        }
+
+        Assert.assertEquals(rows, nextRow);
+
+        // each slide is spilled to a temp file as it's finished, then copied into the output
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pptxService.table(tableData, "Random table", output);
+        Assert.assertEquals(digestParts(pptxService.table(tableData, "Random table")), digestParts(output.toByteArray(), true));
+    }
+
+    @Test
+    public void testTableStyle() throws TemplateLoadException, IOException {
+        assertTablesUseTableStyle(pptxService.table(createTableData(), "Animals"));
+        assertTablesUseTableStyle(pptxService.report(createComplicatedReport(0.01), false));
+    }
+
+    @Test
+    public void testExistingTableStyleReused() throws TemplateLoadException, IOException, InvalidFormatException {
+        // a template with the table styles from one of our presentations, so it already has our table style
+        final XMLSlideShow styled = writeAndRead(pptxService.table(createTableData(), "Animals"));
+        final String styleId = ((XSLFTable) styled.getSlides().get(0).getShapes().stream().filter(shape -> shape instanceof XSLFTable).findFirst().get()).getCTTable().getTblPr().getTableStyleId();
+
+        final XMLSlideShow template = new XMLSlideShow(TemplateSource.DEFAULT.getInputStream());
+        final PackagePartName partName = template.getTableStyles().getPackagePart().getPartName();
+        final ByteArrayOutputStream styles = new ByteArrayOutputStream();
+
+        try(InputStream input = styled.getTableStyles().getPackagePart().getInputStream()) {
+            IOUtils.copy(input, styles);
+        }
+
+        template.getPackage().removePart(partName);
+        template.getPackage().createPart(partName, XSLFRelation.TABLE_STYLES.getContentType(), styles);
+
+        final ByteArrayOutputStream templateBytes = new ByteArrayOutputStream();
+        template.write(templateBytes);
+
+        final PowerPointService service = new PowerPointServiceImpl(() -> new ByteArrayInputStream(templateBytes.toByteArray()), TemplateSettingsSource.DEFAULT);
+        final XMLSlideShow pptx = writeAndRead(service.table(createTableData(), "Animals"));
+
+        Assert.assertEquals(1, pptx.getTableStyles().getStyles().stream().filter(style -> styleId.equals(style.getStyleId())).count());
+        assertTablesUseTableStyle(pptx);
+    }
+
+    private static XMLSlideShow writeAndRead(final XMLSlideShow pptx) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pptx.write(output);
+        return new XMLSlideShow(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    /**
+     * Checks the tables in a written presentation are styled by a table style in it, rather than by their cells.
+     */
+    private static void assertTablesUseTableStyle(final XMLSlideShow pptx) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        pptx.write(output);
+        final XMLSlideShow written = new XMLSlideShow(new ByteArrayInputStream(output.toByteArray()));
+
+        final Set<String> styleIds = written.getTableStyles().getStyles().stream().map(XSLFTableStyle::getStyleId).collect(Collectors.toSet());
+        int tables = 0;
+
+        for(final XSLFSlide slide : written.getSlides()) {
+            for(final XSLFShape shape : slide.getShapes()) {
+                if (shape instanceof XSLFTable) {
+                    final XSLFTable table = (XSLFTable) shape;
+                    Assert.assertTrue(styleIds.contains(table.getCTTable().getTblPr().getTableStyleId()));
+
+                    for(final XSLFTableRow row : table) {
+                        for(final XSLFTableCell cell : row) {
+                            Assert.assertFalse(((CTTableCell) cell.getXmlObject()).isSetTcPr());
+                        }
+                    }
+
+                    ++tables;
+                }
+            }
+        }
+
+        Assert.assertTrue(tables > 0);
+    }
+
     private static TableData createTableData() {
         return new TableData(4, 2, new String[]{
                 "Animal", "Count",
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFPictureData;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.apache.xmlbeans.XmlException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openxmlformats.schemas.presentationml.x2006.main.CTSlide;
+import org.openxmlformats.schemas.presentationml.x2006.main.SldDocument;
+
+public class SlideSpillerTest {
+
+    @Test
+    public void testSpill() throws IOException, XmlException {
+        final XMLSlideShow ppt = new XMLSlideShow();
+        final byte[] image = ImageSource.DEFAULT.getImageData(PowerPointServiceImplTest.samplePNGImage).getData();
+
+        final XSLFSlide slide = ppt.createSlide();
+        final XSLFTextBox textBox = slide.createTextBox();
+        textBox.setAnchor(new Rectangle2D.Double(10, 10, 200, 100));
+        textBox.setText("Spilled text");
+        final XSLFPictureData picture = ppt.addPicture(image, PictureData.PictureType.PNG);
+        slide.createPicture(picture);
+
+        try(SlideSpiller spiller = new SlideSpiller()) {
+            spiller.spill(slide);
+
+            // only the shape tree's own properties are left in memory
+            Assert.assertTrue(slide.getShapes().isEmpty());
+            Assert.assertEquals(2, slide.getXmlObject().getCSld().getSpTree().selectPath("./*").length);
+            Assert.assertEquals(0, picture.getPackagePart().getSize());
+
+            final ByteArrayOutputStream slideXml = new ByteArrayOutputStream();
+            spiller.writeTo("ppt/slides/slide1.xml", slideXml);
+            final CTSlide spilledSlide = SldDocument.Factory.parse(slideXml.toString("UTF-8")).getSld();
+            Assert.assertEquals(1, spilledSlide.getCSld().getSpTree().sizeOfSpArray());
+            Assert.assertEquals(1, spilledSlide.getCSld().getSpTree().sizeOfPicArray());
+
+            final ByteArrayOutputStream pictureData = new ByteArrayOutputStream();
+            spiller.writeTo("ppt/media/image1.png", pictureData);
+            Assert.assertArrayEquals(image, pictureData.toByteArray());
+
+            // the picture can still be found, and placed on later slides
+            Assert.assertSame(picture, ppt.addPicture(image, PictureData.PictureType.PNG));
+            ppt.createSlide().createPicture(picture);
+            Assert.assertTrue(spiller.isSpilled("ppt/slides/slide1.xml"));
+            Assert.assertTrue(spiller.isSpilled("ppt/media/image1.png"));
+            Assert.assertFalse(spiller.isSpilled("ppt/slides/slide2.xml"));
+        }
+    }
+}
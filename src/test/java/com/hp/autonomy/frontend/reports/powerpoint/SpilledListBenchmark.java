@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ListData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark comparing the heap a long list presentation keeps live when all its slides are kept in memory until it's
+ *   written, against when each slide is spilled to a temp file as it's finished. The documents are streamed, so
+ *   they're not kept live either.
+ * The heap which is still in use after a full GC is recorded as the presentation starts being written, once every
+ *   slide has been rendered, and reported as the retainedMegabytes counter; 500 documents make about 100 slides, and
+ *   2500 documents about 500 slides. Each operation takes longer than an iteration, so there's one per iteration; and
+ *   there's a single measured iteration, since JMH reports the sum of the counter over all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 1, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class SpilledListBenchmark {
+
+    @Param({"500", "2500"})
+    private int documents;
+
+    private PowerPointService service;
+
+    private ListData format;
+
+    @Setup
+    public void setup() throws TemplateLoadException {
+        service = new PowerPointServiceImpl();
+        service.validateTemplate();
+
+        format = new ListData();
+        format.setDrawIcons(true);
+    }
+
+    @Benchmark
+    public long buffered(final RetainedHeap heap) throws TemplateLoadException, IOException {
+        final HeapRecordingOutputStream sink = new HeapRecordingOutputStream(heap);
+        service.write(service.list(format, createDocuments(), null, null), sink);
+        return sink.count;
+    }
+
+    @Benchmark
+    public long spilled(final RetainedHeap heap) throws TemplateLoadException, IOException {
+        final HeapRecordingOutputStream sink = new HeapRecordingOutputStream(heap);
+        service.list(format, createDocuments(), null, null, sink);
+        return sink.count;
+    }
+
+    /**
+     * Creates the same random documents for each operation as they're read, so they don't count towards the heap.
+     */
+    private Iterator<ListData.Document> createDocuments() {
+        final Random random = new Random(17);
+        return IntStream.range(0, documents).mapToObj(ii -> PowerPointServiceImplTest.createRandomListData(random, 1).getDocs()[0]).iterator();
+    }
+
+    /**
+     * The heap in use after a full GC when the presentation started being written, in megabytes.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedHeap {
+        public double retainedMegabytes;
+    }
+
+    /**
+     * Stands in for a network or file stream, without keeping any of the data; recording the retained heap when it's
+     *   first written to.
+     */
+    private static class HeapRecordingOutputStream extends OutputStream {
+        private final RetainedHeap heap;
+
+        private long count;
+
+        private HeapRecordingOutputStream(final RetainedHeap heap) {
+            this.heap = heap;
+        }
+
+        @Override
+        public void write(final int b) {
+            write(new byte[]{ (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            if (count == 0) {
+                System.gc();
+                heap.retainedMegabytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024. * 1024.);
+            }
+
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ReportData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark comparing rendering a report into a presentation and buffering the serialized file, against rendering
+ *   straight into an output stream.
+ * Heap usage is the interesting part, so run it with the GC profiler and a fixed heap, and compare the bytes allocated
+ *   per operation (gc.alloc.rate.norm) and the churn in the old generation, e.g.
+ *   {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark="StreamingWriteBenchmark -prof gc -jvmArgs -Xmx256m"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StreamingWriteBenchmark {
+
+    private PowerPointService service;
+
+    private ReportData report;
+
+    @Setup
+    public void setup() throws TemplateLoadException, IOException {
+        service = new PowerPointServiceImpl();
+        service.validateTemplate();
+
+        report = new ObjectMapper().readValue(StreamingWriteBenchmark.class.getResource("multiwidgetreport.json"), ReportData.class);
+    }
+
+    @Benchmark
+    public long buffered() throws TemplateLoadException, IOException {
+        final XMLSlideShow pptx = service.report(report, true);
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        pptx.write(buffer);
+
+        final CountingOutputStream sink = new CountingOutputStream();
+        buffer.writeTo(sink);
+        return sink.count;
+    }
+
+    @Benchmark
+    public long streamed() throws TemplateLoadException, IOException {
+        final CountingOutputStream sink = new CountingOutputStream();
+        service.report(report, true, sink);
+        return sink.count;
+    }
+
+    /**
+     * Stands in for a network or file stream, without keeping any of the data.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
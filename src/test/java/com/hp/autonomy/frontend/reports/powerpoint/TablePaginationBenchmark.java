@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.hp.autonomy.frontend.reports.powerpoint.dto.TableData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the latency of rendering and writing a table of thousands of rows of three columns, with random cells
+ *   of a few words and some which wrap over several lines.
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark=TablePaginationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TablePaginationBenchmark {
+
+    @Param({"1000", "5000", "20000"})
+    private int rows;
+
+    private TableData tableData;
+
+    private PowerPointService service;
+
+    @Setup
+    public void setup() throws TemplateLoadException {
+        tableData = PowerPointServiceImplTest.createRandomTableData(new Random(17), rows, 3);
+        service = new PowerPointServiceImpl();
+        service.validateTemplate();
+    }
+
+    @Benchmark
+    public long table() throws TemplateLoadException, IOException {
+        final CountingOutputStream sink = new CountingOutputStream();
+        service.table(tableData, "Random table", sink);
+        return sink.count;
+    }
+
+    /**
+     * Stands in for a network or file stream, without keeping any of the data.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.hp.autonomy.frontend.reports.powerpoint.dto.DategraphData;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark comparing per-request latency of rendering a date graph with a cached template, against a new service
+ *   per request (which has to parse the template from scratch, as every request used to).
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark=TemplateCacheBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TemplateCacheBenchmark {
+
+    private PowerPointService cachedService;
+
+    private DategraphData data;
+
+    @Setup
+    public void setup() throws TemplateLoadException {
+        cachedService = new PowerPointServiceImpl();
+        cachedService.validateTemplate();
+
+        data = new DategraphData(
+            new long[]{ 1480690162, 1482394810, 1484099459, 1485804108 },
+            Arrays.asList(
+                new DategraphData.Row("#FF0000", "Red Line", false, new double[]{ 87, 87, 124, 49 }),
+                new DategraphData.Row("#00FF00", "Green Line", true, new double[]{ 12, 53, 63, 72 })
+            )
+        );
+    }
+
+    @Benchmark
+    public XMLSlideShow withCache() throws TemplateLoadException {
+        return cachedService.graph(data);
+    }
+
+    @Benchmark
+    public XMLSlideShow withoutCache() throws TemplateLoadException {
+        return new PowerPointServiceImpl().graph(data);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.hp.autonomy.frontend.reports.powerpoint.dto.Anchor;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ListData;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.TableData;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TemplateRegistryTest {
+
+    private static final TableData TABLE = new TableData(2, 2, new String[]{ "Colour", "Count", "Red", "3" });
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws TemplateLoadException {
+        final TemplateRegistry registry = new TemplateRegistry(ImageSource.DEFAULT, 2, Long.MAX_VALUE);
+
+        registry.register("default", TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT);
+        registry.register("logo", () -> getClass().getResourceAsStream("validTemplateWithLogo.pptx"), () -> new TemplateSettings(new Anchor(0, 0.08, 1, 0.92)));
+        registry.register("other", TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT);
+
+        registry.getService("default").table(TABLE, "Default");
+        registry.getService("logo").table(TABLE, "Logo");
+        registry.getService("default").table(TABLE, "Default");
+        // should evict 'logo', since 'default' was used more recently
+        registry.getService("other").table(TABLE, "Other");
+        registry.getService("default").table(TABLE, "Default");
+
+        TemplateRegistry.Statistics stats = registry.getStatistics();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(3, stats.getMissCount());
+        Assert.assertEquals(1, stats.getEvictionCount());
+        Assert.assertEquals(2, stats.getSize());
+
+        final XMLSlideShow pptx = registry.getService("logo").table(TABLE, "Logo");
+        Assert.assertEquals(1, pptx.getSlides().size());
+
+        stats = registry.getStatistics();
+        Assert.assertEquals(4, stats.getMissCount());
+        Assert.assertEquals(2, stats.getEvictionCount());
+    }
+
+    @Test
+    public void testByteLimitEviction() throws TemplateLoadException {
+        // Too small for any template, but we always keep the most recent one
+        final TemplateRegistry registry = new TemplateRegistry(ImageSource.DEFAULT, 100, 1);
+
+        registry.register("first", TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT);
+        registry.register("second", TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT);
+
+        registry.getService("first").validateTemplate();
+        registry.getService("second").validateTemplate();
+
+        final TemplateRegistry.Statistics stats = registry.getStatistics();
+        Assert.assertEquals(1, stats.getSize());
+        Assert.assertEquals(1, stats.getEvictionCount());
+        Assert.assertTrue(stats.getEstimatedBytes() > 0);
+    }
+
+    @Test
+    public void testSharedTextMeasurements() throws TemplateLoadException {
+        final TextMeasurementCache textMeasurer = new TextMeasurementCache(1000);
+        final TemplateRegistry registry = new TemplateRegistry(ImageSource.DEFAULT, 2, Long.MAX_VALUE, textMeasurer);
+        final ListData list = new ListData(new ListData.Document[]{
+                new ListData.Document("title", "5 months ago", "reference", "summary", null)
+        });
+
+        registry.register("first", TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT);
+        registry.register("second", TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT);
+
+        registry.getService("first").list(list, null, null);
+        final long misses = textMeasurer.getStatistics().getMissCount();
+        Assert.assertTrue(misses > 0);
+
+        // another service, for another tenant with the same template, should reuse the measurements
+        registry.getService("second").list(list, null, null);
+        Assert.assertEquals(misses, textMeasurer.getStatistics().getMissCount());
+        Assert.assertTrue(textMeasurer.getStatistics().getHitCount() > 0);
+    }
+
+    @Test
+    public void testReplacedTenantTemplateNotCached() throws Exception {
+        final TemplateRegistry registry = new TemplateRegistry(ImageSource.DEFAULT, 2, Long.MAX_VALUE);
+        final CountDownLatch parsing = new CountDownLatch(1);
+        final CountDownLatch replaced = new CountDownLatch(1);
+
+        registry.register("tenant", () -> {
+            parsing.countDown();
+
+            try {
+                if (!replaced.await(30, TimeUnit.SECONDS)) {
+                    throw new IOException("Tenant was not replaced");
+                }
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+
+            return TemplateSource.DEFAULT.getInputStream();
+        }, TemplateSettingsSource.DEFAULT);
+
+        final PowerPointService oldService = registry.getService("tenant");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            final Future<XMLSlideShow> oldRender = executor.submit(() -> oldService.table(TABLE, "Old"));
+
+            // replace the tenant while its old template is being parsed
+            Assert.assertTrue(parsing.await(30, TimeUnit.SECONDS));
+            registry.register("tenant", TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT);
+            replaced.countDown();
+            oldRender.get();
+
+            // the old template isn't cached for the new tenant, so the new tenant's template is parsed
+            Assert.assertEquals(0, registry.getStatistics().getSize());
+            registry.getService("tenant").table(TABLE, "New");
+
+            final TemplateRegistry.Statistics stats = registry.getStatistics();
+            Assert.assertEquals(2, stats.getMissCount());
+            Assert.assertEquals(1, stats.getSize());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = TemplateLoadException.class)
+    public void testInvalidTenantTemplate() throws TemplateLoadException {
+        final TemplateRegistry registry = new TemplateRegistry(ImageSource.DEFAULT, 2, Long.MAX_VALUE);
+        registry.register("invalid", () -> getClass().getResourceAsStream("invalidTemplate.pptx"), TemplateSettingsSource.DEFAULT);
+        registry.getService("invalid").validateTemplate();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownTenant() {
+        new TemplateRegistry(ImageSource.DEFAULT, 2, Long.MAX_VALUE).getService("unknown");
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ReportData;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark comparing the latency of rendering the multi-widget report with cached text measurements and with text
+ *   measured from glyph metrics, against measuring all the text with POI each time; and printing the cache's hit rate.
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark=TextMeasurementBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TextMeasurementBenchmark {
+
+    private TextMeasurementCache cache;
+
+    private PowerPointService cachedService;
+
+    private PowerPointService uncachedService;
+
+    private GlyphMetricsTextMeasurer glyphMetrics;
+
+    private PowerPointService glyphMetricsService;
+
+    private ReportData report;
+
+    @Setup
+    public void setup() throws TemplateLoadException, IOException {
+        cache = new TextMeasurementCache(10000);
+        cachedService = createService(cache);
+        uncachedService = createService(new TextMeasurementCache(0));
+        glyphMetrics = new GlyphMetricsTextMeasurer();
+        glyphMetricsService = createService(glyphMetrics);
+
+        report = new ObjectMapper().readValue(TextMeasurementBenchmark.class.getResource("multiwidgetreport.json"), ReportData.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        final TextMeasurementCache.Statistics stats = cache.getStatistics();
+        System.out.printf("%nText measurement cache: %d hits, %d misses, %.1f%% hit rate%n", stats.getHitCount(), stats.getMissCount(), 100 * stats.getHitRate());
+
+        final GlyphMetricsTextMeasurer.Statistics glyphStats = glyphMetrics.getStatistics();
+        System.out.printf("Glyph metrics: %d shapes measured, %d fell back to POI%n", glyphStats.getMeasuredCount(), glyphStats.getFallbackCount());
+    }
+
+    @Benchmark
+    public XMLSlideShow withCache() throws TemplateLoadException {
+        return cachedService.report(report, false);
+    }
+
+    @Benchmark
+    public XMLSlideShow withoutCache() throws TemplateLoadException {
+        return uncachedService.report(report, false);
+    }
+
+    @Benchmark
+    public XMLSlideShow withGlyphMetrics() throws TemplateLoadException {
+        return glyphMetricsService.report(report, false);
+    }
+
+    private static PowerPointService createService(final TextMeasurer textMeasurer) throws TemplateLoadException {
+        final PowerPointServiceImpl service = new PowerPointServiceImpl(TemplateSource.DEFAULT, TemplateSettingsSource.DEFAULT, ImageSource.DEFAULT, CompressionPolicy.DEFAULT, Runnable::run, textMeasurer);
+        service.validateTemplate();
+        return service;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.ReportData;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFShape;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextMeasurementCacheTest {
+
+    @Test
+    public void testMatchesPOI() throws TemplateLoadException, IOException {
+        final List<XSLFTextShape> shapes = new ArrayList<>();
+
+        for(final String fixture : new String[]{ "multiwidgetreport.json", "report.json", "reportMultiTopicmap.json" }) {
+            final ReportData report = new ObjectMapper().readValue(TextMeasurementCacheTest.class.getResource(fixture), ReportData.class);
+            final XMLSlideShow pptx = new PowerPointServiceImpl().report(report, false);
+
+            for(final XSLFSlide slide : pptx.getSlides()) {
+                for(final XSLFShape shape : slide.getShapes()) {
+                    if (shape instanceof XSLFTextShape && !((XSLFTextShape) shape).getText().isEmpty()) {
+                        shapes.add((XSLFTextShape) shape);
+                    }
+                }
+            }
+        }
+
+        Assert.assertFalse(shapes.isEmpty());
+
+        final TextMeasurementCache cache = new TextMeasurementCache(1000);
+
+        for(int pass = 0; pass < 2; ++pass) {
+            for(final XSLFTextShape shape : shapes) {
+                Assert.assertEquals(shape.getText(), shape.getTextHeight(), cache.getTextHeight(shape), 1e-6);
+            }
+        }
+
+        // everything is measured again on the second pass
+        final TextMeasurementCache.Statistics stats = cache.getStatistics();
+        Assert.assertTrue(stats.getHitRate() >= 0.5);
+    }
+
+    @Test
+    public void testRepeatedParagraphsAreCached() {
+        final XMLSlideShow ppt = new XMLSlideShow();
+        final XSLFSlide slide = ppt.createSlide();
+        final TextMeasurementCache cache = new TextMeasurementCache(1000);
+
+        final XSLFTextBox first = createTextBox(slide, "A title which is long enough to wrap onto several lines of the text box", "2017-03-01");
+        final XSLFTextBox second = createTextBox(slide, "A title which is long enough to wrap onto several lines of the text box", "2017-03-02");
+
+        Assert.assertEquals(first.getTextHeight(), cache.getTextHeight(first), 1e-6);
+        Assert.assertEquals(second.getTextHeight(), cache.getTextHeight(second), 1e-6);
+
+        // the titles match, but the dates don't
+        TextMeasurementCache.Statistics stats = cache.getStatistics();
+        Assert.assertEquals(1, stats.getHitCount());
+        Assert.assertEquals(3, stats.getMissCount());
+
+        // the same text at a different width has to be measured again
+        second.setAnchor(new Rectangle2D.Double(0, 0, 400, 300));
+        Assert.assertEquals(second.getTextHeight(), cache.getTextHeight(second), 1e-6);
+
+        stats = cache.getStatistics();
+        Assert.assertEquals(1, stats.getHitCount());
+        Assert.assertEquals(5, stats.getMissCount());
+        Assert.assertEquals(5, stats.getSize());
+    }
+
+    @Test
+    public void testDisabledCache() {
+        final XMLSlideShow ppt = new XMLSlideShow();
+        final XSLFTextBox textBox = createTextBox(ppt.createSlide(), "Title", "2017-03-01");
+        final TextMeasurementCache cache = new TextMeasurementCache(0);
+
+        Assert.assertEquals(textBox.getTextHeight(), cache.getTextHeight(textBox), 0);
+        Assert.assertEquals(0, cache.getStatistics().getMissCount());
+    }
+
+    private static XSLFTextBox createTextBox(final XSLFSlide slide, final String title, final String date) {
+        final XSLFTextBox textBox = slide.createTextBox();
+        textBox.setAnchor(new Rectangle2D.Double(0, 0, 150, 300));
+        textBox.clearText();
+
+        final XSLFTextParagraph titlePara = textBox.addNewTextParagraph();
+        titlePara.addNewTextRun().setText(title);
+        titlePara.getTextRuns().get(0).setBold(true);
+        titlePara.getTextRuns().get(0).setFontSize(14.);
+
+        final XSLFTextParagraph datePara = textBox.addNewTextParagraph();
+        datePara.setLeftMargin(5.);
+        datePara.addNewTextRun().setText(date);
+        datePara.getTextRuns().get(0).setItalic(true);
+
+        return textBox;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.apache.poi.xslf.usermodel.XSLFTextRun;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark comparing the latency of truncating multi-kilobyte text to fit a text box by searching over its words,
+ *   against removing one word at a time; both measuring the text with POI.
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark=TextTruncationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TextTruncationBenchmark {
+
+    /** Height of the text box, in points; enough for about ten lines. */
+    private static final double MAX_HEIGHT = 150;
+
+    @Param({"200", "1000"})
+    private int words;
+
+    private String text;
+
+    private XSLFTextBox textBox;
+
+    private XSLFTextRun run;
+
+    @Setup
+    public void setup() {
+        text = TextTruncationTest.randomText(new Random(17), words).trim();
+        textBox = TextTruncationTest.createTextBox();
+        run = textBox.getTextParagraphs().get(0).getTextRuns().get(1);
+    }
+
+    @Benchmark
+    public String search() {
+        TextTruncation.truncate(TextMeasurer.POI, textBox, run, text, MAX_HEIGHT);
+        return run.getRawText();
+    }
+
+    @Benchmark
+    public String wordByWord() {
+        TextTruncationTest.wordByWord(TextMeasurer.POI, textBox, run, text, MAX_HEIGHT);
+        return run.getRawText();
+    }
+}
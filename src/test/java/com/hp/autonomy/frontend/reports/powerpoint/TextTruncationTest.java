@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.apache.poi.xslf.usermodel.XSLFTextParagraph;
+import org.apache.poi.xslf.usermodel.XSLFTextRun;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextTruncationTest {
+
+    private static final String[] WORDS = {
+        "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do", "eiusmod", "tempor",
+        "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua...", "etc.", "a", "\u2026", "supercalifragilistic",
+    };
+
+    private static final String[] SEPARATORS = { " ", " ", " ", " ", "  ", "\n", " \n", "... " };
+
+    @Test
+    public void testMatchesWordByWordTruncation() {
+        final Random random = new Random(17);
+        final XSLFTextBox textBox = createTextBox();
+        final TextMeasurer textMeasurer = new GlyphMetricsTextMeasurer();
+
+        for(int ii = 0; ii < 50; ++ii) {
+            final String text = randomText(random, 1 + random.nextInt(300)).trim();
+            final double maxHeight = 10 + random.nextInt(300);
+
+            final XSLFTextRun run = textBox.getTextParagraphs().get(0).getTextRuns().get(1);
+            wordByWord(textMeasurer, textBox, run, text, maxHeight);
+            final String expected = run.getRawText();
+
+            TextTruncation.truncate(textMeasurer, textBox, run, text, maxHeight);
+            Assert.assertEquals(text, expected, run.getRawText());
+        }
+    }
+
+    @Test
+    public void testMeasurements() {
+        final AtomicInteger measurements = new AtomicInteger();
+        final TextMeasurer textMeasurer = shape -> {
+            measurements.incrementAndGet();
+            return shape.getTextHeight();
+        };
+
+        final XSLFTextBox textBox = createTextBox();
+        final XSLFTextRun run = textBox.getTextParagraphs().get(0).getTextRuns().get(1);
+
+        // 1000 words, of which all but a few dozen have to be removed
+        final String text = randomText(new Random(17), 1000).trim();
+        TextTruncation.truncate(textMeasurer, textBox, run, text, 100);
+
+        Assert.assertTrue(run.getRawText().endsWith("\u2026"));
+        Assert.assertTrue(textBox.getTextHeight() <= 100);
+        Assert.assertTrue(measurements.get() <= 25);
+
+        // text which already fits is measured once
+        measurements.set(0);
+        TextTruncation.truncate(textMeasurer, textBox, run, "Short text", 100);
+
+        Assert.assertEquals("Short text", run.getRawText());
+        Assert.assertEquals(1, measurements.get());
+    }
+
+    @Test
+    public void testNothingFits() {
+        final XSLFTextBox textBox = createTextBox();
+        final XSLFTextRun run = textBox.getTextParagraphs().get(0).getTextRuns().get(1);
+
+        TextTruncation.truncate(TextMeasurer.POI, textBox, run, "Unbreakable", 1);
+        Assert.assertEquals("Unbreakable", run.getRawText());
+
+        TextTruncation.truncate(TextMeasurer.POI, textBox, run, "Two words", 1);
+        Assert.assertEquals("Two\u2026", run.getRawText());
+    }
+
+    static XSLFTextBox createTextBox() {
+        final XSLFTextBox textBox = new XMLSlideShow().createSlide().createTextBox();
+        textBox.setAnchor(new Rectangle2D.Double(0, 0, 200, 300));
+        textBox.clearText();
+
+        final XSLFTextParagraph paragraph = textBox.addNewTextParagraph();
+        final XSLFTextRun heading = paragraph.addNewTextRun();
+        heading.setText("Heading ");
+        heading.setBold(true);
+        heading.setFontSize(18.);
+
+        paragraph.addNewTextRun().setFontSize(12.);
+
+        return textBox;
+    }
+
+    static String randomText(final Random random, final int words) {
+        final StringBuilder text = new StringBuilder();
+
+        for(int ii = 0; ii < words; ++ii) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Truncates text one word at a time, as reports used to.
+     */
+    static void wordByWord(final TextMeasurer textMeasurer, final XSLFTextBox textBox, final XSLFTextRun run, final String trimmedText, final double maxHeight) {
+        run.setText(trimmedText);
+
+        for (final StringBuilder text = new StringBuilder(trimmedText); textMeasurer.getTextHeight(textBox) > maxHeight && text.length() > 0 ; ) {
+            final int lastSpaceIdx = Math.max(text.lastIndexOf(" "), text.lastIndexOf("\n"));
+
+            if (lastSpaceIdx < 0) {
+                break;
+            }
+
+            text.delete(lastSpaceIdx, text.length());
+            run.setText(text.length() > 0 ? text.toString().replaceFirst("(\\s*(\\.{3}|\u2026))?$", "\u2026") : "");
+        }
+    }
+}
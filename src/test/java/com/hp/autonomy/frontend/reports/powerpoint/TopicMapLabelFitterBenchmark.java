@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.TopicMapData;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFFreeformShape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark comparing the latency of choosing the font scale of topic map labels from estimates, against the binary
+ *   search; both measuring the text with POI without caching. Also measures the latency of rendering a topic map.
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Dbenchmark=TopicMapLabelFitterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TopicMapLabelFitterBenchmark {
+
+    private TopicMapLabelFitter fitter;
+
+    private List<XSLFFreeformShape> labels;
+
+    private PowerPointService service;
+
+    private TopicMapData topicMap;
+
+    @Setup
+    public void setup() throws TemplateLoadException, IOException {
+        fitter = new TopicMapLabelFitter(TextMeasurer.POI, 0);
+        labels = TopicMapLabelFitterTest.createLabels(new XMLSlideShow().createSlide());
+
+        final PowerPointServiceImpl service = new PowerPointServiceImpl();
+        service.validateTemplate();
+        this.service = service;
+
+        topicMap = new ObjectMapper().readValue(TopicMapLabelFitterBenchmark.class.getResource("topicmap.json"), TopicMapData.class);
+    }
+
+    @Benchmark
+    public void estimatedScales(final Blackhole blackhole) {
+        for(final XSLFFreeformShape label : labels) {
+            blackhole.consume(fitter.fit(label, label.getAnchor().getHeight()));
+        }
+    }
+
+    @Benchmark
+    public void binarySearchScales(final Blackhole blackhole) {
+        for(final XSLFFreeformShape label : labels) {
+            blackhole.consume(fitter.binarySearch(label, label.getAnchor().getHeight()));
+        }
+    }
+
+    @Benchmark
+    public XMLSlideShow renderTopicMap() throws TemplateLoadException {
+        return service.topicmap(topicMap);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hp.autonomy.frontend.reports.powerpoint.dto.TopicMapData;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.poi.sl.usermodel.TextShape;
+import org.apache.poi.sl.usermodel.VerticalAlignment;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFFreeformShape;
+import org.apache.poi.xslf.usermodel.XSLFShape;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTextRun;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TopicMapLabelFitterTest {
+
+    static final String[] LABELS = {
+        "Mr Trump",
+        "President Obama",
+        "Groupe d'Etude Sur le Congo",
+        "No group claimed responsibility",
+        "antidisestablishmentarianism",
+    };
+
+    @Test
+    public void testFixtureMatchesBinarySearch() throws TemplateLoadException, IOException {
+        final TopicMapData data = new ObjectMapper().readValue(TopicMapLabelFitterTest.class.getResource("topicmap.json"), TopicMapData.class);
+        final XMLSlideShow pptx = new PowerPointServiceImpl().topicmap(data);
+        final TopicMapLabelFitter fitter = new TopicMapLabelFitter(TextMeasurer.POI, 0);
+
+        for(final XSLFShape shape : pptx.getSlides().get(0).getShapes()) {
+            if (shape instanceof XSLFFreeformShape) {
+                final XSLFFreeformShape label = (XSLFFreeformShape) shape;
+                final double availHeight = label.getAnchor().getHeight();
+                Assert.assertEquals(label.getText(), fitter.binarySearch(label, availHeight), fitter.fit(label, availHeight));
+            }
+        }
+    }
+
+    @Test
+    public void testEstimatedScalesFit() {
+        final AtomicInteger measurements = new AtomicInteger();
+        final TopicMapLabelFitter fitter = new TopicMapLabelFitter(shape -> {
+            measurements.incrementAndGet();
+            return shape.getTextHeight();
+        }, 0);
+
+        final List<XSLFFreeformShape> labels = createLabels(new XMLSlideShow().createSlide());
+        int binarySearchFits = 0, distantScales = 0;
+
+        for(final XSLFFreeformShape label : labels) {
+            final double availHeight = label.getAnchor().getHeight();
+
+            final int binarySearchScale = fitter.binarySearch(label, availHeight);
+
+            if (label.getTextHeight() <= availHeight) {
+                ++binarySearchFits;
+            }
+
+            final int scale = fitter.fit(label, availHeight);
+
+            // the chosen scale always fits, while the binary search's last step isn't checked
+            Assert.assertTrue(label.getText(), label.getTextHeight() <= availHeight);
+
+            if (Math.abs(scale - binarySearchScale) > 1000 * TopicMapLabelFitter.SCALE_STEP + 1) {
+                ++distantScales;
+            }
+        }
+
+        Assert.assertTrue(binarySearchFits < labels.size());
+
+        // nearly all the scales are within a step of the binary search's
+        Assert.assertTrue(distantScales <= labels.size() / 20);
+
+        // the binary search measures each label seven times, while the estimates usually need just one check
+        final int fitMeasurements = measurements.get() - TopicMapLabelFitter.RESIZE_ATTEMPTS * labels.size();
+        Assert.assertTrue(fitMeasurements <= 2 * labels.size());
+    }
+
+    @Test
+    public void testScalesAreCached() {
+        final AtomicInteger measurements = new AtomicInteger();
+        final TopicMapLabelFitter fitter = new TopicMapLabelFitter(shape -> {
+            measurements.incrementAndGet();
+            return shape.getTextHeight();
+        }, 100);
+
+        final XSLFSlide slide = new XMLSlideShow().createSlide();
+        final XSLFFreeformShape first = createLabel(slide, "President Obama", 80, 25);
+        final XSLFFreeformShape second = createLabel(slide, "President Obama", 80, 25);
+        final XSLFFreeformShape larger = createLabel(slide, "President Obama", 80, 40);
+
+        final int scale = fitter.fit(first, 25);
+        final int measured = measurements.get();
+        Assert.assertTrue(measured > 0);
+
+        Assert.assertEquals(scale, fitter.fit(second, 25));
+        Assert.assertEquals(measured, measurements.get());
+        Assert.assertEquals(first.getTextHeight(), second.getTextHeight(), 0);
+
+        Assert.assertNotEquals(scale, fitter.fit(larger, 40));
+        Assert.assertTrue(measurements.get() > measured);
+    }
+
+    /**
+     * Creates labels of various lengths in polygons of various sizes.
+     */
+    static List<XSLFFreeformShape> createLabels(final XSLFSlide slide) {
+        final List<XSLFFreeformShape> labels = new ArrayList<>();
+
+        for(final String text : LABELS) {
+            for(final double width : new double[]{ 20, 45, 80, 130, 200 }) {
+                for(final double height : new double[]{ 8, 15, 25, 40, 70 }) {
+                    labels.add(createLabel(slide, text, width, height));
+                }
+            }
+        }
+
+        return labels;
+    }
+
+    private static XSLFFreeformShape createLabel(final XSLFSlide slide, final String text, final double width, final double height) {
+        final XSLFFreeformShape shape = slide.createFreeform();
+        shape.setPath(new Path2D.Double(new Rectangle2D.Double(10, 10, width, height)));
+        shape.setHorizontalCentered(true);
+        shape.setVerticalAlignment(VerticalAlignment.MIDDLE);
+        shape.setTextAutofit(TextShape.TextAutofit.NORMAL);
+
+        final XSLFTextRun textRun = shape.addNewTextParagraph().addNewTextRun();
+        textRun.setText(text);
+        textRun.setBold(true);
+
+        return shape;
+    }
+}
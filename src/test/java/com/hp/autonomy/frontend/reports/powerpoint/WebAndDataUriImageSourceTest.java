@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 Hewlett Packard Enterprise Development, L.P.
+ * Licensed under the MIT License (the "License"); you may not use this file except in compliance with the License.
+ */
+
+package com.hp.autonomy.frontend.reports.powerpoint;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.poi.sl.usermodel.PictureData;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WebAndDataUriImageSourceTest {
+
+    private static final byte[] IMAGE = new byte[100 * 1024];
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    private final AtomicInteger maxActiveRequests = new AtomicInteger();
+
+    @Before
+    public void before() throws IOException {
+        Arrays.fill(IMAGE, (byte) 42);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+
+        server.createContext("/image.png", exchange -> respond(exchange, IMAGE, IMAGE.length, 0));
+        server.createContext("/chunked.png", exchange -> respond(exchange, IMAGE, 0, 0));
+        server.createContext("/slow.png", exchange -> respond(exchange, IMAGE, IMAGE.length, 200));
+        server.createContext("/busy.png", exchange -> {
+            final int active = activeRequests.incrementAndGet();
+            maxActiveRequests.accumulateAndGet(active, Math::max);
+
+            try {
+                Thread.sleep(100);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            activeRequests.decrementAndGet();
+            respond(exchange, IMAGE, IMAGE.length, 0);
+        });
+
+        server.start();
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testFetch() {
+        final ImageData imageData = new WebAndDataUriImageSource().getImageData(url("/image.png"));
+
+        Assert.assertEquals(PictureData.PictureType.PNG, imageData.getType());
+        Assert.assertArrayEquals(IMAGE, imageData.getData());
+    }
+
+    @Test
+    public void testFetchWithoutContentLength() {
+        final ImageData imageData = new WebAndDataUriImageSource().getImageData(url("/chunked.png"));
+        Assert.assertArrayEquals(IMAGE, imageData.getData());
+    }
+
+    @Test
+    public void testConnectionsAreReused() {
+        final WebAndDataUriImageSource imageSource = new WebAndDataUriImageSource();
+
+        for(int ii = 0; ii < 5; ++ii) {
+            imageSource.getImageData(url("/image.png"));
+        }
+
+        Assert.assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testMaxResponseSize() {
+        final WebAndDataUriImageSource imageSource = new WebAndDataUriImageSource(1000, 1000, 1000, IMAGE.length - 1, 8);
+
+        assertFetchFails(imageSource, "/image.png", IOException.class);
+        assertFetchFails(imageSource, "/chunked.png", IOException.class);
+    }
+
+    @Test
+    public void testTotalTimeout() {
+        // each read is quick enough, but the whole image takes too long
+        final WebAndDataUriImageSource imageSource = new WebAndDataUriImageSource(1000, 1000, 500, IMAGE.length, 8);
+        final long start = System.currentTimeMillis();
+
+        assertFetchFails(imageSource, "/slow.png", SocketTimeoutException.class);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testMaxConnectionsPerHost() throws Exception {
+        final WebAndDataUriImageSource imageSource = new WebAndDataUriImageSource(1000, 1000, 10000, IMAGE.length, 1);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try {
+            final Callable<ImageData> fetch = () -> imageSource.getImageData(url("/busy.png"));
+            final List<Future<ImageData>> futures = executor.invokeAll(Arrays.asList(fetch, fetch, fetch));
+
+            for(final Future<ImageData> future : futures) {
+                Assert.assertArrayEquals(IMAGE, future.get().getData());
+            }
+
+            Assert.assertEquals(1, maxActiveRequests.get());
+            Assert.assertEquals(0, imageSource.getTrackedHostCount());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIdleHostsAreForgotten() {
+        final WebAndDataUriImageSource imageSource = new WebAndDataUriImageSource(1000, 1000, 500, IMAGE.length, 8);
+
+        imageSource.getImageData(url("/image.png"));
+        Assert.assertEquals(0, imageSource.getTrackedHostCount());
+
+        assertFetchFails(imageSource, "/slow.png", SocketTimeoutException.class);
+        Assert.assertEquals(0, imageSource.getTrackedHostCount());
+    }
+
+    private String url(final String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private void assertFetchFails(final ImageSource imageSource, final String path, final Class<? extends IOException> cause) {
+        try {
+            imageSource.getImageData(url(path));
+            Assert.fail("Should have thrown an exception");
+        }
+        catch(IllegalArgumentException e) {
+            Assert.assertTrue(e.getCause().toString(), cause.isInstance(e.getCause()));
+        }
+    }
+
+    /**
+     * Stub response, optionally sent in a few slow pieces.
+     * @param length the content length to send; or zero to use chunked encoding.
+     */
+    private void respond(final HttpExchange exchange, final byte[] body, final long length, final long pauseMillis) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.sendResponseHeaders(200, length);
+
+        try(final OutputStream output = exchange.getResponseBody()) {
+            final int pieces = pauseMillis > 0 ? 10 : 1;
+            final int pieceSize = body.length / pieces;
+
+            for(int piece = 0; piece < pieces; ++piece) {
+                final int offset = piece * pieceSize;
+                output.write(body, offset, piece == pieces - 1 ? body.length - offset : pieceSize);
+                output.flush();
+
+                if (pauseMillis > 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException e) {
+            // the client gave up
+        }
+    }
+}